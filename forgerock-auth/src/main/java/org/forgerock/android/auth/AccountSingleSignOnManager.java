@@ -48,6 +48,7 @@ class AccountSingleSignOnManager implements SingleSignOnManager, KeyUpdatedListe
     private static final String ORG_FORGEROCK_V_1_SSO_KEYS = "org.forgerock.v1.SSO_KEYS";
     private static final String SSO_TOKEN = "org.forgerock.v1.SSO_TOKEN";
     private static final String COOKIES = "org.forgerock.v1.COOKIES";
+    private static final String SSO_DATA_KEY = "org.forgerock.v1.SSO_DATA_KEY";
 
     private String accountType;
     private Encryptor encryptor;
@@ -209,14 +210,22 @@ class AccountSingleSignOnManager implements SingleSignOnManager, KeyUpdatedListe
             case Build.VERSION_CODES.LOLLIPOP_MR1:
                 return new AndroidLEncryptor(context, ORG_FORGEROCK_V_1_SSO_KEYS, this);
             case Build.VERSION_CODES.M:
-                return new AndroidMEncryptor(ORG_FORGEROCK_V_1_SSO_KEYS, this);
+                return wrap(context, new AndroidMEncryptor(ORG_FORGEROCK_V_1_SSO_KEYS, this));
             case Build.VERSION_CODES.N:
-                return new AndroidNEncryptor(ORG_FORGEROCK_V_1_SSO_KEYS, this);
+                return wrap(context, new AndroidNEncryptor(ORG_FORGEROCK_V_1_SSO_KEYS, this));
             default:
-                return new AndroidNEncryptor(ORG_FORGEROCK_V_1_SSO_KEYS, this);
+                return wrap(context, new AndroidNEncryptor(ORG_FORGEROCK_V_1_SSO_KEYS, this));
         }
     }
 
+    private Encryptor wrap(Context context, Encryptor keyEncryptor) {
+        if (KeyWrappingEncryptor.isEnabled(context)) {
+            return new KeyWrappingEncryptor(context, ORG_FORGEROCK_V_1_SSO_KEYS, keyEncryptor,
+                    new DataKeyStore(), KeyWrappingEncryptor.getKeyLifetimeMillis(context));
+        }
+        return keyEncryptor;
+    }
+
     @Override
     public void persist(String encryptedSecretKey) {
         accountManager.setPassword(account, encryptedSecretKey);
@@ -240,4 +249,26 @@ class AccountSingleSignOnManager implements SingleSignOnManager, KeyUpdatedListe
         clear();
     }
 
+    /**
+     * Store the wrapped data key with the Account user data.
+     */
+    private class DataKeyStore implements SecretKeyStore {
+
+        @Override
+        public void persist(String encryptedSecretKey) {
+            accountManager.addAccountExplicitly(account, null, null);
+            accountManager.setUserData(account, SSO_DATA_KEY, encryptedSecretKey);
+        }
+
+        @Override
+        public String getEncryptedSecretKey() {
+            return accountManager.getUserData(account, SSO_DATA_KEY);
+        }
+
+        @Override
+        public void remove() {
+            accountManager.setUserData(account, SSO_DATA_KEY, null);
+        }
+    }
+
 }
@@ -64,6 +64,12 @@ public class Config {
     //KeyStoreManager
     private KeyStoreManager keyStoreManager;
 
+    //Queue of revoke and logout requests
+    private OutboundQueue outboundQueue;
+
+    //Proactive Access Token refresh
+    private TokenRefreshScheduler tokenRefreshScheduler;
+
     @VisibleForTesting
     public void setUrl(String url) {
         this.url = url;
@@ -154,6 +160,8 @@ public class Config {
                 .context(context)
                 .sharedPreferences(sharedPreferences)
                 .oAuth2Client(getOAuth2Client())
+                .outboundQueue(getOutboundQueue())
+                .refreshScheduler(getTokenRefreshScheduler())
                 .build();
     }
 
@@ -163,9 +171,29 @@ public class Config {
                 .serverConfig(getServerConfig())
                 .context(context)
                 .encryptor(encryptor)
+                .outboundQueue(getOutboundQueue())
                 .build();
     }
 
+    synchronized OutboundQueue getOutboundQueue() {
+        if (outboundQueue == null) {
+            outboundQueue = OutboundQueue.builder()
+                    .context(context)
+                    .serverConfig(getServerConfig())
+                    .build();
+        }
+        return outboundQueue;
+    }
+
+    synchronized TokenRefreshScheduler getTokenRefreshScheduler() {
+        if (tokenRefreshScheduler == null && context != null && TokenRefreshScheduler.isEnabled(context)) {
+            tokenRefreshScheduler = TokenRefreshScheduler.builder()
+                    .context(context)
+                    .build();
+        }
+        return tokenRefreshScheduler;
+    }
+
     SessionManager getSessionManager() {
         return SessionManager.builder()
                 .tokenManager(getTokenManager())
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Builder;
+import lombok.NonNull;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Pre-warm the connection to the server, so that the first request does not pay the DNS resolution,
+ * TCP and TLS handshake and certificate pinning. The connection is kept in the connection pool shared by
+ * the clients of {@link OkHttpClientProvider}.
+ * <p>
+ * The pre-warm is bounded by a time budget, and skipped on metered network, with low battery or in power save mode.
+ * The power and network policy is checked before the pre-warm starts and before each endpoint is fetched.
+ */
+class ConnectionPreWarmer {
+
+    private static final String TAG = ConnectionPreWarmer.class.getSimpleName();
+    private static final Action PRE_WARM = new Action(Action.PRE_WARM);
+    //Battery level in percent, pre-warm is skipped at or below this level when not charging
+    private static final int LOW_BATTERY_LEVEL = 15;
+
+    private final Context context;
+    private final ServerConfig serverConfig;
+    private final long budgetMillis;
+    private final List<String> endpoints;
+
+    @Builder
+    private ConnectionPreWarmer(@NonNull Context context,
+                                @NonNull ServerConfig serverConfig,
+                                Long budgetMillis,
+                                List<String> endpoints) {
+        this.context = context.getApplicationContext();
+        this.serverConfig = serverConfig;
+        this.budgetMillis = budgetMillis == null
+                ? context.getResources().getInteger(R.integer.forgerock_prewarm_budget) * 1000L : budgetMillis;
+        this.endpoints = endpoints == null
+                ? Arrays.asList(context.getResources().getStringArray(R.array.forgerock_prewarm_endpoints))
+                : endpoints;
+    }
+
+    /**
+     * Check if the connection pre-warm is enabled with {@code forgerock_prewarm}.
+     *
+     * @param context The Application Context
+     * @return True if the connection pre-warm is enabled
+     */
+    static boolean isEnabled(Context context) {
+        return context.getResources().getBoolean(R.bool.forgerock_prewarm);
+    }
+
+    /**
+     * Open the connection to the server in the background, then fetch the configured endpoints.
+     */
+    void start() {
+        if (!isAllowed()) {
+            Logger.debug(TAG, "Connection pre-warm skipped");
+            return;
+        }
+        HttpUrl url = serverConfig.getUrl() == null ? null : HttpUrl.parse(serverConfig.getUrl());
+        if (url == null) {
+            Logger.debug(TAG, "Connection pre-warm skipped, invalid server url: %s", serverConfig.getUrl());
+            return;
+        }
+        long start = System.currentTimeMillis();
+        OkHttpClient client = OkHttpClientProvider.getInstance().lookup(serverConfig);
+        enqueue(client, new Request.Builder().url(url).head().tag(PRE_WARM).build(), start, () -> {
+            Logger.debug(TAG, "Connection to %s established in %d ms", url.host(),
+                    System.currentTimeMillis() - start);
+            for (String endpoint : endpoints) {
+                if (!isAllowed()) {
+                    return;
+                }
+                HttpUrl endpointUrl = url.newBuilder()
+                        .addEncodedPathSegments(endpoint.startsWith("/") ? endpoint.substring(1) : endpoint)
+                        .build();
+                enqueue(client, new Request.Builder().url(endpointUrl).get().tag(PRE_WARM).build(), start, null);
+            }
+        });
+    }
+
+    private void enqueue(OkHttpClient client, Request request, long start, Runnable onResponse) {
+        long remaining = budgetMillis - (System.currentTimeMillis() - start);
+        if (remaining <= 0) {
+            return;
+        }
+        Call call = client.newCall(request);
+        //The budget covers all the pre-warm requests
+        call.timeout().timeout(remaining, TimeUnit.MILLISECONDS);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                Logger.debug(TAG, "Connection pre-warm failed: %s", e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                //Any response means the connection is established, release it to the pool
+                response.close();
+                if (onResponse != null) {
+                    onResponse.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Check the power and network policy.
+     *
+     * @return False on metered network, with low battery or in power save mode
+     */
+    boolean isAllowed() {
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null && powerManager.isPowerSaveMode()) {
+            return false;
+        }
+        return !isLowBattery() && !isMetered();
+    }
+
+    private boolean isLowBattery() {
+        //Sticky broadcast, no receiver is registered
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return false;
+        }
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        boolean charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        return !charging && level >= 0 && scale > 0 && level * 100 / scale <= LOW_BATTERY_LEVEL;
+    }
+
+    private boolean isMetered() {
+        //Network state requires ACCESS_NETWORK_STATE, the network is considered unmetered without the permission
+        if (context.checkCallingOrSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE)
+                != PackageManager.PERMISSION_GRANTED) {
+            return false;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return connectivityManager != null && connectivityManager.isActiveNetworkMetered();
+    }
+}
@@ -41,10 +41,12 @@ class DefaultSingleSignOnManager implements SingleSignOnManager, ResponseHandler
 
     private SingleSignOnManager singleSignOnManager;
     private ServerConfig serverConfig;
+    //Logout in the background, logout directly when not provided
+    private OutboundQueue outboundQueue;
     private static final Action LOGOUT = new Action(Action.LOGOUT);
 
     @Builder
-    private DefaultSingleSignOnManager(@NonNull Context context, ServerConfig serverConfig, Encryptor encryptor, SharedPreferences sharedPreferences) {
+    private DefaultSingleSignOnManager(@NonNull Context context, ServerConfig serverConfig, Encryptor encryptor, SharedPreferences sharedPreferences, OutboundQueue outboundQueue) {
         try {
             singleSignOnManager = AccountSingleSignOnManager.builder()
                     .context(context)
@@ -57,6 +59,7 @@ class DefaultSingleSignOnManager implements SingleSignOnManager, ResponseHandler
         }
 
         this.serverConfig = serverConfig;
+        this.outboundQueue = outboundQueue;
     }
 
     @Override
@@ -101,23 +104,23 @@ class DefaultSingleSignOnManager implements SingleSignOnManager, ResponseHandler
         //No matter success or fail, we clear the token
         singleSignOnManager.revoke(null);
 
-        URL logout = null;
+        Request request;
         try {
-            logout = getLogoutUrl();
+            request = getLogoutRequest(token);
         } catch (MalformedURLException e) {
             Listener.onException(listener, e);
             return;
         }
 
-        OkHttpClient client = OkHttpClientProvider.getInstance().lookup(serverConfig);
-        Request request = new Request.Builder()
-                .header(serverConfig.getCookieName(), token.getValue())
-                .header(ACCEPT_API_VERSION, API_VERSION_3_1)
-                .url(logout)
-                .post(RequestBody.create(new byte[0]))
-                .tag(LOGOUT)
-                .build();
+        if (outboundQueue != null) {
+            //Cleanup the cached cookies
+            OkHttpClientProvider.getInstance().clear();
+            //The logout is retried in the background until it reaches the server
+            outboundQueue.enqueue(Action.LOGOUT + ":" + token.getValue(), request, listener);
+            return;
+        }
 
+        OkHttpClient client = OkHttpClientProvider.getInstance().lookup(serverConfig);
         client.newCall(request).enqueue(new Callback() {
             @Override
             public void onFailure(@NonNull Call call, @NonNull IOException e) {
@@ -139,6 +142,16 @@ class DefaultSingleSignOnManager implements SingleSignOnManager, ResponseHandler
 
     }
 
+    private Request getLogoutRequest(SSOToken token) throws MalformedURLException {
+        return new Request.Builder()
+                .header(serverConfig.getCookieName(), token.getValue())
+                .header(ACCEPT_API_VERSION, API_VERSION_3_1)
+                .url(getLogoutUrl())
+                .post(RequestBody.create(new byte[0]))
+                .tag(LOGOUT)
+                .build();
+    }
+
     private URL getLogoutUrl() throws MalformedURLException {
         Uri.Builder builder = Uri.parse(serverConfig.getUrl()).buildUpon();
         if (isNotEmpty(serverConfig.getLogoutEndpoint())) {
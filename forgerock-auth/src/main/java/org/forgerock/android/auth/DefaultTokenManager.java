@@ -11,17 +11,21 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import android.text.TextUtils;
+
 import androidx.annotation.WorkerThread;
 
+import org.forgerock.android.auth.exception.ApiException;
 import org.forgerock.android.auth.exception.AuthenticationRequiredException;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.Set;
 
 import lombok.Builder;
 import lombok.NonNull;
+import okio.ByteString;
 
 import static org.forgerock.android.auth.OAuth2.ACCESS_TOKEN;
 
@@ -55,11 +59,27 @@ class DefaultTokenManager implements TokenManager {
      * The {@link OAuth2Client} to auto refresh {@link AccessToken}
      */
     private final OAuth2Client oAuth2Client;
-    private final AtomicReference<AccessToken> accessTokenRef;
-    private static final ScheduledExecutorService worker =
-            Executors.newSingleThreadScheduledExecutor();
+    private final ExpiringReference<AccessToken> accessTokenRef;
+    //Refresh in flight, shared by the instances as they share the storage
+    private static final SingleFlight<AccessToken> REFRESH_FLIGHTS = new SingleFlight<>();
+    //Token requests for other scopes in flight
+    private static final SingleFlight<AccessToken> SCOPED_FLIGHTS = new SingleFlight<>();
+
+    /**
+     * The tokens issued for other scopes than the configured scope.
+     */
+    private final ScopedTokenCache scopedTokens;
 
-    private final long cacheIntervalMillis;
+    /**
+     * The {@link OutboundQueue} to revoke the token in the background, the token is revoked directly when not provided.
+     */
+    private final OutboundQueue outboundQueue;
+
+    /**
+     * The {@link TokenRefreshScheduler} to refresh the token ahead of its expiration, the token is refreshed on demand
+     * when not provided.
+     */
+    private final TokenRefreshScheduler refreshScheduler;
 
     /**
      * Threshold to refresh the {@link AccessToken}
@@ -72,7 +92,10 @@ class DefaultTokenManager implements TokenManager {
                                OAuth2Client oAuth2Client,
                                SharedPreferences sharedPreferences,
                                Long cacheIntervalMillis,
-                               Long threshold) {
+                               Long threshold,
+                               OutboundQueue outboundQueue,
+                               TokenRefreshScheduler refreshScheduler,
+                               Integer scopedTokenCacheSize) {
 
         this.sharedPreferences = sharedPreferences == null ? new SecuredSharedPreferences(context,
                 ORG_FORGEROCK_V_1_TOKENS, ORG_FORGEROCK_V_1_KEYS) : sharedPreferences;
@@ -80,11 +103,14 @@ class DefaultTokenManager implements TokenManager {
         Logger.debug(TAG, "Using SharedPreference: %s", this.sharedPreferences.getClass().getSimpleName());
 
         this.oAuth2Client = oAuth2Client;
-        this.accessTokenRef = new AtomicReference<>();
-        this.cacheIntervalMillis = cacheIntervalMillis == null
-                ? context.getResources().getInteger(R.integer.forgerock_oauth_cache) * 1000 : cacheIntervalMillis;
+        this.accessTokenRef = new ExpiringReference<>(cacheIntervalMillis == null
+                ? context.getResources().getInteger(R.integer.forgerock_oauth_cache) * 1000 : cacheIntervalMillis);
         this.threshold = threshold == null
                 ? context.getResources().getInteger(R.integer.forgerock_oauth_threshold) : threshold;
+        this.outboundQueue = outboundQueue;
+        this.refreshScheduler = refreshScheduler;
+        this.scopedTokens = new ScopedTokenCache(this.sharedPreferences, scopedTokenCacheSize == null
+                ? context.getResources().getInteger(R.integer.forgerock_oauth_scoped_token_cache) : scopedTokenCacheSize);
     }
 
     @SuppressLint("ApplySharedPref")
@@ -94,6 +120,9 @@ class DefaultTokenManager implements TokenManager {
         sharedPreferences.edit()
                 .putString(ACCESS_TOKEN, accessToken.toJson())
                 .commit();
+        if (refreshScheduler != null) {
+            refreshScheduler.schedule(this, accessToken);
+        }
     }
 
     @Override
@@ -129,6 +158,10 @@ class DefaultTokenManager implements TokenManager {
                 Logger.debug(TAG, "Access Token Expired!");
                 refresh(accessToken, tokenListener);
             } else {
+                if (refreshScheduler != null) {
+                    //Token persisted by a previous process
+                    refreshScheduler.scheduleIfIdle(this, accessToken);
+                }
                 Listener.onSuccess(tokenListener, accessToken);
             }
 
@@ -138,12 +171,106 @@ class DefaultTokenManager implements TokenManager {
         }
     }
 
+    @Override
+    public void getScopedAccessToken(@NonNull Set<String> scopes, FRListener<AccessToken> tokenListener) {
+        AccessToken accessToken = getAccessTokenLocally();
+        if (accessToken == null) {
+            Listener.onException(tokenListener,
+                    new AuthenticationRequiredException("No Access Token, authentication is required."));
+            return;
+        }
+        Set<String> requested = ScopedTokenCache.normalize(scopes);
+        Set<String> sessionScope = ScopedTokenCache.normalize(accessToken.getScope() == null
+                ? AccessToken.Scope.parse(oAuth2Client.getScope()) : accessToken.getScope());
+        String audience = oAuth2Client.getClientId();
+        ScopedTokenCache.Entry entry = scopedTokens.select(audience, accessToken.getSessionToken(), requested);
+
+        if (sessionScope.containsAll(requested) && (entry == null || entry.scope.size() >= sessionScope.size())) {
+            //The token of the session is the smallest token which satisfies the scopes
+            getAccessToken(null, tokenListener);
+            return;
+        }
+        if (entry != null && !entry.accessToken.isExpired(threshold)) {
+            Listener.onSuccess(tokenListener, entry.accessToken);
+            return;
+        }
+        SSOToken sessionToken = accessToken.getSessionToken();
+        if (sessionToken == null) {
+            Listener.onException(tokenListener,
+                    new AuthenticationRequiredException("No Session Token, authentication is required."));
+            return;
+        }
+        String key = entry == null ? ScopedTokenCache.key(audience, requested) : entry.key;
+        SCOPED_FLIGHTS.execute(key, tokenListener, flight -> {
+            if (entry == null || entry.accessToken.getRefreshToken() == null) {
+                exchangeToken(sessionToken, key, requested, flight);
+            } else {
+                refresh(sessionToken, entry, flight);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Refresh the token issued for other scopes, request a new token when the refresh is rejected.
+     */
+    private void refresh(SSOToken sessionToken, ScopedTokenCache.Entry entry, FRListener<AccessToken> listener) {
+        oAuth2Client.refresh(sessionToken, entry.accessToken.getRefreshToken(), TextUtils.join(" ", entry.scope),
+                new FRListener<AccessToken>() {
+                    @Override
+                    public void onSuccess(AccessToken token) {
+                        store(entry.key, entry.scope, token, listener);
+                    }
+
+                    @Override
+                    public void onException(Exception e) {
+                        if (!isRejected(e)) {
+                            Listener.onException(listener, e);
+                            return;
+                        }
+                        scopedTokens.remove(entry.key);
+                        exchangeToken(sessionToken, entry.key, entry.scope, listener);
+                    }
+                });
+    }
+
+    /**
+     * Request a token for other scopes with the Session Token.
+     */
+    private void exchangeToken(SSOToken sessionToken, String key, Set<String> scope, FRListener<AccessToken> listener) {
+        oAuth2Client.exchangeToken(sessionToken, TextUtils.join(" ", scope), new FRListener<AccessToken>() {
+            @Override
+            public void onSuccess(AccessToken token) {
+                store(key, scope, token, listener);
+            }
+
+            @Override
+            public void onException(Exception e) {
+                Listener.onException(listener, e);
+            }
+        });
+    }
+
+    private void store(String key, Set<String> scope, AccessToken token, FRListener<AccessToken> listener) {
+        for (AccessToken evicted : scopedTokens.put(key, scope, token)) {
+            revoke(evicted, null);
+        }
+        token.setPersisted(true);
+        Listener.onSuccess(listener, token);
+    }
+
     @Override
     public boolean hasToken() {
         //Consider null if Access token does not exists
         return sharedPreferences.getString(ACCESS_TOKEN, null) != null;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The stored token is cleared only when the server rejects the Refresh Token, it is kept when the server cannot
+     * be reached so that the refresh can be retried.
+     */
     @Override
     public void refresh(@NonNull AccessToken accessToken, final FRListener<AccessToken> listener) {
 
@@ -152,22 +279,49 @@ class DefaultTokenManager implements TokenManager {
             Listener.onException(listener, new AuthenticationRequiredException("Refresh Token does not exists."));
             return;
         }
-        clear();
-        oAuth2Client.refresh(accessToken.getSessionToken(), refreshToken, new FRListener<AccessToken>() {
-            @Override
-            public void onSuccess(AccessToken token) {
-                persist(token);
-                token.setPersisted(true);
-                Listener.onSuccess(listener, token);
-            }
-
-            @Override
-            public void onException(Exception e) {
-                Listener.onException(listener, new AuthenticationRequiredException(e));
+        //One refresh per Refresh Token, concurrent callers receive the result of the refresh in flight
+        REFRESH_FLIGHTS.execute(ByteString.encodeUtf8(refreshToken).sha256().hex(), listener, flight -> {
+            AccessToken current = getAccessTokenLocally();
+            if (current != null && !current.getValue().equals(accessToken.getValue())
+                    && !current.isExpired(threshold)) {
+                //Refreshed by a previous flight
+                current.setPersisted(true);
+                Listener.onSuccess(flight, current);
+                return null;
             }
+            oAuth2Client.refresh(accessToken.getSessionToken(), refreshToken, new FRListener<AccessToken>() {
+                @Override
+                public void onSuccess(AccessToken token) {
+                    persist(token);
+                    token.setPersisted(true);
+                    Listener.onSuccess(flight, token);
+                }
+
+                @Override
+                public void onException(Exception e) {
+                    if (isRejected(e)) {
+                        clear(refreshToken);
+                    }
+                    Listener.onException(flight, new AuthenticationRequiredException(e));
+                }
+            });
+            return null;
         });
     }
 
+    /**
+     * Check if the server rejected the grant, a network failure or a server error does not invalidate the
+     * Refresh Token.
+     *
+     * @param e The failure of the refresh
+     * @return True if the Refresh Token is rejected
+     */
+    private static boolean isRejected(Exception e) {
+        return e instanceof ApiException
+                && ((ApiException) e).getStatusCode() >= HttpURLConnection.HTTP_BAD_REQUEST
+                && ((ApiException) e).getStatusCode() < HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
     /**
      * Retrieve {@link AccessToken} from cache or from storage.
      *
@@ -175,9 +329,10 @@ class DefaultTokenManager implements TokenManager {
      */
     private AccessToken getAccessTokenLocally() {
 
-        if (accessTokenRef.get() != null) {
+        AccessToken cached = accessTokenRef.get();
+        if (cached != null) {
             Logger.debug(TAG, "Retrieving Access Token from cache");
-            return accessTokenRef.get();
+            return cached;
         }
 
         //Consider null if Access token does not exists
@@ -189,38 +344,69 @@ class DefaultTokenManager implements TokenManager {
     }
 
     /**
-     * Cache the {@link AccessToken} in memory and setup a worker thread to clear it after.
+     * Cache the {@link AccessToken} in memory, the cached token expires after the cache interval.
      *
      * @param accessToken The AccessToken
      */
     private void cache(AccessToken accessToken) {
-        if (cacheIntervalMillis > 0) {
-            accessTokenRef.set(accessToken);
-            worker.schedule(() -> {
-                Logger.debug(TAG, "Removing Access Token from cache.");
-                accessTokenRef.set(null);
-            }, cacheIntervalMillis, TimeUnit.MILLISECONDS);
-        }
+        accessTokenRef.set(accessToken);
     }
 
     @SuppressLint("ApplySharedPref")
     @Override
     public void clear() {
-        accessTokenRef.set(null);
+        accessTokenRef.clear();
         sharedPreferences.edit().clear().commit();
+        if (refreshScheduler != null) {
+            refreshScheduler.cancel();
+        }
+    }
+
+    /**
+     * Clear the stored token if it is still the one with the Refresh Token, so that a token persisted by another
+     * refresh is kept. The scoped tokens cleared with it are revoked.
+     *
+     * @param refreshToken The Refresh Token
+     */
+    private void clear(String refreshToken) {
+        AccessToken current = getAccessTokenLocally();
+        if (current != null && refreshToken.equals(current.getRefreshToken())) {
+            List<AccessToken> scoped = scopedTokens.getAll();
+            clear();
+            for (AccessToken token : scoped) {
+                revoke(token, null);
+            }
+        }
     }
 
     @Override
     public void revoke(FRListener<Void> listener) {
         AccessToken accessToken = getAccessTokenLocally();
+        List<AccessToken> scoped = scopedTokens.getAll();
         //No matter success revoke or not, clear the token locally.
         clear();
+        for (AccessToken token : scoped) {
+            revoke(token, null);
+        }
         if (accessToken == null) {
             Listener.onException(listener, new IllegalStateException("Access Token Not found!"));
             return;
         }
-        oAuth2Client.revoke(accessToken, listener);
+        revoke(accessToken, listener);
+    }
 
+    private void revoke(AccessToken accessToken, FRListener<Void> listener) {
+        if (outboundQueue == null) {
+            oAuth2Client.revoke(accessToken, listener);
+            return;
+        }
+        //The revoke is retried in the background until it reaches the server
+        try {
+            outboundQueue.enqueue(Action.REVOKE_TOKEN + ":" + accessToken.getValue(),
+                    oAuth2Client.getRevokeRequest(accessToken), listener);
+        } catch (MalformedURLException e) {
+            Listener.onException(listener, e);
+        }
     }
 
 }
@@ -50,6 +50,16 @@ public class FRAuth {
                 }
             }
             sharedPreferences.edit().putString("url", Config.getInstance().getUrl()).apply();
+            //Replay the revoke and logout requests which did not reach the server
+            Config.getInstance().getOutboundQueue().flush();
+            //Establish the connection ahead of the first request
+            if (ConnectionPreWarmer.isEnabled(context)) {
+                ConnectionPreWarmer.builder()
+                        .context(context)
+                        .serverConfig(Config.getInstance().getServerConfig())
+                        .build()
+                        .start();
+            }
         }
     }
 
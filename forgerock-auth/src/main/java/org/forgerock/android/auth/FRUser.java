@@ -14,6 +14,8 @@ import androidx.annotation.WorkerThread;
 import org.forgerock.android.auth.exception.AlreadyAuthenticatedException;
 import org.forgerock.android.auth.exception.AuthenticationRequiredException;
 
+import java.util.Set;
+
 import lombok.RequiredArgsConstructor;
 
 public class FRUser {
@@ -74,6 +76,36 @@ public class FRUser {
         return sessionManager.getAccessToken();
     }
 
+    /**
+     * Refresh the {@link AccessToken}, for example when the {@link AccessToken} is rejected by a resource server.
+     *
+     * <p>
+     * Concurrent callers share the same refresh, and the stored {@link AccessToken} is returned without
+     * contacting the server if the provided token has already been refreshed.
+     *
+     * @param accessToken The {@link AccessToken} to refresh
+     * @return The refreshed {@link AccessToken}
+     * @throws AuthenticationRequiredException When failed to refresh the {@link AccessToken}
+     */
+    @WorkerThread
+    public AccessToken refreshAccessToken(AccessToken accessToken) throws AuthenticationRequiredException {
+        return sessionManager.refresh(accessToken);
+    }
+
+    /**
+     * Retrieve an {@link AccessToken} which grants the requested scopes asynchronously.
+     *
+     * <p>
+     * The stored token with the smallest scope which satisfies the requested scopes is returned without
+     * contacting the server, otherwise a token is requested for the scopes with the current session.
+     *
+     * @param scopes   The requested scopes
+     * @param listener Listener to listen get Access Token event.
+     */
+    public void getAccessToken(Set<String> scopes, FRListener<AccessToken> listener) {
+        sessionManager.getAccessToken(scopes, listener);
+    }
+
     /**
      * Handles REST requests to the OpenId Connect userinfo endpoint for retrieving information about the user who granted
      * the authorization for the token.
@@ -22,16 +22,35 @@ import androidx.annotation.Nullable;
 import java.lang.ref.WeakReference;
 
 /**
- * Content Provider to register Activity Lifecycle Callbacks and keep track of the last active activity.
+ * Content Provider to register Activity Lifecycle Callbacks and keep track of the last active activity and
+ * whether the application is in the foreground.
  */
 public class InitProvider extends ContentProvider {
 
     private static WeakReference<Activity> currentActivity = new WeakReference<>(null);
+    private static int startedActivities;
 
     public static Activity getCurrentActivity() {
         return currentActivity.get();
     }
 
+    /**
+     * Check if the application is in the foreground, an activity is started and not stopped.
+     *
+     * @return True if the application is in the foreground
+     */
+    static synchronized boolean isForeground() {
+        return startedActivities > 0;
+    }
+
+    private static synchronized void onActivityStarted() {
+        startedActivities++;
+    }
+
+    private static synchronized void onActivityStopped() {
+        startedActivities = Math.max(0, startedActivities - 1);
+    }
+
     public InitProvider() {
     }
 
@@ -61,7 +80,7 @@ public class InitProvider extends ContentProvider {
 
             @Override
             public void onActivityStarted(@NonNull Activity activity) {
-
+                InitProvider.onActivityStarted();
             }
 
             @Override
@@ -76,7 +95,7 @@ public class InitProvider extends ContentProvider {
 
             @Override
             public void onActivityStopped(@NonNull Activity activity) {
-
+                InitProvider.onActivityStopped();
             }
 
             @Override
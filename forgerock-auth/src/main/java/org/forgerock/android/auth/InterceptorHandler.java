@@ -39,7 +39,9 @@ public class InterceptorHandler implements Interceptor.Chain {
             //process the next interceptor in the Chain
             try {
                 Interceptor interceptor = interceptors.get(index);
-                Logger.debug(TAG, "Processing interceptor: %s", interceptor.getClass().getSimpleName());
+                if (Logger.isDebugEnabled()) {
+                    Logger.debug(TAG, "Processing interceptor: %s", interceptor.getClass().getSimpleName());
+                }
                 interceptor.intercept(new InterceptorHandler(context, interceptors, listener, index + 1), data);
             } catch (ClassCastException e) { // The Interceptor cannot handle the data
                 //skip the interceptor
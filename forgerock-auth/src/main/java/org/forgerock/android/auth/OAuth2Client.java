@@ -10,6 +10,7 @@ package org.forgerock.android.auth;
 import android.net.Uri;
 import android.util.Base64;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import okhttp3.*;
@@ -41,8 +42,10 @@ public class OAuth2Client {
     /**
      * The registered client identifier
      */
+    @Getter(AccessLevel.PACKAGE)
     private String clientId;
 
+    @Getter(AccessLevel.PACKAGE)
     private String scope;
     private String redirectUri;
     private String responseType = OAuth2.CODE;
@@ -72,6 +75,17 @@ public class OAuth2Client {
      * @param listener Listener that listens to changes resulting from OAuth endpoints .
      */
     public void exchangeToken(@NonNull SSOToken token, final FRListener<AccessToken> listener) {
+        exchangeToken(token, scope, listener);
+    }
+
+    /**
+     * Sends an authorization request to the authorization service for the provided scope.
+     *
+     * @param token    The SSO Token received with the result of {@link AuthService}
+     * @param scope    The scope to request, space separated
+     * @param listener Listener that listens to changes resulting from OAuth endpoints .
+     */
+    void exchangeToken(@NonNull SSOToken token, String scope, final FRListener<AccessToken> listener) {
         Logger.debug(TAG, "Exchanging Access Token with SSO Token.");
         final OAuth2ResponseHandler handler = new OAuth2ResponseHandler();
         try {
@@ -84,7 +98,7 @@ public class OAuth2Client {
             final PKCE pkce = generateCodeChallenge();
 
             okhttp3.Request request = new okhttp3.Request.Builder()
-                    .url(getAuthorizeUrl(token, pkce))
+                    .url(getAuthorizeUrl(token, pkce, scope))
                     .get()
                     .header(ACCEPT_API_VERSION, ServerConfig.API_VERSION_2_1)
                     .tag(AUTHORIZE)
@@ -120,6 +134,18 @@ public class OAuth2Client {
     }
 
     public void refresh(@NonNull SSOToken sessionToken, @NonNull String refreshToken, final FRListener<AccessToken> listener) {
+        refresh(sessionToken, refreshToken, scope, listener);
+    }
+
+    /**
+     * Refresh the Access Token with the provided scope.
+     *
+     * @param sessionToken The Session Token bound to the Refresh Token
+     * @param refreshToken The Refresh Token
+     * @param scope        The scope to request, space separated, within the scope of the Refresh Token
+     * @param listener     Listener to listen for refresh event
+     */
+    void refresh(@NonNull SSOToken sessionToken, @NonNull String refreshToken, String scope, final FRListener<AccessToken> listener) {
         Logger.debug(TAG, "Refreshing Access Token");
 
         final OAuth2ResponseHandler handler = new OAuth2ResponseHandler();
@@ -167,23 +193,7 @@ public class OAuth2Client {
         Logger.debug(TAG, "Revoking Access Token & Refresh Token");
         final OAuth2ResponseHandler handler = new OAuth2ResponseHandler();
         try {
-            FormBody.Builder builder = new FormBody.Builder();
-
-            String token = accessToken.getRefreshToken() == null ? accessToken.getValue() : accessToken.getRefreshToken();
-
-            RequestBody body = builder
-                    .add(OAuth2.CLIENT_ID, clientId)
-                    .add(OAuth2.TOKEN, token)
-                    .build();
-
-            okhttp3.Request request = new okhttp3.Request.Builder()
-                    .url(getRevokeUrl())
-                    .post(body)
-                    .header(CONTENT_TYPE, APPLICATION_X_WWW_FORM_URLENCODED)
-                    .header(ACCEPT_API_VERSION, ServerConfig.API_VERSION_2_1)
-                    .tag(REVOKE_TOKEN)
-                    .build();
-
+            okhttp3.Request request = getRevokeRequest(accessToken);
 
             okHttpClient.newCall(request).enqueue(new okhttp3.Callback() {
 
@@ -203,6 +213,32 @@ public class OAuth2Client {
         }
     }
 
+    /**
+     * Build the request to revoke the Refresh Token, or the Access Token when there is no Refresh Token.
+     *
+     * @param accessToken The {@link AccessToken} to revoke
+     * @return The revoke request
+     * @throws MalformedURLException When the revoke endpoint is invalid
+     */
+    okhttp3.Request getRevokeRequest(@NonNull AccessToken accessToken) throws MalformedURLException {
+        FormBody.Builder builder = new FormBody.Builder();
+
+        String token = accessToken.getRefreshToken() == null ? accessToken.getValue() : accessToken.getRefreshToken();
+
+        RequestBody body = builder
+                .add(OAuth2.CLIENT_ID, clientId)
+                .add(OAuth2.TOKEN, token)
+                .build();
+
+        return new okhttp3.Request.Builder()
+                .url(getRevokeUrl())
+                .post(body)
+                .header(CONTENT_TYPE, APPLICATION_X_WWW_FORM_URLENCODED)
+                .header(ACCEPT_API_VERSION, ServerConfig.API_VERSION_2_1)
+                .tag(REVOKE_TOKEN)
+                .build();
+    }
+
     /**
      * Sends an token request to the authorization service.
      *
@@ -250,7 +286,7 @@ public class OAuth2Client {
         }
     }
 
-    private URL getAuthorizeUrl(Token token, PKCE pkce) throws MalformedURLException, UnsupportedEncodingException {
+    private URL getAuthorizeUrl(Token token, PKCE pkce, String scope) throws MalformedURLException, UnsupportedEncodingException {
         Uri.Builder builder = Uri.parse(serverConfig.getUrl()).buildUpon();
         if (isNotEmpty(serverConfig.getAuthorizeEndpoint())) {
             builder.appendEncodedPath(serverConfig.getAuthorizeEndpoint());
@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Builder;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+
+/**
+ * Durable queue of fire-and-forget requests to the server, for example token revocation and session logout.
+ * <p>
+ * The requests are encrypted and persisted with {@link SecuredSharedPreferences}, so that they survive process
+ * death and are replayed at next {@link FRAuth#start(Context)}. Requests with the same key are coalesced, the
+ * latest one replaces the pending one and keeps its backoff. Pending requests are sent in batches of at most
+ * {@link #BATCH_SIZE} requests in flight, failed requests are retried with exponential backoff, and immediately
+ * when the network becomes available.
+ * <p>
+ * A request is removed from the queue when the server responds, unless the response is 408, 429 or 5xx, and dropped
+ * after {@link #MAX_ATTEMPTS} such responses. Failures to reach the server, for example without network or with
+ * an open circuit, are retried until the request is older than {@link #MAX_AGE_MILLIS}.
+ * The caller does not wait for the server, the optional listener is notified after the first attempt, whether
+ * the request is delivered or kept for retry.
+ */
+class OutboundQueue {
+
+    private static final String TAG = OutboundQueue.class.getSimpleName();
+
+    //File name to store the pending requests
+    static final String ORG_FORGEROCK_V_1_OUTBOUND = "org.forgerock.v1.OUTBOUND";
+    private static final String QUEUE = "queue";
+
+    private static final String KEY = "key";
+    private static final String URL = "url";
+    private static final String METHOD = "method";
+    private static final String HEADERS = "headers";
+    private static final String BODY = "body";
+    private static final String CONTENT_TYPE = "contentType";
+    private static final String ACTION = "action";
+    //Transient responses from the server
+    private static final String ATTEMPTS = "attempts";
+    //All the failed attempts, including the failures to reach the server, for the backoff
+    private static final String RETRIES = "retries";
+    private static final String NEXT_ATTEMPT = "next";
+    private static final String CREATED = "created";
+
+    static final int BATCH_SIZE = 10;
+    static final int MAX_ATTEMPTS = 10;
+    static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final long BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    //All the operations on the queue run on this thread
+    private static final ScheduledExecutorService worker =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ForgeRock-OutboundQueue");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    //The queue notified by the process-wide network callback, the latest queue replaces the previous one
+    private static volatile OutboundQueue current;
+    //Guarded by OutboundQueue.class, the network callback is registered once per application
+    private static Context registered;
+
+    private final Context context;
+    private final ServerConfig serverConfig;
+    private SharedPreferences sharedPreferences;
+    private final Map<String, JSONObject> entries = new LinkedHashMap<>();
+    //Listeners waiting for the first attempt of the entries, not persisted
+    private final Map<JSONObject, FRListener<Void>> listeners = new IdentityHashMap<>();
+    private final Set<JSONObject> inFlight = Collections.newSetFromMap(new IdentityHashMap<>());
+    private ScheduledFuture<?> scheduled;
+    private boolean loaded;
+
+    @Builder
+    private OutboundQueue(@NonNull Context context,
+                          @NonNull ServerConfig serverConfig,
+                          SharedPreferences sharedPreferences) {
+        this.context = context.getApplicationContext();
+        this.serverConfig = serverConfig;
+        this.sharedPreferences = sharedPreferences;
+        //Load ahead of the first request
+        worker.execute(this::load);
+        current = this;
+        registerNetworkCallback(this.context);
+    }
+
+    /**
+     * Queue a request and return immediately, the request is sent in the background.
+     *
+     * @param key      Identify the request, a pending request with the same key is replaced.
+     * @param request  The request
+     * @param listener Listener notified after the first attempt to send the request
+     */
+    void enqueue(@NonNull String key, @NonNull Request request, FRListener<Void> listener) {
+        final JSONObject entry;
+        try {
+            entry = toJson(key, request);
+        } catch (IOException | JSONException e) {
+            Logger.error(TAG, e, "Failed to queue request %s", request.url());
+            Listener.onException(listener, e);
+            return;
+        }
+        worker.execute(() -> {
+            load();
+            JSONObject replaced = entries.remove(key);
+            if (replaced != null) {
+                Listener.onSuccess(listeners.remove(replaced), null);
+                if (!inFlight.contains(replaced)) {
+                    //Keep the backoff of the pending request
+                    copy(replaced, entry, ATTEMPTS);
+                    copy(replaced, entry, RETRIES);
+                    copy(replaced, entry, NEXT_ATTEMPT);
+                }
+            }
+            entries.put(key, entry);
+            if (listener != null) {
+                listeners.put(entry, listener);
+            }
+            drain();
+            persist();
+        });
+    }
+
+    /**
+     * Send the pending requests which are due.
+     */
+    void flush() {
+        worker.execute(() -> {
+            load();
+            drain();
+        });
+    }
+
+    /**
+     * Send the pending requests now, regardless of the backoff, for example when the network becomes available.
+     */
+    void retryNow() {
+        worker.execute(() -> {
+            load();
+            for (JSONObject entry : entries.values()) {
+                try {
+                    entry.put(NEXT_ATTEMPT, 0);
+                } catch (JSONException e) {
+                    //Ignore, cannot happen with a numeric value
+                }
+            }
+            drain();
+        });
+    }
+
+    @VisibleForTesting
+    int size() throws Exception {
+        return worker.submit(() -> {
+            load();
+            return entries.size();
+        }).get();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            if (sharedPreferences == null) {
+                sharedPreferences = new SecuredSharedPreferences(context,
+                        ORG_FORGEROCK_V_1_OUTBOUND, DefaultTokenManager.ORG_FORGEROCK_V_1_KEYS);
+            }
+            String value = sharedPreferences.getString(QUEUE, null);
+            if (value != null) {
+                JSONArray array = new JSONArray(value);
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject entry = array.getJSONObject(i);
+                    //Requests queued before this process are coalesced with the new ones
+                    if (!entries.containsKey(entry.getString(KEY))) {
+                        entries.put(entry.getString(KEY), entry);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            //The queue still works in memory
+            Logger.warn(TAG, e, "Failed to load the queued requests, requests are not persisted");
+            sharedPreferences = null;
+        }
+    }
+
+    private void persist() {
+        if (sharedPreferences == null) {
+            return;
+        }
+        try {
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            if (entries.isEmpty()) {
+                editor.remove(QUEUE);
+            } else {
+                editor.putString(QUEUE, new JSONArray(entries.values()).toString());
+            }
+            editor.apply();
+        } catch (Exception e) {
+            Logger.warn(TAG, e, "Failed to persist the queued requests, requests are not persisted");
+            sharedPreferences = null;
+        }
+    }
+
+    /**
+     * Send the due requests, at most {@link #BATCH_SIZE} requests are in flight.
+     */
+    private void drain() {
+        long now = System.currentTimeMillis();
+        long nextAttempt = Long.MAX_VALUE;
+        List<JSONObject> batch = new ArrayList<>();
+        Iterator<JSONObject> iterator = entries.values().iterator();
+        while (iterator.hasNext() && inFlight.size() + batch.size() < BATCH_SIZE) {
+            JSONObject entry = iterator.next();
+            if (inFlight.contains(entry)) {
+                continue;
+            }
+            if (now - entry.optLong(CREATED) > MAX_AGE_MILLIS) {
+                Logger.warn(TAG, "Drop expired request %s", entry.optString(URL));
+                Listener.onSuccess(listeners.remove(entry), null);
+                iterator.remove();
+                continue;
+            }
+            long next = entry.optLong(NEXT_ATTEMPT);
+            if (next <= now) {
+                batch.add(entry);
+            } else {
+                nextAttempt = Math.min(nextAttempt, next);
+            }
+        }
+        if (batch.isEmpty()) {
+            schedule(nextAttempt);
+            return;
+        }
+
+        OkHttpClient client = OkHttpClientProvider.getInstance().lookup(serverConfig);
+        inFlight.addAll(batch);
+        for (final JSONObject entry : batch) {
+            Request request;
+            try {
+                request = toRequest(entry);
+            } catch (JSONException | IllegalArgumentException e) {
+                Logger.error(TAG, e, "Drop invalid request");
+                worker.execute(() -> complete(entry, true, true));
+                continue;
+            }
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    Logger.debug(TAG, "Failed to send %s: %s", call.request().url(), e.getMessage());
+                    //Not a response from the server, only expired by the max age
+                    worker.execute(() -> complete(entry, false, false));
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    int code = response.code();
+                    response.close();
+                    worker.execute(() -> complete(entry, !isTransient(code), true));
+                }
+            });
+        }
+    }
+
+    /**
+     * Complete an attempt to send the request.
+     *
+     * @param entry     The request
+     * @param done      True if the request is delivered or should not be retried
+     * @param responded True if the server responded, only responses count towards {@link #MAX_ATTEMPTS}
+     */
+    private void complete(JSONObject entry, boolean done, boolean responded) {
+        Listener.onSuccess(listeners.remove(entry), null);
+        String key = entry.optString(KEY);
+        //Replaced by a newer request while in flight, the newer request is still pending
+        if (entries.get(key) == entry) {
+            int attempts = entry.optInt(ATTEMPTS) + (responded ? 1 : 0);
+            int retries = entry.optInt(RETRIES) + 1;
+            if (done || attempts >= MAX_ATTEMPTS) {
+                entries.remove(key);
+            } else {
+                try {
+                    entry.put(ATTEMPTS, attempts);
+                    entry.put(RETRIES, retries);
+                    entry.put(NEXT_ATTEMPT, System.currentTimeMillis() + backoff(retries));
+                } catch (JSONException e) {
+                    entries.remove(key);
+                }
+            }
+        }
+        inFlight.remove(entry);
+        if (inFlight.isEmpty()) {
+            persist();
+        }
+        drain();
+    }
+
+    private void schedule(long nextAttempt) {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+        if (nextAttempt != Long.MAX_VALUE) {
+            long delay = Math.max(0, nextAttempt - System.currentTimeMillis());
+            scheduled = worker.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void copy(JSONObject from, JSONObject to, String name) {
+        try {
+            to.put(name, from.opt(name));
+        } catch (JSONException e) {
+            //Ignore, cannot happen with a valid value
+        }
+    }
+
+    private static boolean isTransient(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    /**
+     * Exponential backoff with full jitter.
+     */
+    private static long backoff(int retries) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BACKOFF_MILLIS << Math.min(retries, 20));
+        return (long) (ceiling * ThreadLocalRandom.current().nextDouble());
+    }
+
+    private static synchronized void registerNetworkCallback(Context context) {
+        if (registered == context) {
+            return;
+        }
+        registered = context;
+        //Network state requires ACCESS_NETWORK_STATE, rely on the backoff without the permission
+        if (context.checkCallingOrSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE)
+                != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            return;
+        }
+        try {
+            connectivityManager.registerNetworkCallback(new NetworkRequest.Builder()
+                            .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                            .build(),
+                    new ConnectivityManager.NetworkCallback() {
+                        @Override
+                        public void onAvailable(Network network) {
+                            OutboundQueue queue = current;
+                            if (queue != null) {
+                                queue.retryNow();
+                            }
+                        }
+                    });
+        } catch (RuntimeException e) {
+            Logger.warn(TAG, e, "Failed to listen to network changes");
+        }
+    }
+
+    private static JSONObject toJson(String key, Request request) throws IOException, JSONException {
+        JSONObject entry = new JSONObject();
+        entry.put(KEY, key);
+        entry.put(URL, request.url().toString());
+        entry.put(METHOD, request.method());
+        JSONObject headers = new JSONObject();
+        for (String name : request.headers().names()) {
+            headers.put(name, request.header(name));
+        }
+        entry.put(HEADERS, headers);
+        RequestBody body = request.body();
+        if (body != null) {
+            Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            entry.put(BODY, Base64.encodeToString(buffer.readByteArray(), Base64.NO_WRAP));
+            if (body.contentType() != null) {
+                entry.put(CONTENT_TYPE, body.contentType().toString());
+            }
+        }
+        if (request.tag() instanceof Action) {
+            entry.put(ACTION, ((Action) request.tag()).getType());
+        }
+        entry.put(ATTEMPTS, 0);
+        entry.put(RETRIES, 0);
+        entry.put(NEXT_ATTEMPT, 0);
+        entry.put(CREATED, System.currentTimeMillis());
+        return entry;
+    }
+
+    private static Request toRequest(JSONObject entry) throws JSONException {
+        Headers.Builder headers = new Headers.Builder();
+        JSONObject json = entry.getJSONObject(HEADERS);
+        Iterator<String> names = json.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            headers.add(name, json.getString(name));
+        }
+        RequestBody body = null;
+        if (entry.has(BODY)) {
+            String contentType = entry.optString(CONTENT_TYPE, null);
+            body = RequestBody.create(Base64.decode(entry.getString(BODY), Base64.NO_WRAP),
+                    contentType == null ? null : MediaType.parse(contentType));
+        }
+        Request.Builder builder = new Request.Builder()
+                .url(entry.getString(URL))
+                .headers(headers.build())
+                .method(entry.getString(METHOD), body);
+        if (entry.has(ACTION)) {
+            builder.tag(new Action(entry.getString(ACTION)));
+        }
+        return builder.build();
+    }
+}
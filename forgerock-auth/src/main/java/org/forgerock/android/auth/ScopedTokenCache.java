@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.annotation.SuppressLint;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Bounded store of the {@link AccessToken}s issued for other scopes than the configured scope, in addition to the
+ * token of the session. The tokens are keyed by the audience (the client the token is issued to) and the normalized
+ * scope set, and persisted with the {@link SharedPreferences} of the {@link TokenManager}, which encrypts them by
+ * default.
+ * <p>
+ * When the store is full, the token issued the longest time ago is evicted.
+ */
+class ScopedTokenCache {
+
+    private static final String TAG = ScopedTokenCache.class.getSimpleName();
+
+    static final String SCOPED_ACCESS_TOKENS = "scoped_access_tokens";
+
+    private static final String KEY = "key";
+    private static final String SCOPE = "scope";
+    private static final String TOKEN = "token";
+
+    private final SharedPreferences sharedPreferences;
+    private final int maxSize;
+
+    /**
+     * A token of the store.
+     */
+    static class Entry {
+        final String key;
+        final Set<String> scope;
+        final AccessToken accessToken;
+
+        private Entry(String key, Set<String> scope, AccessToken accessToken) {
+            this.key = key;
+            this.scope = scope;
+            this.accessToken = accessToken;
+        }
+    }
+
+    ScopedTokenCache(@NonNull SharedPreferences sharedPreferences, int maxSize) {
+        this.sharedPreferences = sharedPreferences;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Normalize the scope set, the scope values are trimmed and sorted.
+     *
+     * @param scope The scope set
+     * @return The normalized scope set
+     */
+    static Set<String> normalize(Collection<String> scope) {
+        Set<String> result = new TreeSet<>();
+        if (scope != null) {
+            for (String s : scope) {
+                if (s != null && !s.trim().isEmpty()) {
+                    result.add(s.trim());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The key of the token issued to the audience for the scope.
+     *
+     * @param audience The audience of the token
+     * @param scope    The normalized scope set
+     * @return The key
+     */
+    static String key(String audience, Set<String> scope) {
+        return audience + " " + TextUtils.join(" ", scope);
+    }
+
+    /**
+     * Select the token with the smallest scope which satisfies the requested scope.
+     *
+     * @param audience     The audience of the token
+     * @param sessionToken The session the token has to be bound to
+     * @param scope        The requested scope
+     * @return The selected token, or null if no token satisfies the scope
+     */
+    synchronized Entry select(String audience, SSOToken sessionToken, Set<String> scope) {
+        Entry selected = null;
+        for (Entry entry : load()) {
+            if (!entry.key.startsWith(audience + " ")
+                    || !sameSession(entry.accessToken, sessionToken)
+                    || !entry.scope.containsAll(scope)) {
+                continue;
+            }
+            if (selected == null
+                    || entry.scope.size() < selected.scope.size()
+                    || (entry.scope.size() == selected.scope.size()
+                    && entry.accessToken.getExpiration().after(selected.accessToken.getExpiration()))) {
+                selected = entry;
+            }
+        }
+        if (selected != null) {
+            selected.accessToken.setPersisted(true);
+        }
+        return selected;
+    }
+
+    /**
+     * Store the token, the token replaces the token with the same key. The tokens which are evicted or bound to
+     * another session are removed.
+     *
+     * @param key          The key of the token
+     * @param scope        The requested scope, the granted scope of the token is used when provided
+     * @param accessToken  The token
+     * @return The removed tokens, to be revoked
+     */
+    synchronized List<AccessToken> put(String key, Set<String> scope, AccessToken accessToken) {
+        List<Entry> entries = load();
+        List<AccessToken> removed = new ArrayList<>();
+        List<Entry> kept = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.key.equals(key)) {
+                continue;
+            }
+            if (sameSession(entry.accessToken, accessToken.getSessionToken())) {
+                kept.add(entry);
+            } else {
+                removed.add(entry.accessToken);
+            }
+        }
+        Set<String> granted = accessToken.getScope() == null ? scope : normalize(accessToken.getScope());
+        kept.add(new Entry(key, granted, accessToken));
+        while (kept.size() > maxSize) {
+            removed.add(kept.remove(0).accessToken);
+        }
+        save(kept);
+        return removed;
+    }
+
+    /**
+     * Remove the token.
+     *
+     * @param key The key of the token
+     */
+    synchronized void remove(String key) {
+        List<Entry> entries = load();
+        List<Entry> kept = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!entry.key.equals(key)) {
+                kept.add(entry);
+            }
+        }
+        if (kept.size() != entries.size()) {
+            save(kept);
+        }
+    }
+
+    /**
+     * Retrieve all the tokens.
+     *
+     * @return The tokens
+     */
+    synchronized List<AccessToken> getAll() {
+        List<AccessToken> result = new ArrayList<>();
+        for (Entry entry : load()) {
+            result.add(entry.accessToken);
+        }
+        return result;
+    }
+
+    private static boolean sameSession(AccessToken accessToken, SSOToken sessionToken) {
+        if (accessToken.getSessionToken() == null || sessionToken == null) {
+            return accessToken.getSessionToken() == null && sessionToken == null;
+        }
+        return accessToken.getSessionToken().getValue().equals(sessionToken.getValue());
+    }
+
+    private List<Entry> load() {
+        List<Entry> entries = new ArrayList<>();
+        String value = sharedPreferences.getString(SCOPED_ACCESS_TOKENS, null);
+        if (value == null) {
+            return entries;
+        }
+        try {
+            JSONArray array = new JSONArray(value);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject object = array.getJSONObject(i);
+                AccessToken accessToken = AccessToken.fromJson(object.getString(TOKEN));
+                if (accessToken != null) {
+                    entries.add(new Entry(object.getString(KEY),
+                            normalize(AccessToken.Scope.fromJsonArray(object.getJSONArray(SCOPE))),
+                            accessToken));
+                }
+            }
+        } catch (JSONException e) {
+            Logger.warn(TAG, e, "Failed to parse the stored Access Tokens, discarding them");
+        }
+        return entries;
+    }
+
+    @SuppressLint("ApplySharedPref")
+    private void save(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            sharedPreferences.edit().remove(SCOPED_ACCESS_TOKENS).commit();
+            return;
+        }
+        JSONArray array = new JSONArray();
+        try {
+            for (Entry entry : entries) {
+                JSONObject object = new JSONObject();
+                object.put(KEY, entry.key);
+                object.put(SCOPE, new AccessToken.Scope(entry.scope).toJsonArray());
+                object.put(TOKEN, entry.accessToken.toJson());
+                array.put(object);
+            }
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        sharedPreferences.edit().putString(SCOPED_ACCESS_TOKENS, array.toString()).commit();
+    }
+}
@@ -17,10 +17,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 
 import lombok.Builder;
 import okhttp3.Cookie;
@@ -30,17 +26,14 @@ import okhttp3.HttpUrl;
 public class SecureCookieJar implements CookieJar {
 
     private SingleSignOnManager singleSignOnManager;
-    private AtomicReference<Set<Cookie>> cacheRef = new AtomicReference<>();
-    private final long cacheIntervalMillis;
-    private static final ScheduledExecutorService worker =
-            Executors.newSingleThreadScheduledExecutor();
+    private final ExpiringReference<Set<Cookie>> cacheRef;
 
     @Builder
     public SecureCookieJar(Context context, SingleSignOnManager singleSignOnManager, Long cacheIntervalMillis) {
         this.singleSignOnManager = singleSignOnManager == null ?
                 Config.getInstance().getSingleSignOnManager() : singleSignOnManager;
-        this.cacheIntervalMillis = cacheIntervalMillis == null ?
-                context.getResources().getInteger(R.integer.forgerock_cookie_cache) * 1000 : cacheIntervalMillis;
+        this.cacheRef = new ExpiringReference<>(cacheIntervalMillis == null ?
+                context.getResources().getInteger(R.integer.forgerock_cookie_cache) * 1000 : cacheIntervalMillis);
     }
 
     @NotNull
@@ -132,10 +125,7 @@ public class SecureCookieJar implements CookieJar {
     }
 
     private void cache(Set<Cookie> cookies) {
-        if (cacheIntervalMillis > 0) {
-            cacheRef.set(cookies);
-            worker.schedule(() -> cacheRef.set(null), cacheIntervalMillis, TimeUnit.MILLISECONDS);
-        }
+        cacheRef.set(cookies);
     }
 
 }
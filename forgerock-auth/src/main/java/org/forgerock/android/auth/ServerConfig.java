@@ -12,6 +12,8 @@ import android.content.Context;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -32,6 +34,10 @@ public class ServerConfig extends NetworkConfig {
     public static final String API_VERSION_3_1 = "resource=3.1, protocol=1.0";
     public static final String ACCEPT_API_VERSION = "Accept-API-Version";
 
+    //Dispatch to the RequestInterceptorRegistry, support dynamic change of RequestInterceptor
+    private static final List<okhttp3.Interceptor> REQUEST_INTERCEPTORS =
+            singletonList(new OkHttpRequestInterceptor(RequestInterceptorRegistry.getInstance()));
+
     private String url;
     private String realm;
     private String cookieName;
@@ -65,9 +71,7 @@ public class ServerConfig extends NetworkConfig {
                 getTimeOut(context, timeout),
                 timeUnit, cookieJarSupplier,
                 getPins(context, pins),
-                () -> singletonList(new OkHttpRequestInterceptor( //support dynamic change of RequestInterceptor
-                                RequestInterceptorRegistry.getInstance().getRequestInterceptors()))
-        );
+                () -> REQUEST_INTERCEPTORS);
         this.url = url;
         this.realm = realm == null ? context.getResources().getString(R.string.forgerock_realm) : realm;
         this.cookieName = cookieName;
@@ -80,6 +84,11 @@ public class ServerConfig extends NetworkConfig {
 
     }
 
+    @Override
+    Collection<String> getSecretCookieNames() {
+        return cookieName == null ? Collections.emptyList() : singletonList(cookieName);
+    }
+
     private static String getHost(Context context, String url) {
         try {
             String u = url == null ? context.getResources().getString(R.string.forgerock_url) : url;
@@ -16,6 +16,7 @@ import org.forgerock.android.auth.exception.AuthenticationRequiredException;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Manage the user session
@@ -27,6 +28,8 @@ class SessionManager {
     @Getter
     private SingleSignOnManager singleSignOnManager;
     private List<Interceptor<?>> interceptors;
+    private final SingleFlight<AccessToken> accessTokenFlights = new SingleFlight<>();
+    private static final String ACCESS_TOKEN = "ACCESS_TOKEN";
 
     @Builder
     public SessionManager(TokenManager tokenManager, SingleSignOnManager singleSignOnManager)  {
@@ -59,8 +62,52 @@ class SessionManager {
      * @param listener The Listener to listen for the result
      */
     void getAccessToken(final FRListener<AccessToken> listener) {
-        InterceptorHandler interceptorHandler = new InterceptorHandler(null, interceptors, listener, 0);
-        interceptorHandler.proceed(null);
+        //Concurrent calls share the same token retrieval
+        accessTokenFlights.execute(ACCESS_TOKEN, listener, l -> {
+            InterceptorHandler interceptorHandler = new InterceptorHandler(null, interceptors, l, 0);
+            interceptorHandler.proceed(null);
+            return null;
+        });
+    }
+
+    /**
+     * Refresh the {@link AccessToken}, the stored {@link AccessToken} is returned if the token has already been
+     * refreshed by a concurrent caller.
+     *
+     * @param accessToken The {@link AccessToken} to refresh
+     * @return The refreshed {@link AccessToken}
+     * @throws AuthenticationRequiredException When failed to refresh the {@link AccessToken}
+     */
+    @WorkerThread
+    AccessToken refresh(AccessToken accessToken) throws AuthenticationRequiredException {
+        FRListenerFuture<AccessToken> listener = new FRListenerFuture<>();
+        tokenManager.refresh(accessToken, listener);
+        try {
+            return listener.get();
+        } catch (Exception e) {
+            throw new AuthenticationRequiredException(e);
+        }
+    }
+
+    /**
+     * Retrieve an {@link AccessToken} which grants the requested scopes, the {@link AccessToken} of the session is
+     * retrieved first.
+     *
+     * @param scopes   The requested scopes
+     * @param listener The Listener to listen for the result
+     */
+    void getAccessToken(final Set<String> scopes, final FRListener<AccessToken> listener) {
+        getAccessToken(new FRListener<AccessToken>() {
+            @Override
+            public void onSuccess(AccessToken result) {
+                tokenManager.getScopedAccessToken(scopes, listener);
+            }
+
+            @Override
+            public void onException(Exception e) {
+                Listener.onException(listener, e);
+            }
+        });
     }
 
     /**
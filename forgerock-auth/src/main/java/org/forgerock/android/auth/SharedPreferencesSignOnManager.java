@@ -51,13 +51,14 @@ class SharedPreferencesSignOnManager implements SingleSignOnManager {
 
     @Override
     public void persist(Collection<String> cookies) {
+        //Cookies are updated with most of the responses, apply to coalesce the writes
         if (cookies.isEmpty()) {
-            sharedPreferences.edit().remove(COOKIES).commit();
+            sharedPreferences.edit().remove(COOKIES).apply();
         } else {
             Set<String> set = new HashSet<>(cookies);
             sharedPreferences.edit()
                     .putStringSet(COOKIES, set)
-                    .commit();
+                    .apply();
         }
     }
 
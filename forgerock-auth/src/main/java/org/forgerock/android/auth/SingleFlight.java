@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Request;
+import okio.Buffer;
+
+/**
+ * Coalesce identical concurrent calls, the first caller starts the call and the callers which arrive
+ * while the call is in flight are attached to it. All the callers receive the same result or the same exception.
+ * The result is not cached, a caller arriving after the call completes starts a new call.
+ *
+ * @param <T> The type of the result
+ */
+class SingleFlight<T> {
+
+    private static final String TAG = SingleFlight.class.getSimpleName();
+
+    /**
+     * The coalesced call.
+     *
+     * @param <T> The type of the result
+     */
+    interface Call<T> {
+
+        /**
+         * Start the call.
+         *
+         * @param listener Listener to notify with the result
+         * @return The underlying HTTP call to cancel when all callers are detached, or null
+         */
+        okhttp3.Call start(FRListener<T> listener);
+    }
+
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    /**
+     * Execute the call, or attach the listener to the identical call in flight.
+     *
+     * @param key      The identity of the call, see {@link #key(Request)}
+     * @param listener Listener to notify with the result
+     * @param call     The call to start when there is no identical call in flight
+     * @return The flight the listener is attached to
+     */
+    Flight execute(@NonNull String key, FRListener<T> listener, @NonNull Call<T> call) {
+        Flight flight;
+        synchronized (flights) {
+            flight = flights.get(key);
+            if (flight != null) {
+                flight.listeners.add(listener);
+                Logger.debug(TAG, "Attached to the call in flight: %s", key);
+                return flight;
+            }
+            flight = new Flight(key);
+            flight.listeners.add(listener);
+            flights.put(key, flight);
+        }
+        okhttp3.Call httpCall;
+        try {
+            httpCall = call.start(flight);
+        } catch (RuntimeException e) {
+            flight.onException(e);
+            return flight;
+        }
+        synchronized (flights) {
+            flight.httpCall = httpCall;
+            if (flight.listeners.isEmpty() && httpCall != null) {
+                //All callers are detached before the call starts
+                httpCall.cancel();
+            }
+        }
+        return flight;
+    }
+
+    /**
+     * Number of calls in flight.
+     *
+     * @return The number of calls in flight
+     */
+    int size() {
+        synchronized (flights) {
+            return flights.size();
+        }
+    }
+
+    /**
+     * Canonical identity of a request: the {@link Action} type, method, URL, headers and a digest of the body.
+     *
+     * @param request The request
+     * @return The identity of the request
+     */
+    static String key(@NonNull Request request) {
+        StringBuilder builder = new StringBuilder();
+        if (request.tag() instanceof Action) {
+            builder.append(((Action) request.tag()).getType());
+        }
+        builder.append(' ').append(request.method())
+                .append(' ').append(request.url());
+        for (int i = 0; i < request.headers().size(); i++) {
+            builder.append('\n').append(request.headers().name(i).toLowerCase())
+                    .append(':').append(request.headers().value(i));
+        }
+        if (request.body() != null) {
+            Buffer buffer = new Buffer();
+            try {
+                request.body().writeTo(buffer);
+                builder.append('\n').append(buffer.sha256().hex());
+            } catch (IOException e) {
+                //Cannot happen with an in-memory body, do not coalesce the request
+                builder.append('\n').append(System.identityHashCode(request));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A call in flight, fan out the result to the attached listeners.
+     */
+    class Flight implements FRListener<T> {
+
+        private final String key;
+        private final List<FRListener<T>> listeners = new ArrayList<>();
+        private okhttp3.Call httpCall;
+        private boolean completed;
+
+        private Flight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Detach the listener, the listener is not notified with the result. The call is cancelled when all the
+         * listeners are detached.
+         *
+         * @param listener The listener to detach
+         */
+        void cancel(FRListener<T> listener) {
+            okhttp3.Call toCancel = null;
+            synchronized (flights) {
+                if (completed || !listeners.remove(listener)) {
+                    return;
+                }
+                if (listeners.isEmpty()) {
+                    if (flights.get(key) == this) {
+                        flights.remove(key);
+                    }
+                    completed = true;
+                    toCancel = httpCall;
+                }
+            }
+            if (toCancel != null) {
+                toCancel.cancel();
+            }
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            for (FRListener<T> listener : complete()) {
+                try {
+                    Listener.onSuccess(listener, result);
+                } catch (RuntimeException e) {
+                    Logger.error(TAG, e, "Listener failed to handle the result of %s", key);
+                }
+            }
+        }
+
+        @Override
+        public void onException(Exception e) {
+            for (FRListener<T> listener : complete()) {
+                try {
+                    Listener.onException(listener, e);
+                } catch (RuntimeException ex) {
+                    Logger.error(TAG, ex, "Listener failed to handle the error of %s", key);
+                }
+            }
+        }
+
+        /**
+         * Complete the flight, the following callers start a new call.
+         *
+         * @return The listeners to notify, empty if the flight is already completed
+         */
+        private List<FRListener<T>> complete() {
+            synchronized (flights) {
+                if (completed) {
+                    return new ArrayList<>();
+                }
+                completed = true;
+                if (flights.get(key) == this) {
+                    flights.remove(key);
+                }
+                return new ArrayList<>(listeners);
+            }
+        }
+    }
+}
@@ -9,6 +9,8 @@ package org.forgerock.android.auth;
 
 import org.forgerock.android.auth.exception.AuthenticationRequiredException;
 
+import java.util.Set;
+
 /**
  * Interface to Manage OAuth2 Tokens
  */
@@ -51,6 +53,36 @@ public interface TokenManager {
      */
     void getAccessToken(AccessTokenVerifier accessTokenVerifier, FRListener<AccessToken> tokenListener);
 
+    /**
+     * Get an {@link AccessToken} which grants the requested scopes asynchronously.
+     *
+     * <p>
+     * The token with the smallest scope which satisfies the requested scopes is returned, a token is requested for
+     * the scopes when no stored token satisfies them. This default implementation only returns the stored
+     * {@link AccessToken} when it satisfies the scopes.
+     *
+     * @param scopes        The requested scopes
+     * @param tokenListener Listener to listen for get access token event.
+     */
+    default void getScopedAccessToken(Set<String> scopes, FRListener<AccessToken> tokenListener) {
+        getAccessToken(null, new FRListener<AccessToken>() {
+            @Override
+            public void onSuccess(AccessToken result) {
+                if (result.getScope() == null || result.getScope().containsAll(scopes)) {
+                    Listener.onSuccess(tokenListener, result);
+                } else {
+                    Listener.onException(tokenListener,
+                            new AuthenticationRequiredException("Access Token does not grant the requested scopes."));
+                }
+            }
+
+            @Override
+            public void onException(Exception e) {
+                Listener.onException(tokenListener, e);
+            }
+        });
+    }
+
     /**
      * Check if token exists in the storage.
      *
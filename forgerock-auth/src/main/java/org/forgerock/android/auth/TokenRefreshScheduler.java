@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Builder;
+
+/**
+ * Refresh the {@link AccessToken} in the background a margin before its expiration, so that the callers of
+ * {@link TokenManager#getAccessToken(AccessTokenVerifier, FRListener)} do not wait for the refresh.
+ * <p>
+ * The refresh only runs while the application is in the foreground (tracked by {@link InitProvider}) and the
+ * network is available, it is deferred until both are back otherwise. A failed refresh is retried with
+ * exponential backoff until the token expires, after which the token is refreshed on demand as before.
+ * The lifecycle and network callbacks are registered once per application and notify the latest scheduler.
+ * <p>
+ * The scheduler is disabled by default, enable it with {@code forgerock_oauth_refresh}, the margin is
+ * configured with {@code forgerock_oauth_refresh_margin}.
+ */
+class TokenRefreshScheduler {
+
+    private static final String TAG = TokenRefreshScheduler.class.getSimpleName();
+
+    private static final ActionPolicy BACKOFF = ActionPolicy.builder()
+            .backoffMillis(TimeUnit.SECONDS.toMillis(5))
+            .maxBackoffMillis(TimeUnit.MINUTES.toMillis(5))
+            .build();
+
+    private static final ScheduledExecutorService worker =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ForgeRock-TokenRefresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    //The scheduler notified by the process-wide callbacks, the latest scheduler replaces the previous one
+    private static volatile TokenRefreshScheduler current;
+    //Guarded by TokenRefreshScheduler.class, the callbacks are registered once per application
+    private static Context registered;
+
+    private final Context context;
+    private final long marginMillis;
+
+    //Guarded by this
+    private DefaultTokenManager tokenManager;
+    private AccessToken accessToken;
+    private int failures;
+    private ScheduledFuture<?> scheduled;
+
+    @Builder
+    private TokenRefreshScheduler(@NonNull Context context, Long marginMillis) {
+        this.context = context.getApplicationContext();
+        this.marginMillis = marginMillis == null
+                ? context.getResources().getInteger(R.integer.forgerock_oauth_refresh_margin) * 1000L : marginMillis;
+        current = this;
+        register(this.context);
+    }
+
+    /**
+     * Check if the proactive refresh is enabled with {@code forgerock_oauth_refresh}.
+     *
+     * @param context The Application Context
+     * @return True if the proactive refresh is enabled
+     */
+    static boolean isEnabled(Context context) {
+        return context.getResources().getBoolean(R.bool.forgerock_oauth_refresh);
+    }
+
+    /**
+     * Schedule the refresh of the {@link AccessToken}, replacing the previous schedule.
+     *
+     * @param tokenManager The {@link DefaultTokenManager} to refresh the token with
+     * @param accessToken  The token to refresh
+     */
+    synchronized void schedule(@NonNull DefaultTokenManager tokenManager, @NonNull AccessToken accessToken) {
+        if (accessToken.getRefreshToken() == null || accessToken.getExpiration() == null) {
+            cancel();
+            return;
+        }
+        if (accessToken.getValue().equals(this.accessToken == null ? null : this.accessToken.getValue())
+                && scheduled != null) {
+            //Already scheduled
+            return;
+        }
+        this.tokenManager = tokenManager;
+        this.accessToken = accessToken;
+        this.failures = 0;
+        reschedule();
+    }
+
+    /**
+     * Schedule the refresh of the {@link AccessToken} if no token is scheduled.
+     *
+     * @param tokenManager The {@link DefaultTokenManager} to refresh the token with
+     * @param accessToken  The token to refresh
+     */
+    synchronized void scheduleIfIdle(@NonNull DefaultTokenManager tokenManager, @NonNull AccessToken accessToken) {
+        if (this.accessToken == null) {
+            schedule(tokenManager, accessToken);
+        }
+    }
+
+    /**
+     * Cancel the scheduled refresh.
+     */
+    synchronized void cancel() {
+        tokenManager = null;
+        accessToken = null;
+        failures = 0;
+        cancelScheduled();
+    }
+
+    @VisibleForTesting
+    synchronized boolean isScheduled() {
+        return scheduled != null;
+    }
+
+    /**
+     * Schedule the refresh for the current state, the margin before the expiration or the backoff after a failure.
+     */
+    private synchronized void reschedule() {
+        cancelScheduled();
+        if (accessToken == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (accessToken.getExpiration().getTime() <= now) {
+            Logger.debug(TAG, "Access Token expired, refresh on demand");
+            return;
+        }
+        if (!InitProvider.isForeground() || !isNetworkAvailable()) {
+            //Resumed by the lifecycle or network callback
+            return;
+        }
+        long delay = accessToken.getExpiration().getTime() - marginMillis - now;
+        if (failures > 0) {
+            delay = Math.max(delay, BACKOFF.backoff(failures - 1, ThreadLocalRandom.current().nextDouble()));
+        }
+        delay = Math.max(0, delay);
+        Logger.debug(TAG, "Access Token refresh scheduled in %d ms", delay);
+        scheduled = worker.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelScheduled() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+
+    private void refresh() {
+        final DefaultTokenManager refreshWith;
+        final AccessToken toRefresh;
+        synchronized (this) {
+            scheduled = null;
+            if (accessToken == null || !InitProvider.isForeground() || !isNetworkAvailable()) {
+                return;
+            }
+            refreshWith = tokenManager;
+            toRefresh = accessToken;
+        }
+        Logger.debug(TAG, "Refreshing Access Token ahead of expiration");
+        refreshWith.refresh(toRefresh, new FRListener<AccessToken>() {
+            @Override
+            public void onSuccess(AccessToken result) {
+                //The refreshed token is persisted and scheduled by the token manager, schedule the token
+                //refreshed by another caller as well
+                schedule(refreshWith, result);
+            }
+
+            @Override
+            public void onException(Exception e) {
+                synchronized (TokenRefreshScheduler.this) {
+                    if (accessToken != toRefresh) {
+                        //Replaced or cancelled in the meantime
+                        return;
+                    }
+                    failures++;
+                    Logger.warn(TAG, e, "Failed to refresh Access Token, attempt %d", failures);
+                    reschedule();
+                }
+            }
+        });
+    }
+
+    private synchronized void onForeground() {
+        if (scheduled == null) {
+            reschedule();
+        }
+    }
+
+    private synchronized void onBackground() {
+        if (!InitProvider.isForeground()) {
+            cancelScheduled();
+        }
+    }
+
+    private boolean isNetworkAvailable() {
+        //Network state requires ACCESS_NETWORK_STATE, rely on the backoff without the permission
+        if (context.checkCallingOrSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE)
+                != PackageManager.PERMISSION_GRANTED) {
+            return true;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            return true;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            NetworkCapabilities capabilities =
+                    connectivityManager.getNetworkCapabilities(connectivityManager.getActiveNetwork());
+            return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        }
+        return isConnected(connectivityManager);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static boolean isConnected(ConnectivityManager connectivityManager) {
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    private static synchronized void register(Context context) {
+        if (registered == context) {
+            return;
+        }
+        registered = context;
+        registerLifecycleCallbacks(context);
+        registerNetworkCallback(context);
+    }
+
+    private static void registerNetworkCallback(Context context) {
+        if (context.checkCallingOrSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE)
+                != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            return;
+        }
+        try {
+            connectivityManager.registerNetworkCallback(new NetworkRequest.Builder()
+                            .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                            .build(),
+                    new ConnectivityManager.NetworkCallback() {
+                        @Override
+                        public void onAvailable(Network network) {
+                            TokenRefreshScheduler scheduler = current;
+                            if (scheduler != null) {
+                                scheduler.reschedule();
+                            }
+                        }
+                    });
+        } catch (RuntimeException e) {
+            Logger.warn(TAG, e, "Failed to listen to network changes");
+        }
+    }
+
+    private static void registerLifecycleCallbacks(Context context) {
+        if (!(context instanceof Application)) {
+            return;
+        }
+        //Registered after InitProvider, the foreground state is up to date when these callbacks run
+        ((Application) context).registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityStarted(@NonNull Activity activity) {
+                TokenRefreshScheduler scheduler = current;
+                if (scheduler != null) {
+                    scheduler.onForeground();
+                }
+            }
+
+            @Override
+            public void onActivityResumed(@NonNull Activity activity) {
+            }
+
+            @Override
+            public void onActivityPaused(@NonNull Activity activity) {
+            }
+
+            @Override
+            public void onActivityStopped(@NonNull Activity activity) {
+                TokenRefreshScheduler scheduler = current;
+                if (scheduler != null) {
+                    scheduler.onBackground();
+                }
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(@NonNull Activity activity) {
+            }
+        });
+    }
+}
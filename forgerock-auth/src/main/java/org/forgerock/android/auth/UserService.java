@@ -13,6 +13,7 @@ import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okio.ByteString;
 
 import org.forgerock.android.auth.interceptor.AccessTokenInterceptor;
 import org.jetbrains.annotations.NotNull;
@@ -31,6 +32,7 @@ class UserService implements ResponseHandler {
     private OkHttpClient client;
     private ServerConfig serverConfig;
     private static final Action USER_INFO = new Action(Action.USER_INFO);
+    private static final SingleFlight<UserInfo> FLIGHTS = new SingleFlight<>();
 
     @Builder
     private UserService(ServerConfig serverConfig) {
@@ -55,7 +57,50 @@ class UserService implements ResponseHandler {
             return;
         }
 
-        client.newCall(request).enqueue(new okhttp3.Callback() {
+        final Request userInfoRequest = request;
+        FRUser user = FRUser.getCurrentUser();
+        if (user == null) {
+            coalesce(userInfoRequest, null, listener);
+            return;
+        }
+        //Resolve the access token injected by the AccessTokenInterceptor, callers with different
+        //credentials do not share the same call
+        user.getAccessToken(new FRListener<AccessToken>() {
+            @Override
+            public void onSuccess(AccessToken accessToken) {
+                coalesce(userInfoRequest, accessToken, listener);
+            }
+
+            @Override
+            public void onException(Exception e) {
+                coalesce(userInfoRequest, null, listener);
+            }
+        });
+    }
+
+    private void coalesce(Request request, AccessToken accessToken, FRListener<UserInfo> listener) {
+        //Concurrent calls with the same credential share the same request
+        FLIGHTS.execute(key(request, accessToken), listener, l -> userinfo(request, l));
+    }
+
+    /**
+     * Identity of the userinfo call, the request and a digest of the access token used to authorize it.
+     *
+     * @param request     The userinfo request
+     * @param accessToken The access token, or null if the request is not authorized
+     * @return The identity of the call
+     */
+    static String key(Request request, AccessToken accessToken) {
+        String key = SingleFlight.key(request);
+        if (accessToken == null || accessToken.getValue() == null) {
+            return key;
+        }
+        return key + '\n' + ByteString.encodeUtf8(accessToken.getValue()).sha256().hex();
+    }
+
+    private Call userinfo(Request request, final FRListener<UserInfo> listener) {
+        Call call = client.newCall(request);
+        call.enqueue(new okhttp3.Callback() {
 
             @Override
             public void onFailure(@NotNull Call call, @NotNull IOException e) {
@@ -76,6 +121,7 @@ class UserService implements ResponseHandler {
                 }
             }
         });
+        return call;
     }
 
     private URL getUserInfoUrl() throws MalformedURLException {
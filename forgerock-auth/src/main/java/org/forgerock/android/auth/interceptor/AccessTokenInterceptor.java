@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2019 ForgeRock. All rights reserved.
+ * Copyright (c) 2019 - 2020 ForgeRock. All rights reserved.
  *
  * This software may be modified and distributed under the terms
  * of the MIT license. See the LICENSE file for details.
@@ -7,40 +7,134 @@
 
 package org.forgerock.android.auth.interceptor;
 
+import android.content.Context;
+
 import lombok.RequiredArgsConstructor;
 import okhttp3.Interceptor;
+import okhttp3.Request;
 import okhttp3.Response;
 
 import org.forgerock.android.auth.AccessToken;
+import org.forgerock.android.auth.Config;
 import org.forgerock.android.auth.FRUser;
 import org.forgerock.android.auth.Logger;
+import org.forgerock.android.auth.R;
 import org.forgerock.android.auth.exception.AuthenticationRequiredException;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Interceptor to inject access token to the API Request
+ * Interceptor to inject access token to the API Request.
+ * <p>
+ * The Authorization header is cached in memory until the access token expires or is rejected, so requests with a
+ * valid token do not wait on the token storage. When the request is rejected with 401, the access token is refreshed
+ * once, shared with the concurrent rejected requests, and the request is replayed with the refreshed token.
  */
 @RequiredArgsConstructor
 public class AccessTokenInterceptor implements Interceptor {
 
     private static final String TAG = AccessTokenInterceptor.class.getSimpleName();
+    private static final String AUTHORIZATION = "Authorization";
+
+    //Shared by the interceptors of the different clients
+    private static final AtomicReference<CachedToken> CACHE = new AtomicReference<>();
 
     @NotNull
     @Override
     public Response intercept(@NotNull Chain chain) throws IOException {
-        AccessToken accessToken;
-            try {
-                if (FRUser.getCurrentUser() != null) {
-                    accessToken = FRUser.getCurrentUser().getAccessToken();
-                    return chain.proceed(chain.request().newBuilder()
-                            .header("Authorization", "Bearer " + accessToken.getValue())
-                            .build());
-                }
-            } catch (AuthenticationRequiredException e) {
-                Logger.warn(TAG, e, "Failed to inject a valid access token");
-           }
-        return chain.proceed(chain.request());
+        Request request = chain.request();
+        FRUser user = FRUser.getCurrentUser();
+        if (user == null) {
+            CACHE.set(null);
+            return chain.proceed(request);
+        }
+
+        CachedToken cached = lookup(user);
+        if (cached == null) {
+            return chain.proceed(request);
+        }
+
+        Response response = chain.proceed(authorize(request, cached));
+        if (response.code() != HttpURLConnection.HTTP_UNAUTHORIZED || !isReplayable(request)) {
+            return response;
+        }
+
+        //The token is rejected, refresh once and replay the request
+        CACHE.compareAndSet(cached, null);
+        CachedToken refreshed;
+        try {
+            refreshed = cache(user, user.refreshAccessToken(cached.accessToken));
+        } catch (AuthenticationRequiredException e) {
+            Logger.warn(TAG, e, "Failed to refresh the rejected access token");
+            return response;
+        }
+        if (refreshed.header.equals(cached.header)) {
+            return response;
+        }
+        response.close();
+        return chain.proceed(authorize(request, refreshed));
+    }
+
+    /**
+     * Retrieve the cached Authorization header of the user, the access token is retrieved from the user when
+     * not cached or expired.
+     *
+     * @param user The current user
+     * @return The cached token, or null if the user has no valid access token
+     */
+    private CachedToken lookup(FRUser user) {
+        CachedToken cached = CACHE.get();
+        if (cached != null && cached.user == user && cached.validUntil > System.currentTimeMillis()) {
+            return cached;
+        }
+        try {
+            return cache(user, user.getAccessToken());
+        } catch (AuthenticationRequiredException e) {
+            Logger.warn(TAG, e, "Failed to inject a valid access token");
+            return null;
+        }
+    }
+
+    private static CachedToken cache(FRUser user, AccessToken accessToken) {
+        CachedToken cached = new CachedToken(user, accessToken, validUntil(accessToken));
+        CACHE.set(cached);
+        return cached;
+    }
+
+    private static long validUntil(AccessToken accessToken) {
+        if (accessToken.getExpiration() == null) {
+            return 0;
+        }
+        Context context = Config.getInstance().getContext();
+        long threshold = context == null ? 0
+                : context.getResources().getInteger(R.integer.forgerock_oauth_threshold);
+        return accessToken.getExpiration().getTime() - threshold * 1000L;
+    }
+
+    private static Request authorize(Request request, CachedToken cached) {
+        return request.newBuilder()
+                .header(AUTHORIZATION, cached.header)
+                .build();
+    }
+
+    private static boolean isReplayable(Request request) {
+        return request.body() == null || !request.body().isOneShot();
+    }
+
+    private static class CachedToken {
+        private final FRUser user;
+        private final AccessToken accessToken;
+        private final String header;
+        private final long validUntil;
+
+        private CachedToken(FRUser user, AccessToken accessToken, long validUntil) {
+            this.user = user;
+            this.accessToken = accessToken;
+            this.header = "Bearer " + accessToken.getValue();
+            this.validUntil = validUntil;
+        }
     }
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.forgerock.android.auth.interceptor.AccessTokenInterceptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class AccessTokenInterceptorTest extends BaseTest {
+
+    private static final String DEFAULT_TOKEN_MANAGER_TEST = "DefaultTokenManagerTest";
+    private static final String DEFAULT_SSO_TOKEN_MANAGER_TEST = "DefaultSSOManagerTest";
+    private static final SSOToken SESSION = new SSOToken("session");
+
+    private final AtomicInteger refreshCount = new AtomicInteger();
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        Config.getInstance().setSharedPreferences(context.getSharedPreferences(DEFAULT_TOKEN_MANAGER_TEST, Context.MODE_PRIVATE));
+        Config.getInstance().setSsoSharedPreferences(context.getSharedPreferences(DEFAULT_SSO_TOKEN_MANAGER_TEST, Context.MODE_PRIVATE));
+        FRUserMockTest.setFinalStatic(FRUser.class.getDeclaredField("current"), null);
+        Config.getInstance().getSingleSignOnManager().persist(SESSION);
+        Config.getInstance().getTokenManager().persist(accessToken("access token"));
+        NetworkPolicy.getInstance().set(Action.REFRESH_TOKEN, ActionPolicy.builder().build());
+
+        client = new OkHttpClient.Builder()
+                .addInterceptor(new AccessTokenInterceptor())
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FRUserMockTest.setFinalStatic(FRUser.class.getDeclaredField("current"), null);
+        NetworkPolicy.getInstance().reset();
+        context.deleteSharedPreferences(DEFAULT_TOKEN_MANAGER_TEST);
+        context.deleteSharedPreferences(DEFAULT_SSO_TOKEN_MANAGER_TEST);
+    }
+
+    @Test
+    public void testCachedHeaderReused() throws Exception {
+        server.setDispatcher(dispatcher("access token", null));
+
+        assertThat(execute().code()).isEqualTo(HttpURLConnection.HTTP_OK);
+        //The stored token is not looked up while the cached token is valid
+        Config.getInstance().getTokenManager().persist(accessToken("other token"));
+        assertThat(execute().code()).isEqualTo(HttpURLConnection.HTTP_OK);
+
+        assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo("Bearer access token");
+        assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo("Bearer access token");
+    }
+
+    @Test
+    public void testRefreshedAndReplayedOnUnauthorized() throws Exception {
+        server.setDispatcher(dispatcher("Refreshed Token", null));
+
+        assertThat(execute().code()).isEqualTo(HttpURLConnection.HTTP_OK);
+        assertThat(refreshCount.get()).isEqualTo(1);
+
+        assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo("Bearer access token");
+        assertThat(server.takeRequest().getBody().readUtf8()).contains("grant_type=refresh_token");
+        assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo("Bearer Refreshed Token");
+
+        //The refreshed token is cached
+        assertThat(execute().code()).isEqualTo(HttpURLConnection.HTTP_OK);
+        assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo("Bearer Refreshed Token");
+        assertThat(refreshCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testConcurrentUnauthorizedRefreshedOnce() throws Exception {
+        int count = 5;
+        server.setDispatcher(dispatcher("Refreshed Token", new CountDownLatch(count)));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<Response>> responses = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                responses.add(executorService.submit(this::execute));
+            }
+            for (Future<Response> response : responses) {
+                assertThat(response.get(10, TimeUnit.SECONDS).code()).isEqualTo(HttpURLConnection.HTTP_OK);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertThat(refreshCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testResponseReturnedWhenRefreshFailed() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().contains("access_token")) {
+                    return new MockResponse().setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST)
+                            .addHeader("Content-Type", "application/json")
+                            .setBody("{\"error\": \"invalid_grant\"}");
+                }
+                return new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAUTHORIZED);
+            }
+        });
+
+        assertThat(execute().code()).isEqualTo(HttpURLConnection.HTTP_UNAUTHORIZED);
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    private Response execute() throws IOException {
+        Response response = client.newCall(new Request.Builder()
+                .url(getUrl() + "/resource")
+                .build()).execute();
+        response.close();
+        return response;
+    }
+
+    /**
+     * Accept the provided token only, the token endpoint issues the refreshed token.
+     *
+     * @param accepted The accepted token
+     * @param rejected Released when all the concurrent requests are rejected, null to reject them immediately
+     */
+    private Dispatcher dispatcher(String accepted, CountDownLatch rejected) {
+        return new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().contains("access_token")) {
+                    refreshCount.incrementAndGet();
+                    return new MockResponse()
+                            .setResponseCode(HttpURLConnection.HTTP_OK)
+                            .addHeader("Content-Type", "application/json")
+                            .setBody(getJson("/authenticate_refreshToken.json"));
+                }
+                if (("Bearer " + accepted).equals(request.getHeader("Authorization"))) {
+                    return new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK);
+                }
+                if (rejected != null) {
+                    rejected.countDown();
+                    rejected.await(5, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAUTHORIZED);
+            }
+        };
+    }
+
+    private static AccessToken accessToken(String value) {
+        return AccessToken.builder()
+                .value(value)
+                .refreshToken("refresh token")
+                .idToken("id token")
+                .expiresIn(3600)
+                .sessionToken(SESSION)
+                .build();
+    }
+}
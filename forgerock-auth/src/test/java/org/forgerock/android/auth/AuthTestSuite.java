@@ -45,7 +45,13 @@ import org.junit.runners.Suite;
         FRDeviceTest.class,
 
         PersistentCookieTest.class,
-        PolicyAdviceTest.class
+        PolicyAdviceTest.class,
+        ConnectionPreWarmerTest.class,
+        OutboundQueueTest.class,
+        SingleFlightTest.class,
+        TokenRefreshSchedulerTest.class,
+        ScopedTokenCacheTest.class,
+        AccessTokenInterceptorTest.class
 
 })
 public class AuthTestSuite {
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConnectionPreWarmerTest extends BaseTest {
+
+    @Test
+    public void testDisabledByDefault() {
+        assertThat(ConnectionPreWarmer.isEnabled(context)).isFalse();
+    }
+
+    @Test
+    public void testConnectionReused() throws Exception {
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+
+        ConnectionPreWarmer.builder()
+                .context(context)
+                .serverConfig(serverConfig)
+                .endpoints(Collections.singletonList("/json/serverinfo/*"))
+                .build()
+                .start();
+
+        RecordedRequest head = server.takeRequest(5, TimeUnit.SECONDS);
+        assertThat(head.getMethod()).isEqualTo("HEAD");
+        RecordedRequest endpoint = server.takeRequest(5, TimeUnit.SECONDS);
+        assertThat(endpoint.getMethod()).isEqualTo("GET");
+        assertThat(endpoint.getPath()).isEqualTo("/json/serverinfo/*");
+        assertThat(endpoint.getSequenceNumber()).isGreaterThan(0);
+
+        //Wait for the connection to be released to the pool, the pool may hold idle connections of other tests
+        for (int i = 0; i < 50 && isConnectionInUse(); i++) {
+            Thread.sleep(10);
+        }
+        //The first SDK request uses the pre-warmed connection
+        OkHttpClient client = OkHttpClientProvider.getInstance().lookup(serverConfig);
+        try (Response response = client.newCall(new Request.Builder().url(getUrl()).build()).execute()) {
+            assertThat(response.isSuccessful()).isTrue();
+        }
+        assertThat(server.takeRequest().getSequenceNumber()).isGreaterThan(0);
+    }
+
+    private static boolean isConnectionInUse() {
+        OkHttpClientProvider.Stats stats = OkHttpClientProvider.getInstance().getStats();
+        return stats.getConnections() > stats.getIdleConnections();
+    }
+
+    @Test
+    public void testSkipInPowerSaveMode() throws Exception {
+        shadowOf((PowerManager) context.getSystemService(Context.POWER_SERVICE)).setIsPowerSaveMode(true);
+        ConnectionPreWarmer preWarmer = ConnectionPreWarmer.builder()
+                .context(context)
+                .serverConfig(serverConfig)
+                .build();
+        assertThat(preWarmer.isAllowed()).isFalse();
+        preWarmer.start();
+
+        assertThat(server.takeRequest(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testSkipOnLowBattery() {
+        Intent battery = new Intent(Intent.ACTION_BATTERY_CHANGED);
+        battery.putExtra(BatteryManager.EXTRA_LEVEL, 10);
+        battery.putExtra(BatteryManager.EXTRA_SCALE, 100);
+        battery.putExtra(BatteryManager.EXTRA_PLUGGED, 0);
+        context.sendStickyBroadcast(battery);
+        ConnectionPreWarmer preWarmer = ConnectionPreWarmer.builder()
+                .context(context)
+                .serverConfig(serverConfig)
+                .build();
+        assertThat(preWarmer.isAllowed()).isFalse();
+
+        //Charging
+        battery.putExtra(BatteryManager.EXTRA_PLUGGED, BatteryManager.BATTERY_PLUGGED_AC);
+        context.sendStickyBroadcast(battery);
+        assertThat(preWarmer.isAllowed()).isTrue();
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        ConnectionPreWarmer.builder()
+                .context(context)
+                .serverConfig(serverConfig)
+                .budgetMillis(100L)
+                .endpoints(Collections.singletonList("json/serverinfo/*"))
+                .build()
+                .start();
+
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS).getMethod()).isEqualTo("HEAD");
+        //The HEAD request timed out, the endpoints are not fetched
+        assertThat(server.takeRequest(2500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testSkipInvalidUrl() throws Exception {
+        ServerConfig invalid = ServerConfig.builder()
+                .context(context)
+                .url("ftp://openam.example.com")
+                .build();
+        ConnectionPreWarmer.builder()
+                .context(context)
+                .serverConfig(invalid)
+                .build()
+                .start();
+
+        assertThat(server.takeRequest(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+}
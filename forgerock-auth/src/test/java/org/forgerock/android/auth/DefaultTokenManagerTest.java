@@ -17,7 +17,11 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -268,6 +272,147 @@ public class DefaultTokenManagerTest extends BaseTest {
 
     }
 
+    @Test
+    public void testConcurrentRefreshSingleFlight() throws Throwable {
+        server.enqueue(new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_OK)
+                .addHeader("Content-Type", "application/json")
+                .setBody(getJson("/authenticate_refreshToken.json"))
+                .setBodyDelay(300, TimeUnit.MILLISECONDS));
+        //A duplicated refresh would fail
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST));
+
+        List<FRListenerFuture<AccessToken>> futures = refreshConcurrently(10);
+
+        for (FRListenerFuture<AccessToken> future : futures) {
+            assertEquals("Refreshed Token", future.get(5, TimeUnit.SECONDS).getValue());
+        }
+        assertEquals(1, server.getRequestCount());
+
+        //The refreshed token is used afterward
+        TokenManager tokenManager = newExpiringTokenManager();
+        assertEquals("Refreshed Token", getAccessToken(tokenManager).getValue());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testConcurrentRefreshFailureFanOut() throws Throwable {
+        server.enqueue(new MockResponse()
+                .setBody("{\"error\": \"invalid_grant\"}")
+                .setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST)
+                .setBodyDelay(300, TimeUnit.MILLISECONDS));
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST));
+
+        List<FRListenerFuture<AccessToken>> futures = refreshConcurrently(5);
+
+        for (FRListenerFuture<AccessToken> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("Refresh should fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AuthenticationRequiredException);
+            }
+        }
+        assertEquals(1, server.getRequestCount());
+        assertFalse(newExpiringTokenManager().hasToken());
+    }
+
+    @Test
+    public void testTokenKeptWhenCircuitOpen() throws Throwable {
+        NetworkPolicy.getInstance().setCircuitBreaker(1, 60_000);
+        try {
+            NetworkPolicy.getInstance().getCircuitBreaker(server.getHostName() + ":" + server.getPort()).onFailure();
+            TokenManager tokenManager = newExpiringTokenManager();
+            tokenManager.persist(expiringAccessToken());
+
+            try {
+                getAccessToken(tokenManager);
+                fail("Server is not reachable");
+            } catch (AuthenticationRequiredException e) {
+                assertTrue(e.getCause() instanceof CircuitBreakerOpenException);
+            }
+            assertEquals(0, server.getRequestCount());
+            //The Refresh Token is still valid
+            assertTrue(tokenManager.hasToken());
+        } finally {
+            NetworkPolicy.getInstance().reset();
+        }
+    }
+
+    @Test
+    public void testTokenKeptOnServerError() throws Throwable {
+        NetworkPolicy.getInstance().set(Action.REFRESH_TOKEN, ActionPolicy.builder().build());
+        try {
+            server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAVAILABLE));
+            TokenManager tokenManager = newExpiringTokenManager();
+            tokenManager.persist(expiringAccessToken());
+
+            try {
+                getAccessToken(tokenManager);
+                fail("Server is not available");
+            } catch (AuthenticationRequiredException e) {
+                //Expected
+            }
+            assertEquals(1, server.getRequestCount());
+            assertTrue(tokenManager.hasToken());
+        } finally {
+            NetworkPolicy.getInstance().reset();
+        }
+    }
+
+    private AccessToken expiringAccessToken() {
+        return AccessToken.builder()
+                .value("access token")
+                .refreshToken("refresh token")
+                .expiresIn(10)
+                .sessionToken(new SSOToken("dummy"))
+                .build();
+    }
+
+    private List<FRListenerFuture<AccessToken>> refreshConcurrently(int callers) throws InterruptedException {
+        newExpiringTokenManager().persist(AccessToken.builder()
+                .value("access token")
+                .refreshToken("concurrent refresh token")
+                .expiresIn(10)
+                .sessionToken(new SSOToken("dummy"))
+                .build());
+
+        List<FRListenerFuture<AccessToken>> futures = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            FRListenerFuture<AccessToken> future = new FRListenerFuture<>();
+            futures.add(future);
+            //Each thread uses its own instance, as Config does
+            TokenManager tokenManager = newExpiringTokenManager();
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    tokenManager.getAccessToken(null, future);
+                } catch (InterruptedException e) {
+                    future.onException(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return futures;
+    }
+
+    private TokenManager newExpiringTokenManager() {
+        //The stored token expires within the threshold
+        return DefaultTokenManager.builder()
+                .sharedPreferences(context.getSharedPreferences(DEFAULT_TOKEN_MANAGER_TEST, Context.MODE_PRIVATE))
+                .oAuth2Client(oAuth2Client)
+                .threshold(30L)
+                .cacheIntervalMillis(0L)
+                .context(context).build();
+    }
+
     private AccessToken getAccessToken(TokenManager tokenManager) throws Throwable {
         FRListenerFuture<AccessToken> future = new FRListenerFuture<>();
         tokenManager.getAccessToken(null, future);
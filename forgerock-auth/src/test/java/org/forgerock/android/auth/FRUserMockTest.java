@@ -27,6 +27,7 @@ import org.forgerock.android.auth.exception.AuthenticationException;
 import org.forgerock.android.auth.exception.AuthenticationRequiredException;
 import org.hamcrest.collection.IsIn;
 import org.json.JSONException;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -60,6 +61,12 @@ public class FRUserMockTest extends BaseTest {
     private static final String DEFAULT_TOKEN_MANAGER_TEST = "DefaultTokenManagerTest";
     private static final String DEFAULT_SSO_TOKEN_MANAGER_TEST = "DefaultSSOManagerTest";
 
+    @After
+    public void resetUser() throws Exception {
+        //The user of a test is bound to the server of the test
+        setFinalStatic(FRUser.class.getDeclaredField("current"), null);
+    }
+
     @Test
     public void frUserHappyPath() throws InterruptedException, ExecutionException, MalformedURLException, ParseException, JSONException {
 
@@ -225,6 +232,11 @@ public class FRUserMockTest extends BaseTest {
                 .setResponseCode(HttpURLConnection.HTTP_MOVED_TEMP));
         enqueue("/authTreeMockTest_Authenticate_accessToken.json", HttpURLConnection.HTTP_OK);
         enqueue("/userinfo_failed.json", HttpURLConnection.HTTP_UNAUTHORIZED);
+        //The rejected token cannot be refreshed
+        server.enqueue(new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"error\": \"invalid_grant\"}"));
 
         Config.getInstance().setSharedPreferences(context.getSharedPreferences(DEFAULT_TOKEN_MANAGER_TEST, Context.MODE_PRIVATE));
         Config.getInstance().setSsoSharedPreferences(context.getSharedPreferences(DEFAULT_SSO_TOKEN_MANAGER_TEST, Context.MODE_PRIVATE));
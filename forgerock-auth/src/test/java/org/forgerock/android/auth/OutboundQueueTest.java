@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.FormBody;
+import okhttp3.Request;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class OutboundQueueTest extends BaseTest {
+
+    private static final String OUTBOUND_QUEUE_TEST = "OutboundQueueTest";
+    private SharedPreferences sharedPreferences;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = context.getSharedPreferences(OUTBOUND_QUEUE_TEST, Context.MODE_PRIVATE);
+        //Retry by the queue only
+        NetworkPolicy.getInstance().set(Action.REVOKE_TOKEN, ActionPolicy.builder().build());
+    }
+
+    @After
+    public void tearDown() {
+        NetworkPolicy.getInstance().reset();
+        context.deleteSharedPreferences(OUTBOUND_QUEUE_TEST);
+        context.deleteSharedPreferences(OUTBOUND_QUEUE_TEST + "Token");
+    }
+
+    @Test
+    public void testDeliveredAfterServerError() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAVAILABLE));
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK));
+
+        OutboundQueue queue = newQueue();
+        queue.enqueue("key", request("token"), null);
+
+        awaitEmpty(queue);
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        RecordedRequest first = server.takeRequest();
+        RecordedRequest second = server.takeRequest();
+        assertThat(second.getPath()).isEqualTo(first.getPath());
+        assertThat(second.getBody().readUtf8()).isEqualTo("token=token");
+        assertThat(sharedPreferences.getAll()).isEmpty();
+    }
+
+    @Test
+    public void testClientErrorNotRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST));
+
+        OutboundQueue queue = newQueue();
+        queue.enqueue("key", request("token"), null);
+
+        awaitEmpty(queue);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPendingRequestCoalesced() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAVAILABLE));
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK));
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK));
+
+        OutboundQueue queue = newQueue();
+        queue.enqueue("key", request("token1"), null);
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS).getBody().readUtf8()).isEqualTo("token=token1");
+        //Wait for the failure to be recorded
+        awaitPersisted();
+
+        //Replace the pending request, the backoff is kept
+        queue.enqueue("key", request("token2"), null);
+        queue.enqueue("key", request("token3"), null);
+        queue.enqueue("other", request("token4"), null);
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS).getBody().readUtf8()).isEqualTo("token=token4");
+        assertThat(queue.size()).isGreaterThanOrEqualTo(1);
+
+        queue.retryNow();
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS).getBody().readUtf8()).isEqualTo("token=token3");
+        awaitEmpty(queue);
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testDeliveredAfterServerUnreachable() throws Exception {
+        //The server cannot be reached while the circuit is open
+        NetworkPolicy.getInstance().setCircuitBreaker(1, TimeUnit.MINUTES.toMillis(10));
+        CircuitBreaker circuitBreaker = NetworkPolicy.getInstance()
+                .getCircuitBreaker(server.getHostName() + ":" + server.getPort());
+        circuitBreaker.onFailure();
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK));
+
+        OutboundQueue queue = newQueue();
+        queue.enqueue("key", request("token"), null);
+        int cycles = OutboundQueue.MAX_ATTEMPTS + 2;
+        awaitPersisted("\"retries\":1");
+        for (int i = 2; i <= cycles; i++) {
+            queue.retryNow();
+            awaitPersisted("\"retries\":" + i);
+        }
+        assertThat(queue.size()).isEqualTo(1);
+        assertThat(server.getRequestCount()).isZero();
+
+        //Connectivity returns
+        circuitBreaker.onSuccess();
+        queue.retryNow();
+        awaitEmpty(queue);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReplayedByNewQueue() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAVAILABLE));
+
+        OutboundQueue queue = newQueue();
+        queue.enqueue("key", request("token"), null);
+        server.takeRequest(5, TimeUnit.SECONDS);
+        awaitPersisted();
+
+        //Simulate the next process, the first queue may replay the request as well
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK));
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK));
+        OutboundQueue restored = newQueue();
+        assertThat(restored.size()).isEqualTo(1);
+        restored.retryNow();
+
+        RecordedRequest replayed = server.takeRequest(5, TimeUnit.SECONDS);
+        assertThat(replayed).isNotNull();
+        assertThat(replayed.getMethod()).isEqualTo("POST");
+        assertThat(replayed.getHeader("Content-Type")).startsWith("application/x-www-form-urlencoded");
+        assertThat(replayed.getBody().readUtf8()).isEqualTo("token=token");
+        awaitEmpty(restored);
+    }
+
+    @Test
+    public void testRevokeDoesNotWaitForServer() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK)
+                .setBodyDelay(500, TimeUnit.MILLISECONDS));
+
+        OutboundQueue queue = newQueue();
+        TokenManager tokenManager = newTokenManager(queue);
+
+        tokenManager.revoke(null);
+        assertThat(tokenManager.hasToken()).isFalse();
+        assertThat(queue.size()).isEqualTo(1);
+
+        RecordedRequest revoke = server.takeRequest(5, TimeUnit.SECONDS);
+        assertThat(revoke.getPath()).isEqualTo("/oauth2/realms/root/token/revoke");
+        assertThat(revoke.getBody().readUtf8()).contains("token=refresh%20token");
+        awaitEmpty(queue);
+    }
+
+    @Test
+    public void testRevokeListenerNotifiedAfterFirstAttempt() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAVAILABLE));
+
+        OutboundQueue queue = newQueue();
+        TokenManager tokenManager = newTokenManager(queue);
+
+        FRListenerFuture<Void> future = new FRListenerFuture<>();
+        tokenManager.revoke(future);
+        future.get(5, TimeUnit.SECONDS);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        //Kept for retry
+        assertThat(queue.size()).isEqualTo(1);
+
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK));
+        awaitEmpty(queue);
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    private TokenManager newTokenManager(OutboundQueue queue) {
+        TokenManager tokenManager = DefaultTokenManager.builder()
+                .context(context)
+                .sharedPreferences(context.getSharedPreferences(OUTBOUND_QUEUE_TEST + "Token", Context.MODE_PRIVATE))
+                .oAuth2Client(oAuth2Client)
+                .outboundQueue(queue)
+                .build();
+        tokenManager.persist(AccessToken.builder()
+                .value("access token")
+                .refreshToken("refresh token")
+                .expiresIn(100)
+                .build());
+        return tokenManager;
+    }
+
+    private OutboundQueue newQueue() {
+        return OutboundQueue.builder()
+                .context(context)
+                .serverConfig(serverConfig)
+                .sharedPreferences(sharedPreferences)
+                .build();
+    }
+
+    private Request request(String token) {
+        return new Request.Builder()
+                .url(getUrl() + "/oauth2/realms/root/token/revoke")
+                .post(new FormBody.Builder().add("token", token).build())
+                .tag(new Action(Action.REVOKE_TOKEN))
+                .build();
+    }
+
+    private void awaitPersisted() throws InterruptedException {
+        awaitPersisted("\"attempts\":1");
+    }
+
+    private void awaitPersisted(String content) throws InterruptedException {
+        for (int i = 0; i < 100 && !sharedPreferences.getString("queue", "").contains(content); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(sharedPreferences.getString("queue", "")).contains(content);
+    }
+
+    private void awaitEmpty(OutboundQueue queue) throws Exception {
+        for (int i = 0; i < 100 && queue.size() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(queue.size()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.forgerock.android.auth.exception.AuthenticationRequiredException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class ScopedTokenCacheTest extends BaseTest {
+
+    private static final String SCOPED_TOKEN_CACHE_TEST = "ScopedTokenCacheTest";
+    private static final String AUDIENCE = "andy_app";
+    private static final SSOToken SESSION = new SSOToken("session");
+
+    private SharedPreferences sharedPreferences;
+    private TokenManager tokenManager;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = context.getSharedPreferences(SCOPED_TOKEN_CACHE_TEST, Context.MODE_PRIVATE);
+        tokenManager = DefaultTokenManager.builder()
+                .context(context)
+                .sharedPreferences(sharedPreferences)
+                .oAuth2Client(oAuth2Client)
+                .threshold(0L)
+                .build();
+        tokenManager.persist(token("access token", "openid email address", 3600, SESSION));
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteSharedPreferences(SCOPED_TOKEN_CACHE_TEST);
+    }
+
+    @Test
+    public void testSessionTokenSatisfiesScopes() throws Exception {
+        assertThat(getScopedAccessToken("email", "openid").getValue()).isEqualTo("access token");
+        assertThat(server.getRequestCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testTokenRequestedForOtherScopes() throws Exception {
+        enqueueExchange("write token", "openid write");
+
+        assertThat(getScopedAccessToken("write", "openid").getValue()).isEqualTo("write token");
+        RecordedRequest authorize = server.takeRequest();
+        assertThat(authorize.getPath()).contains("scope=openid%20write");
+        server.takeRequest();
+
+        //Served from the cache, the token of the session is kept
+        assertThat(getScopedAccessToken("openid", " write ").getValue()).isEqualTo("write token");
+        assertThat(getScopedAccessToken("write").getValue()).isEqualTo("write token");
+        //The smallest token which satisfies the scopes
+        assertThat(getScopedAccessToken("openid").getValue()).isEqualTo("write token");
+        assertThat(getScopedAccessToken("openid", "email").getValue()).isEqualTo("access token");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSmallestTokenSelected() throws Exception {
+        ScopedTokenCache cache = new ScopedTokenCache(sharedPreferences, 5);
+        cache.put(key("read", "write"), scope("read", "write"), token("read write token", null, 3600, SESSION));
+        cache.put(key("write"), scope("write"), token("write token", null, 3600, SESSION));
+        cache.put(key("admin", "read", "write"), scope("admin", "read", "write"),
+                token("admin token", null, 3600, SESSION));
+
+        assertThat(getScopedAccessToken("write").getValue()).isEqualTo("write token");
+        assertThat(getScopedAccessToken("read").getValue()).isEqualTo("read write token");
+        assertThat(getScopedAccessToken("admin").getValue()).isEqualTo("admin token");
+        assertThat(server.getRequestCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testEviction() {
+        ScopedTokenCache cache = new ScopedTokenCache(sharedPreferences, 2);
+        assertThat(cache.put(key("a"), scope("a"), token("a", null, 3600, SESSION))).isEmpty();
+        assertThat(cache.put(key("b"), scope("b"), token("b", null, 3600, SESSION))).isEmpty();
+        //Replace a token, then the oldest token is evicted
+        assertThat(cache.put(key("a"), scope("a"), token("a2", null, 3600, SESSION))).isEmpty();
+        List<AccessToken> evicted = cache.put(key("c"), scope("c"), token("c", null, 3600, SESSION));
+        assertThat(evicted).extracting(Token::getValue).containsExactly("b");
+        assertThat(cache.getAll()).extracting(Token::getValue).containsExactly("a2", "c");
+    }
+
+    @Test
+    public void testTokenOfOtherSessionNotSelected() {
+        ScopedTokenCache cache = new ScopedTokenCache(sharedPreferences, 5);
+        cache.put(key("write"), scope("write"), token("write token", null, 3600, new SSOToken("other")));
+        assertThat(cache.select(AUDIENCE, SESSION, scope("write"))).isNull();
+        assertThat(cache.select("other_app", new SSOToken("other"), scope("write"))).isNull();
+
+        //Tokens of the previous session are removed
+        List<AccessToken> removed = cache.put(key("read"), scope("read"), token("read token", null, 3600, SESSION));
+        assertThat(removed).extracting(Token::getValue).containsExactly("write token");
+    }
+
+    @Test
+    public void testExpiredTokenRefreshed() throws Exception {
+        ScopedTokenCache cache = new ScopedTokenCache(sharedPreferences, 5);
+        AccessToken expired = AccessToken.builder()
+                .value("write token")
+                .refreshToken("write refresh token")
+                .scope(AccessToken.Scope.parse("write"))
+                .expiresIn(-1)
+                .sessionToken(SESSION)
+                .build();
+        cache.put(key("write"), scope("write"), expired);
+        server.enqueue(tokenResponse("refreshed write token", "write"));
+
+        assertThat(getScopedAccessToken("write").getValue()).isEqualTo("refreshed write token");
+        String body = server.takeRequest().getBody().readUtf8();
+        assertThat(body).contains("grant_type=refresh_token");
+        assertThat(body).contains("scope=write");
+        assertThat(body).contains("refresh_token=write%20refresh%20token");
+        assertThat(cache.getAll()).extracting(Token::getValue).containsExactly("refreshed write token");
+    }
+
+    @Test
+    public void testScopedTokensRevoked() throws Exception {
+        new ScopedTokenCache(sharedPreferences, 5)
+                .put(key("write"), scope("write"), token("write token", null, 3600, SESSION));
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK));
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK));
+
+        tokenManager.revoke(null);
+        assertThat(sharedPreferences.getAll()).isEmpty();
+        String first = server.takeRequest(5, TimeUnit.SECONDS).getBody().readUtf8();
+        String second = server.takeRequest(5, TimeUnit.SECONDS).getBody().readUtf8();
+        assertThat(Arrays.asList(first, second)).anyMatch(body -> body.contains("token=write%20token"));
+    }
+
+    @Test
+    public void testScopedTokensRevokedOnRejectedRefresh() throws Exception {
+        new ScopedTokenCache(sharedPreferences, 5)
+                .put(key("write"), scope("write"), token("write token", null, 3600, SESSION));
+        server.enqueue(new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"error\": \"invalid_grant\"}"));
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK));
+
+        FRListenerFuture<AccessToken> future = new FRListenerFuture<>();
+        tokenManager.refresh(token("access token", "openid email address", 3600, SESSION), future);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected failure");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(AuthenticationRequiredException.class);
+        }
+        assertThat(sharedPreferences.getAll()).isEmpty();
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS).getBody().readUtf8())
+                .contains("grant_type=refresh_token");
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS).getBody().readUtf8())
+                .contains("token=write%20token");
+    }
+
+    private AccessToken getScopedAccessToken(String... scopes) throws Exception {
+        FRListenerFuture<AccessToken> future = new FRListenerFuture<>();
+        tokenManager.getScopedAccessToken(new HashSet<>(Arrays.asList(scopes)), future);
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    private void enqueueExchange(String value, String scope) {
+        server.enqueue(new MockResponse()
+                .addHeader("Location", "http://www.example.com:8080/callback?code=PmxwECH3mBobKuPEtPmq6Xorgzo&iss=http://openam.example.com:8080/openam/oauth2&state=abc123&client_id=andy_app")
+                .setResponseCode(HttpURLConnection.HTTP_MOVED_TEMP));
+        server.enqueue(tokenResponse(value, scope));
+    }
+
+    private MockResponse tokenResponse(String value, String scope) {
+        return new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_OK)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"access_token\": \"" + value + "\", \"refresh_token\": \"" + value + " refresh\", "
+                        + "\"scope\": \"" + scope + "\", \"token_type\": \"Bearer\", \"expires_in\": 3599}");
+    }
+
+    private static AccessToken token(String value, String scope, long expiresIn, SSOToken sessionToken) {
+        return AccessToken.builder()
+                .value(value)
+                .scope(AccessToken.Scope.parse(scope))
+                .refreshToken(value + " refresh")
+                .expiresIn(expiresIn)
+                .sessionToken(sessionToken)
+                .build();
+    }
+
+    private static Set<String> scope(String... scope) {
+        return ScopedTokenCache.normalize(Arrays.asList(scope));
+    }
+
+    private static String key(String... scope) {
+        return ScopedTokenCache.key(AUDIENCE, scope(scope));
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.FormBody;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class SingleFlightTest extends BaseTest {
+
+    private static final String SINGLE_FLIGHT_TEST = "SingleFlightTest";
+
+    private final SingleFlight<String> singleFlight = new SingleFlight<>();
+    private final List<FRListener<String>> started = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        context.deleteSharedPreferences(SINGLE_FLIGHT_TEST);
+    }
+
+    private final SingleFlight.Call<String> call = listener -> {
+        started.add(listener);
+        return null;
+    };
+
+    @Test
+    public void testConcurrentCallsCoalesced() throws Exception {
+        FRListenerFuture<String> first = new FRListenerFuture<>();
+        FRListenerFuture<String> second = new FRListenerFuture<>();
+        singleFlight.execute("key", first, call);
+        singleFlight.execute("key", second, call);
+        assertThat(started).hasSize(1);
+        assertThat(singleFlight.size()).isEqualTo(1);
+
+        started.get(0).onSuccess("result");
+        assertThat(first.get()).isEqualTo("result");
+        assertThat(second.get()).isEqualTo("result");
+        assertThat(singleFlight.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testErrorFanOut() throws Exception {
+        FRListenerFuture<String> first = new FRListenerFuture<>();
+        FRListenerFuture<String> second = new FRListenerFuture<>();
+        singleFlight.execute("key", first, call);
+        singleFlight.execute("key", second, call);
+
+        IOException error = new IOException("failed");
+        started.get(0).onException(error);
+        assertFailedWith(first, error);
+        assertFailedWith(second, error);
+    }
+
+    @Test
+    public void testDifferentKeysNotCoalesced() {
+        singleFlight.execute("key1", null, call);
+        singleFlight.execute("key2", null, call);
+        assertThat(started).hasSize(2);
+    }
+
+    @Test
+    public void testNewCallAfterCompletion() throws Exception {
+        FRListenerFuture<String> first = new FRListenerFuture<>();
+        singleFlight.execute("key", first, call);
+        started.get(0).onSuccess("first");
+
+        FRListenerFuture<String> second = new FRListenerFuture<>();
+        singleFlight.execute("key", second, call);
+        assertThat(started).hasSize(2);
+        started.get(1).onSuccess("second");
+        assertThat(first.get()).isEqualTo("first");
+        assertThat(second.get()).isEqualTo("second");
+    }
+
+    @Test
+    public void testCallCompletedOnce() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        singleFlight.execute("key", new FRListener<String>() {
+            @Override
+            public void onSuccess(String result) {
+                count.incrementAndGet();
+            }
+
+            @Override
+            public void onException(Exception e) {
+                count.incrementAndGet();
+            }
+        }, call);
+        started.get(0).onSuccess("result");
+        started.get(0).onException(new IOException());
+        assertThat(count.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSynchronousCall() throws Exception {
+        FRListenerFuture<String> future = new FRListenerFuture<>();
+        singleFlight.execute("key", future, listener -> {
+            listener.onSuccess("result");
+            return null;
+        });
+        assertThat(future.get()).isEqualTo("result");
+        assertThat(singleFlight.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFailingListenerDoesNotAffectOthers() throws Exception {
+        FRListenerFuture<String> future = new FRListenerFuture<>();
+        singleFlight.execute("key", new FRListener<String>() {
+            @Override
+            public void onSuccess(String result) {
+                throw new IllegalStateException();
+            }
+
+            @Override
+            public void onException(Exception e) {
+            }
+        }, call);
+        singleFlight.execute("key", future, call);
+        started.get(0).onSuccess("result");
+        assertThat(future.get()).isEqualTo("result");
+    }
+
+    @Test
+    public void testCancelOneCaller() throws Exception {
+        server.enqueue(new MockResponse().setBody("result"));
+        FRListenerFuture<String> first = new FRListenerFuture<>();
+        FRListenerFuture<String> second = new FRListenerFuture<>();
+        SingleFlight<String>.Flight flight = singleFlight.execute("key", first, this::httpCall);
+        singleFlight.execute("key", second, this::httpCall);
+
+        flight.cancel(first);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        assertThat(first.isDone()).isFalse();
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCancelAllCallersCancelsCall() throws Exception {
+        server.enqueue(new MockResponse().setBody("result").setBodyDelay(1, TimeUnit.SECONDS));
+        FRListenerFuture<String> first = new FRListenerFuture<>();
+        FRListenerFuture<String> second = new FRListenerFuture<>();
+        List<Call> calls = new ArrayList<>();
+        SingleFlight.Call<String> cancellable = listener -> {
+            Call httpCall = httpCall(listener);
+            calls.add(httpCall);
+            return httpCall;
+        };
+        SingleFlight<String>.Flight flight = singleFlight.execute("key", first, cancellable);
+        singleFlight.execute("key", second, cancellable);
+
+        flight.cancel(first);
+        assertThat(calls.get(0).isCanceled()).isFalse();
+        flight.cancel(second);
+        assertThat(calls.get(0).isCanceled()).isTrue();
+        assertThat(singleFlight.size()).isEqualTo(0);
+
+        //The next caller starts a new call
+        singleFlight.execute("key", null, cancellable);
+        assertThat(calls).hasSize(2);
+    }
+
+    @Test
+    public void testKey() {
+        Request request = new Request.Builder()
+                .url(getUrl() + "/userinfo")
+                .tag(new Action(Action.USER_INFO))
+                .build();
+        Request same = new Request.Builder()
+                .url(getUrl() + "/userinfo")
+                .tag(new Action(Action.USER_INFO))
+                .build();
+        assertThat(SingleFlight.key(same)).isEqualTo(SingleFlight.key(request));
+        assertThat(SingleFlight.key(request.newBuilder().tag(new Action(Action.AUTHENTICATE)).build()))
+                .isNotEqualTo(SingleFlight.key(request));
+        assertThat(SingleFlight.key(request.newBuilder().header("Accept", "application/json").build()))
+                .isNotEqualTo(SingleFlight.key(request));
+
+        Request post = request.newBuilder().post(new FormBody.Builder().add("token", "1").build()).build();
+        Request samePost = request.newBuilder().post(new FormBody.Builder().add("token", "1").build()).build();
+        Request otherPost = request.newBuilder().post(new FormBody.Builder().add("token", "2").build()).build();
+        assertThat(SingleFlight.key(samePost)).isEqualTo(SingleFlight.key(post));
+        assertThat(SingleFlight.key(otherPost)).isNotEqualTo(SingleFlight.key(post));
+    }
+
+    @Test
+    public void testUserInfoCoalesced() throws Exception {
+        Config.getInstance().setSharedPreferences(context.getSharedPreferences(SINGLE_FLIGHT_TEST, Context.MODE_PRIVATE));
+        Config.getInstance().setSsoSharedPreferences(context.getSharedPreferences(SINGLE_FLIGHT_TEST, Context.MODE_PRIVATE));
+        server.enqueue(new MockResponse()
+                .setResponseCode(HttpURLConnection.HTTP_OK)
+                .addHeader("Content-Type", "application/json")
+                .setBody(getJson("/userinfo_success.json"))
+                .setBodyDelay(200, TimeUnit.MILLISECONDS));
+
+        UserService userService = UserService.builder().serverConfig(serverConfig).build();
+        FRListenerFuture<UserInfo> first = new FRListenerFuture<>();
+        FRListenerFuture<UserInfo> second = new FRListenerFuture<>();
+        userService.userinfo(first);
+        userService.userinfo(second);
+
+        assertThat(first.get(5, TimeUnit.SECONDS).getSub()).isEqualTo("sub");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get());
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUserInfoKeyIncludesAccessToken() {
+        Request request = new Request.Builder()
+                .url(getUrl() + "/userinfo")
+                .tag(new Action(Action.USER_INFO))
+                .build();
+        AccessToken accessToken = AccessToken.builder().value("token1").build();
+        AccessToken same = AccessToken.builder().value("token1").build();
+        AccessToken other = AccessToken.builder().value("token2").build();
+
+        assertThat(UserService.key(request, same)).isEqualTo(UserService.key(request, accessToken));
+        assertThat(UserService.key(request, other)).isNotEqualTo(UserService.key(request, accessToken));
+        assertThat(UserService.key(request, null)).isNotEqualTo(UserService.key(request, accessToken));
+        assertThat(UserService.key(request, accessToken)).doesNotContain("token1");
+    }
+
+    private Call httpCall(FRListener<String> listener) {
+        Call httpCall = OkHttpClientProvider.getInstance().lookup(serverConfig)
+                .newCall(new Request.Builder().url(getUrl()).build());
+        httpCall.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                listener.onException(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                listener.onSuccess(response.body().string());
+            }
+        });
+        return httpCall;
+    }
+
+    private static void assertFailedWith(FRListenerFuture<String> future, Exception expected) throws InterruptedException {
+        try {
+            future.get();
+            fail("Expected failure");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isSameAs(expected);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.shadows.ShadowNetworkCapabilities;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class TokenRefreshSchedulerTest extends BaseTest {
+
+    private static final String TOKEN_REFRESH_SCHEDULER_TEST = "TokenRefreshSchedulerTest";
+
+    private ActivityController<Activity> activity;
+    private TokenRefreshScheduler scheduler;
+    private DefaultTokenManager tokenManager;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(InitProvider.class);
+        shadowOf((Application) context).grantPermissions(Manifest.permission.ACCESS_NETWORK_STATE);
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        setInternet(connectivityManager, true);
+        activity = Robolectric.buildActivity(Activity.class).setup();
+        //Refresh 2 seconds before the expiration
+        scheduler = TokenRefreshScheduler.builder()
+                .context(context)
+                .marginMillis(2000L)
+                .build();
+        tokenManager = DefaultTokenManager.builder()
+                .context(context)
+                .sharedPreferences(context.getSharedPreferences(TOKEN_REFRESH_SCHEDULER_TEST, Context.MODE_PRIVATE))
+                .oAuth2Client(oAuth2Client)
+                .threshold(0L)
+                .cacheIntervalMillis(60_000L)
+                .refreshScheduler(scheduler)
+                .build();
+        //Retry by the scheduler only
+        NetworkPolicy.getInstance().set(Action.REFRESH_TOKEN, ActionPolicy.builder().build());
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.cancel();
+        if (InitProvider.isForeground()) {
+            activity.pause().stop();
+        }
+        activity.destroy();
+        NetworkPolicy.getInstance().reset();
+        context.deleteSharedPreferences(TOKEN_REFRESH_SCHEDULER_TEST);
+    }
+
+    @Test
+    public void testRefreshAheadOfExpiration() throws Exception {
+        enqueue("/authenticate_refreshToken.json", HttpURLConnection.HTTP_OK);
+
+        tokenManager.persist(accessToken(3));
+        assertThat(scheduler.isScheduled()).isTrue();
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS)).isNotNull();
+        awaitToken("Refreshed Token");
+
+        //Served from the cache, before the expiration of the previous token
+        FRListenerFuture<AccessToken> future = new FRListenerFuture<>();
+        tokenManager.getAccessToken(null, future);
+        assertThat(future.get(0, TimeUnit.SECONDS).getValue()).isEqualTo("Refreshed Token");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        //The refreshed token is scheduled once persisted
+        awaitScheduled();
+    }
+
+    @Test
+    public void testDeferredInBackground() throws Exception {
+        activity.pause().stop();
+        enqueue("/authenticate_refreshToken.json", HttpURLConnection.HTTP_OK);
+
+        tokenManager.persist(accessToken(3));
+        assertThat(scheduler.isScheduled()).isFalse();
+        assertThat(server.takeRequest(1500, TimeUnit.MILLISECONDS)).isNull();
+
+        //Refreshed when back to the foreground
+        activity.start().resume();
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS)).isNotNull();
+        awaitToken("Refreshed Token");
+    }
+
+    @Test
+    public void testCancelledWhenBackground() {
+        tokenManager.persist(accessToken(60));
+        assertThat(scheduler.isScheduled()).isTrue();
+        activity.pause().stop();
+        assertThat(scheduler.isScheduled()).isFalse();
+    }
+
+    @Test
+    public void testTokenKeptOnNetworkFailure() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+
+        tokenManager.persist(accessToken(3));
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS)).isNotNull();
+        //The token is still valid, the refresh is retried
+        awaitScheduled();
+        assertThat(tokenManager.hasToken()).isTrue();
+    }
+
+    @Test
+    public void testCancelledOnClear() {
+        tokenManager.persist(accessToken(60));
+        assertThat(scheduler.isScheduled()).isTrue();
+        tokenManager.clear();
+        assertThat(scheduler.isScheduled()).isFalse();
+    }
+
+    @Test
+    public void testTokenWithoutRefreshTokenNotScheduled() {
+        tokenManager.persist(AccessToken.builder()
+                .value("access token")
+                .expiresIn(60)
+                .build());
+        assertThat(scheduler.isScheduled()).isFalse();
+    }
+
+    @Test
+    public void testCallbacksRegisteredOnce() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        int callbacks = shadowOf(connectivityManager).getNetworkCallbacks().size();
+        assertThat(callbacks).isGreaterThan(0);
+
+        TokenRefreshScheduler latest = TokenRefreshScheduler.builder()
+                .context(context)
+                .marginMillis(2000L)
+                .build();
+        assertThat(shadowOf(connectivityManager).getNetworkCallbacks()).hasSize(callbacks);
+
+        //The callbacks notify the latest scheduler
+        latest.schedule(tokenManager, accessToken(60));
+        assertThat(latest.isScheduled()).isTrue();
+        activity.pause().stop();
+        assertThat(latest.isScheduled()).isFalse();
+    }
+
+    @Test
+    public void testDeferredWithoutNetwork() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        setInternet(connectivityManager, false);
+        tokenManager.persist(accessToken(60));
+        assertThat(scheduler.isScheduled()).isFalse();
+
+        //Scheduled when the network is back
+        setInternet(connectivityManager, true);
+        for (ConnectivityManager.NetworkCallback callback : shadowOf(connectivityManager).getNetworkCallbacks()) {
+            callback.onAvailable(connectivityManager.getActiveNetwork());
+        }
+        assertThat(scheduler.isScheduled()).isTrue();
+    }
+
+    private static void setInternet(ConnectivityManager connectivityManager, boolean internet) {
+        NetworkCapabilities capabilities = ShadowNetworkCapabilities.newInstance();
+        if (internet) {
+            ReflectionHelpers.callInstanceMethod(capabilities, "addCapability",
+                    ReflectionHelpers.ClassParameter.from(int.class, NetworkCapabilities.NET_CAPABILITY_INTERNET));
+        }
+        shadowOf(connectivityManager).setNetworkCapabilities(connectivityManager.getActiveNetwork(), capabilities);
+    }
+
+    private AccessToken accessToken(long expiresIn) {
+        return AccessToken.builder()
+                .value("access token")
+                .refreshToken("refresh token")
+                .expiresIn(expiresIn)
+                .sessionToken(new SSOToken("dummy"))
+                .build();
+    }
+
+    private void awaitScheduled() throws InterruptedException {
+        for (int i = 0; i < 100 && !scheduler.isScheduled(); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(scheduler.isScheduled()).isTrue();
+    }
+
+    private void awaitToken(String value) throws Exception {
+        AccessToken stored = null;
+        for (int i = 0; i < 100; i++) {
+            FRListenerFuture<AccessToken> future = new FRListenerFuture<>();
+            tokenManager.getAccessToken(null, future);
+            stored = future.get();
+            if (value.equals(stored.getValue())) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        assertThat(stored.getValue()).isEqualTo(value);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmark {@link SecuredSharedPreferences} get and put on a 1,000 entries file with {@link AndroidLEncryptor},
+ * unwrapping the SecretKey for every value (lifetime 0) against keeping the unwrapped SecretKey in memory.
+ * The get benchmark reads all the entries with a new instance, divide by {@link #ENTRIES} for the per value cost.
+ */
+@RunWith(Parameterized.class)
+public class AndroidLEncryptorBenchmark {
+
+    private static final String FILE_NAME = "AndroidLEncryptorBenchmark";
+    private static final String KEY_ALIAS = "AndroidLEncryptorBenchmarkAlias";
+    private static final int ENTRIES = 1000;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter
+    public long keyLifetimeMillis;
+
+    private Context context = ApplicationProvider.getApplicationContext();
+
+    @Parameterized.Parameters(name = "keyLifetimeMillis={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{{0L}, {60000L}});
+    }
+
+    @Before
+    public void setUp() {
+        SharedPreferences.Editor editor = newInstance().edit();
+        for (int i = 0; i < ENTRIES; i++) {
+            editor.putString("Key" + i, "Value" + i);
+        }
+        editor.commit();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        newInstance().getEncryptor(context).reset();
+        context.deleteSharedPreferences(FILE_NAME);
+    }
+
+    @Test
+    public void getAllEntries() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            //New instance starts with an empty value cache, every read decrypts
+            SecuredSharedPreferences sharedPreferences = newInstance();
+            state.resumeTiming();
+            for (int i = 0; i < ENTRIES; i++) {
+                assertEquals("Value" + i, sharedPreferences.getString("Key" + i, null));
+            }
+        }
+    }
+
+    @Test
+    public void put() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        BenchmarkState state = benchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            sharedPreferences.edit().putString("Key" + (i % ENTRIES), "Updated" + i++).commit();
+        }
+    }
+
+    private SecuredSharedPreferences newInstance() {
+        return new SecuredSharedPreferences(context, FILE_NAME, KEY_ALIAS) {
+            @Override
+            protected Encryptor getEncryptor(Context context, String keyAlias) {
+                return new AndroidLEncryptor(context, keyAlias,
+                        new SharedPreferencesSecretKeyStore(keyAlias, getSharedPreferences()),
+                        keyLifetimeMillis);
+            }
+        };
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Benchmark the encryptor of the platform across payload sizes, the counterpart of the JMH
+ * EncryptorBenchmark with the AndroidKeyStore instead of the software key.
+ */
+@RunWith(Parameterized.class)
+public class KeyStoreEncryptorBenchmark {
+
+    private static final String FILE_NAME = "KeyStoreEncryptorBenchmark";
+    private static final String KEY_ALIAS = "KeyStoreEncryptorBenchmarkAlias";
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter
+    public int payloadSize;
+
+    private Context context = ApplicationProvider.getApplicationContext();
+    private Encryptor encryptor;
+    private byte[] payload;
+
+    @Parameterized.Parameters(name = "payloadSize={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{{64}, {1024}, {16384}, {262144}});
+    }
+
+    @Before
+    public void setUp() {
+        encryptor = new SecuredSharedPreferences(context, FILE_NAME, KEY_ALIAS).getEncryptor(context);
+        payload = new byte[payloadSize];
+        new SecureRandom().nextBytes(payload);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        encryptor.reset();
+        context.deleteSharedPreferences(FILE_NAME);
+    }
+
+    @Test
+    public void encrypt() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            encryptor.encrypt(payload);
+        }
+    }
+
+    @Test
+    public void decrypt() {
+        byte[] encrypted = encryptor.encrypt(payload);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            encryptor.decrypt(encrypted);
+        }
+    }
+}
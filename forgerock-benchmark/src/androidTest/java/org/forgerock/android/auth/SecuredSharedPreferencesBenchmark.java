@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmark {@link SecuredSharedPreferences} get, put and getAll on device, with the AndroidKeyStore
+ * backed encryptor of the platform and with the software {@link Encryptor} used by the JVM benchmarks.
+ */
+@RunWith(Parameterized.class)
+public class SecuredSharedPreferencesBenchmark {
+
+    private static final String FILE_NAME = "SecuredSharedPreferencesBenchmark";
+    private static final String KEY_ALIAS = "SecuredSharedPreferencesBenchmarkAlias";
+    private static final int ENTRIES = 100;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter
+    public boolean keyStore;
+
+    private Context context = ApplicationProvider.getApplicationContext();
+    private SecuredSharedPreferences sharedPreferences;
+
+    @Parameterized.Parameters(name = "keyStore={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{{true}, {false}});
+    }
+
+    @Before
+    public void setUp() {
+        sharedPreferences = newInstance();
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (int i = 0; i < ENTRIES; i++) {
+            editor.putString("Key" + i, "Value" + i);
+        }
+        editor.commit();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        newInstance().getEncryptor(context).reset();
+        context.deleteSharedPreferences(FILE_NAME);
+    }
+
+    @Test
+    public void get() {
+        BenchmarkState state = benchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            sharedPreferences.getString("Key" + (i++ % ENTRIES), null);
+        }
+    }
+
+    @Test
+    public void getWithoutCache() {
+        BenchmarkState state = benchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            //New instance starts with an empty cache, every read decrypts
+            SecuredSharedPreferences instance = newInstance();
+            state.resumeTiming();
+            instance.getString("Key" + (i++ % ENTRIES), null);
+        }
+    }
+
+    @Test
+    public void put() {
+        BenchmarkState state = benchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            sharedPreferences.edit().putString("Key" + (i % ENTRIES), "Updated" + i++).commit();
+        }
+    }
+
+    @Test
+    public void getAll() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            assertEquals(ENTRIES, sharedPreferences.getAll().size());
+        }
+    }
+
+    private SecuredSharedPreferences newInstance() {
+        if (keyStore) {
+            return new SecuredSharedPreferences(context, FILE_NAME, KEY_ALIAS);
+        }
+        return new SecuredSharedPreferences(context, FILE_NAME, KEY_ALIAS) {
+            @Override
+            protected Encryptor getEncryptor(Context context, String keyAlias) {
+                return new SoftwareEncryptor(keyAlias,
+                        new SharedPreferencesSecretKeyStore(keyAlias, getSharedPreferences()));
+            }
+        };
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+/**
+ * {@link SecretKeyStore} which keeps the encrypted Secret Key in memory.
+ */
+class InMemorySecretKeyStore implements SecretKeyStore {
+
+    private volatile String encryptedSecretKey;
+
+    @Override
+    public void persist(String encryptedSecretKey) {
+        this.encryptedSecretKey = encryptedSecretKey;
+    }
+
+    @Override
+    public String getEncryptedSecretKey() {
+        return encryptedSecretKey;
+    }
+
+    @Override
+    public void remove() {
+        encryptedSecretKey = null;
+    }
+}
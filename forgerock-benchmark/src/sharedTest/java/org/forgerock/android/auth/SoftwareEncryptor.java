@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Stand-in of the AndroidKeyStore backed encryptors, the AES key is generated in software and stored
+ * hex encoded with the {@link SecretKeyStore}. The framing, MAC and Cipher handling are the ones of
+ * {@link AbstractSymmetricEncryptor}.
+ */
+class SoftwareEncryptor extends AbstractSymmetricEncryptor {
+
+    private final SecretKeyStore secretKeyStore;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    SoftwareEncryptor(String keyAlias, SecretKeyStore secretKeyStore) {
+        super(keyAlias);
+        this.secretKeyStore = secretKeyStore;
+    }
+
+    @Override
+    SecretKey getSecretKey() throws GeneralSecurityException {
+        String encoded = secretKeyStore.getEncryptedSecretKey();
+        if (encoded != null) {
+            return new SecretKeySpec(fromHex(encoded), "AES");
+        }
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(KEY_SIZE);
+        SecretKey secretKey = keyGenerator.generateKey();
+        secretKeyStore.persist(toHex(secretKey.getEncoded()));
+        return secretKey;
+    }
+
+    @Override
+    byte[] init(Cipher cipher, SecretKey secretKey) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        secureRandom.nextBytes(iv);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(128, iv));
+        return iv;
+    }
+
+    @Override
+    public void reset() throws GeneralSecurityException, IOException {
+        super.reset();
+        secretKeyStore.remove();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package android.util;
+
+/**
+ * JVM implementation of the framework Base64 for the JMH benchmarks, the mockable android.jar returns null.
+ * Shadows the android.jar class on the unit test classpath, only the flags used by the SDK are supported.
+ */
+public class Base64 {
+
+    public static final int DEFAULT = 0;
+    public static final int NO_PADDING = 1;
+    public static final int NO_WRAP = 2;
+    public static final int CRLF = 4;
+    public static final int URL_SAFE = 8;
+    public static final int NO_CLOSE = 16;
+
+    private Base64() {
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        java.util.Base64.Encoder encoder;
+        if ((flags & URL_SAFE) != 0) {
+            encoder = java.util.Base64.getUrlEncoder();
+        } else if ((flags & NO_WRAP) != 0) {
+            encoder = java.util.Base64.getEncoder();
+        } else {
+            encoder = java.util.Base64.getMimeEncoder(76, new byte[]{'\n'});
+        }
+        if ((flags & NO_PADDING) != 0) {
+            encoder = encoder.withoutPadding();
+        }
+        String encoded = encoder.encodeToString(input);
+        //The framework terminates the wrapped output with a line break
+        return (flags & NO_WRAP) != 0 || encoded.isEmpty() ? encoded : encoded + "\n";
+    }
+
+    public static byte[] encode(byte[] input, int flags) {
+        return encodeToString(input, flags).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    }
+
+    public static byte[] decode(String input, int flags) {
+        if ((flags & URL_SAFE) != 0) {
+            return java.util.Base64.getUrlDecoder().decode(input.replaceAll("\\s", ""));
+        }
+        return java.util.Base64.getMimeDecoder().decode(input);
+    }
+
+    public static byte[] decode(byte[] input, int flags) {
+        return decode(new String(input, java.nio.charset.StandardCharsets.US_ASCII), flags);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.FormBody;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/**
+ * Cost of the {@link Body} construction when a {@link RequestInterceptor} inspects the request body
+ * in {@link OkHttpRequestInterceptor}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int bodySize;
+
+    private okhttp3.Request request;
+    private OkHttpRequestInterceptor interceptor;
+    private StubChain chain;
+
+    @Setup
+    public void setUp() {
+        char[] value = new char[bodySize];
+        Arrays.fill(value, 'a');
+        request = new okhttp3.Request.Builder()
+                .url("https://openam.example.com/oauth2/access_token")
+                .post(new FormBody.Builder()
+                        .add("grant_type", "authorization_code")
+                        .add("code", new String(value))
+                        .build())
+                .build();
+        interceptor = new OkHttpRequestInterceptor(r -> {
+            r.body();
+            return r;
+        });
+        chain = new StubChain(request);
+    }
+
+    @Benchmark
+    public Body body() {
+        return new Request(request).body();
+    }
+
+    @Benchmark
+    public byte[] content() {
+        return new Request(request).body().getContent();
+    }
+
+    @Benchmark
+    public Body bodyFromString() {
+        return new Body("grant_type=authorization_code", "application/x-www-form-urlencoded");
+    }
+
+    @Benchmark
+    public Response intercept() throws IOException {
+        return interceptor.intercept(chain);
+    }
+
+    /**
+     * Chain which completes the request without network.
+     */
+    private static class StubChain implements Interceptor.Chain {
+
+        private final okhttp3.Request request;
+
+        private StubChain(okhttp3.Request request) {
+            this.request = request;
+        }
+
+        @NotNull
+        @Override
+        public okhttp3.Request request() {
+            return request;
+        }
+
+        @NotNull
+        @Override
+        public Response proceed(@NotNull okhttp3.Request request) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .build();
+        }
+
+        @Nullable
+        @Override
+        public Connection connection() {
+            return null;
+        }
+
+        @NotNull
+        @Override
+        public Call call() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int connectTimeoutMillis() {
+            return 0;
+        }
+
+        @NotNull
+        @Override
+        public Interceptor.Chain withConnectTimeout(int timeout, @NotNull TimeUnit unit) {
+            return this;
+        }
+
+        @Override
+        public int readTimeoutMillis() {
+            return 0;
+        }
+
+        @NotNull
+        @Override
+        public Interceptor.Chain withReadTimeout(int timeout, @NotNull TimeUnit unit) {
+            return this;
+        }
+
+        @Override
+        public int writeTimeoutMillis() {
+            return 0;
+        }
+
+        @NotNull
+        @Override
+        public Interceptor.Chain withWriteTimeout(int timeout, @NotNull TimeUnit unit) {
+            return this;
+        }
+    }
+}
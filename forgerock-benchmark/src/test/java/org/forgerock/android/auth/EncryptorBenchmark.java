@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypt and decrypt with {@link AbstractSymmetricEncryptor} across payload sizes, with the byte array
+ * and the streaming API.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncryptorBenchmark {
+
+    @Param({"64", "1024", "16384", "262144"})
+    public int payloadSize;
+
+    private Encryptor encryptor;
+    private byte[] payload;
+    private byte[] encrypted;
+    private byte[] streamEncrypted;
+
+    @Setup
+    public void setUp() throws Exception {
+        encryptor = new SoftwareEncryptor("BenchmarkAlias", new InMemorySecretKeyStore());
+        payload = new byte[payloadSize];
+        new SecureRandom().nextBytes(payload);
+        encrypted = encryptor.encrypt(payload);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encryptor.encrypt(new ByteArrayInputStream(payload), out);
+        streamEncrypted = out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return encryptor.encrypt(payload);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return encryptor.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public byte[] streamEncrypt() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payloadSize + 64);
+        encryptor.encrypt(new ByteArrayInputStream(payload), out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] streamDecrypt() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payloadSize);
+        encryptor.decrypt(new ByteArrayInputStream(streamEncrypted), out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+
+import org.forgerock.android.core.R;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Benchmark {@link SecuredSharedPreferences} get, put and getAll on the JVM, with the software {@link Encryptor}
+ * in place of the AndroidKeyStore. The file is configured with {@code forgerock_append_only_storage}, the platform
+ * SharedPreferences are measured on device, see the androidTest benchmarks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+    private static final String FILE_NAME = "StorageBenchmark";
+    private static final String KEY_ALIAS = "BenchmarkAlias";
+
+    @Param({"10", "1000"})
+    public int entries;
+
+    private File directory;
+    private SecuredSharedPreferences sharedPreferences;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("forgerock-benchmark").toFile();
+        sharedPreferences = newInstance(directory);
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (int i = 0; i < entries; i++) {
+            editor.putString("Key" + i, "Value" + i);
+        }
+        editor.commit();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Read with the decrypted value cache.
+     */
+    @Benchmark
+    public Object get() {
+        return sharedPreferences.getString("Key" + (index++ % entries), null);
+    }
+
+    /**
+     * Read and decrypt, the value is removed from the decrypted value cache first.
+     */
+    @Benchmark
+    public Object getDecrypt() {
+        String key = "Key" + (index++ % entries);
+        sharedPreferences.getCache().invalidate(key);
+        return sharedPreferences.getString(key, null);
+    }
+
+    @Benchmark
+    public boolean put() {
+        String key = "Key" + (index++ % entries);
+        return sharedPreferences.edit().putString(key, "Updated" + index).commit();
+    }
+
+    @Benchmark
+    public int getAll() {
+        return sharedPreferences.getAll().size();
+    }
+
+    /**
+     * The {@link Context} provides the files directory and the resources only, the file is stored with
+     * {@link AppendOnlySharedPreferences}.
+     */
+    private static SecuredSharedPreferences newInstance(File directory) {
+        Context context = mock(Context.class);
+        Resources resources = mock(Resources.class);
+        when(context.getApplicationContext()).thenReturn(context);
+        when(context.getResources()).thenReturn(resources);
+        when(context.getFilesDir()).thenReturn(directory);
+        //Nothing to migrate from the platform SharedPreferences
+        when(context.getSharedPreferences(anyString(), anyInt())).thenReturn(mock(SharedPreferences.class));
+        when(resources.getStringArray(R.array.forgerock_append_only_storage)).thenReturn(new String[]{FILE_NAME});
+
+        SecretKeyStore secretKeyStore = new InMemorySecretKeyStore();
+        return new SecuredSharedPreferences(context, FILE_NAME, KEY_ALIAS) {
+            @Override
+            protected Encryptor getEncryptor(Context context, String keyAlias) {
+                return new SoftwareEncryptor(keyAlias, secretKeyStore);
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Instrumented test, which will execute on an Android device.
+ * Read a 1,000 entries preference file with {@link AndroidLEncryptor} and count the SecretKey unwraps
+ * with the AndroidKeyStore, unwrapping for every value against keeping the unwrapped SecretKey in memory.
+ */
+@RunWith(AndroidVersionAwareTestRunner.class)
+public class AndroidLEncryptorKeyCacheTest {
+
+    private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
+    private static final String FILE_NAME = "keyCache";
+    private static final String TEST_ALIAS = "KeyCacheAlias";
+    private static final int ENTRIES = 1000;
+
+    private Context context = ApplicationProvider.getApplicationContext();
+    private final AtomicInteger unwrapped = new AtomicInteger();
+
+    @After
+    public void tearDown() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
+        keyStore.load(null);
+        keyStore.deleteEntry(TEST_ALIAS);
+        new File(context.getFilesDir().getParent() + "/shared_prefs/" + FILE_NAME + ".xml").delete();
+    }
+
+    @Test
+    public void testUnwrapPerValue() {
+        populate();
+
+        readAll(newInstance(0));
+        assertEquals(ENTRIES, unwrapped.get());
+    }
+
+    @Test
+    public void testUnwrapOnceWithCachedKey() {
+        populate();
+
+        readAll(newInstance(60000));
+        assertEquals(1, unwrapped.get());
+    }
+
+    private void populate() {
+        SharedPreferences.Editor editor = newInstance(60000).edit();
+        for (int i = 0; i < ENTRIES; i++) {
+            editor.putString("Key" + i, "Value" + i);
+        }
+        editor.commit();
+        unwrapped.set(0);
+    }
+
+    private void readAll(SecuredSharedPreferences sharedPreferences) {
+        for (int i = 0; i < ENTRIES; i++) {
+            assertEquals("Value" + i, sharedPreferences.getString("Key" + i, null));
+        }
+    }
+
+    private SecuredSharedPreferences newInstance(final long keyLifetimeMillis) {
+        return new SecuredSharedPreferences(context, FILE_NAME, TEST_ALIAS) {
+            @Override
+            protected Encryptor getEncryptor(Context context) {
+                return new AndroidLEncryptor(context, TEST_ALIAS,
+                        new SharedPreferencesSecretKeyStore(TEST_ALIAS, getSharedPreferences()),
+                        keyLifetimeMillis) {
+                    @Override
+                    Encryptor getKeyEncryptor() {
+                        return new CountingEncryptor(super.getKeyEncryptor());
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Count the SecretKey unwraps of the AndroidKeyStore backed key encryptor.
+     */
+    private class CountingEncryptor implements Encryptor {
+
+        private final Encryptor delegate;
+
+        private CountingEncryptor(Encryptor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public byte[] encrypt(byte[] clearText) {
+            return delegate.encrypt(clearText);
+        }
+
+        @Override
+        public byte[] decrypt(byte[] encryptedData) {
+            unwrapped.incrementAndGet();
+            return delegate.decrypt(encryptedData);
+        }
+
+        @Override
+        public void reset() throws GeneralSecurityException, IOException {
+            delegate.reset();
+        }
+    }
+}
@@ -14,6 +14,7 @@ import org.junit.runners.Suite;
 @RunWith(Categories.class)
 @Suite.SuiteClasses({
         SecuredSharedPreferencesTest.class,
+        AndroidLEncryptorKeyCacheTest.class,
 
 })
 public class CoreInstrumentTestSuite {
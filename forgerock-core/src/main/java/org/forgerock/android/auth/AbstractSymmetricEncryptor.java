@@ -11,21 +11,31 @@ import lombok.NonNull;
 
 import javax.crypto.Cipher;
 import javax.crypto.Mac;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.Arrays;
 
 /**
  * The abstract class {@link AbstractSymmetricEncryptor} provides methods
  * to encrypt and decrypt data using Symmetric Key {@link SecretKey}
+ * <p>
+ * The resolved {@link SecretKey} is cached after the first lookup, {@link Cipher} and {@link Mac}
+ * instances are reused per thread, a burst of operations only pay the key lookup once.
+ * <p>
+ * Large payloads can be encrypted with {@link #encrypt(InputStream, OutputStream)}, which encrypts and
+ * authenticates the data in chunks of {@link #STREAM_CHUNK_SIZE} bytes.
  */
 abstract class AbstractSymmetricEncryptor implements Encryptor {
 
@@ -33,89 +43,333 @@ abstract class AbstractSymmetricEncryptor implements Encryptor {
     private static final String HMAC_SHA256 = "HmacSHA256";
     static final int IV_LENGTH = 12;
     static final int KEY_SIZE = 256;
+    //HmacSHA256 output length in bytes
+    static final int MAC_LENGTH = 32;
+    //GCM authentication tag length in bytes
+    static final int TAG_LENGTH = 16;
+    static final byte STREAM_VERSION = 1;
+    static final int STREAM_CHUNK_SIZE = 64 * 1024;
+    //Upper bound of the chunk size accepted when decrypting, avoid allocating a buffer from untrusted input
+    private static final int STREAM_MAX_CHUNK_SIZE = 1024 * 1024;
+    private static final int STREAM_ID_LENGTH = 8;
     final String keyAlias;
 
+    private final SecretKey macKey;
+    private final ThreadLocal<Cipher> cipherPool = new ThreadLocal<>();
+    private final ThreadLocal<Mac> macPool = new ThreadLocal<>();
+    private volatile SecretKey secretKey;
+
     AbstractSymmetricEncryptor(@NonNull String keyAlias) {
         this.keyAlias = keyAlias;
+        this.macKey = new SecretKeySpec(keyAlias.getBytes(StandardCharsets.UTF_8), HMAC_SHA256);
     }
 
     @Override
     public byte[] encrypt(@NonNull byte[] data) {
         byte[] encryptedData;
         try {
-            Cipher cipher = Cipher.getInstance(AES_GCM_NO_PADDING);
-
-            byte[] iv = init(cipher);
-            encryptedData = cipher.doFinal(data);
-            byte[] mac = computeMac(keyAlias, encryptedData);
-            encryptedData = concatArrays(mac, iv, encryptedData);
+            encryptedData = encrypt(data, true);
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
         return encryptedData;
     }
 
-    @Override
-    public byte[] decrypt(byte[] encryptedData) {
-        Cipher cipher;
+    private byte[] encrypt(byte[] data, boolean retry) throws GeneralSecurityException, IOException {
+        SecretKey key = getEncryptionKey();
         try {
-            cipher = Cipher.getInstance(AES_GCM_NO_PADDING);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            throw new RuntimeException("Error while getting an cipher instance", e);
+            Cipher cipher = getCipher();
+            byte[] iv = init(cipher, key);
+            //Encrypt directly into the result, mac | iv | cipher text
+            int offset = MAC_LENGTH + iv.length;
+            byte[] result = new byte[offset + cipher.getOutputSize(data.length)];
+            System.arraycopy(iv, 0, result, MAC_LENGTH, iv.length);
+            int length = cipher.doFinal(data, 0, data.length, result, offset);
+            if (offset + length != result.length) {
+                result = Arrays.copyOf(result, offset + length);
+            }
+            Mac mac = getMac();
+            mac.update(result, offset, length);
+            mac.doFinal(result, 0);
+            return result;
+        } catch (GeneralSecurityException e) {
+            //The cached key may be invalidated by others, retry with a fresh key
+            if (retry) {
+                invalidateKey(key);
+                return encrypt(data, false);
+            }
+            throw e;
         }
+    }
 
-        int ivLength = IV_LENGTH;
-        int macLength;
+    @Override
+    public byte[] decrypt(byte[] encryptedData) {
+        boolean verified;
         try {
-            macLength = Mac.getInstance(HMAC_SHA256).getMacLength();
-        } catch (NoSuchAlgorithmException e) {
+            verified = computeAndVerifyMac(encryptedData);
+        } catch (GeneralSecurityException e) {
             throw new RuntimeException("Error while instantiating MAC", e);
         }
-        int encryptedDataLength = encryptedData.length - ivLength - macLength;
-        byte[] macFromMessage = getArraySubset(encryptedData, 0, macLength);
 
-        byte[] iv = getArraySubset(encryptedData, macLength, ivLength);
-        encryptedData = getArraySubset(encryptedData, macLength + ivLength, encryptedDataLength);
-        byte[] mac = computeMac(keyAlias, encryptedData);
-
-        if (!Arrays.equals(mac, macFromMessage)) {
+        if (!verified) {
             throw new RuntimeException("MAC signature could not be verified");
         }
 
         AlgorithmParameterSpec ivParams;
-        ivParams = new GCMParameterSpec(128, iv);
+        ivParams = new GCMParameterSpec(128, encryptedData, MAC_LENGTH, IV_LENGTH);
 
         try {
-            cipher.init(Cipher.DECRYPT_MODE, getSecretKey(), ivParams);
-            return cipher.doFinal(encryptedData);
+            return decrypt(encryptedData, ivParams, true);
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
-    private byte[] computeMac(String key, byte[] cipherText) {
+    private byte[] decrypt(byte[] encryptedData, AlgorithmParameterSpec ivParams, boolean retry)
+            throws GeneralSecurityException, IOException {
+        SecretKey key = getKey();
         try {
-            Mac mac = Mac.getInstance(HMAC_SHA256);
-            SecretKey sk = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), HMAC_SHA256);
-            mac.init(sk);
-            return mac.doFinal(cipherText);
-        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-            throw new RuntimeException(e);
+            Cipher cipher = getCipher();
+            cipher.init(Cipher.DECRYPT_MODE, key, ivParams);
+            int offset = MAC_LENGTH + IV_LENGTH;
+            return cipher.doFinal(encryptedData, offset, encryptedData.length - offset);
+        } catch (GeneralSecurityException e) {
+            //The cached key may be invalidated by others, retry with a fresh key
+            if (retry) {
+                invalidateKey(key);
+                return decrypt(encryptedData, ivParams, false);
+            }
+            throw e;
         }
     }
 
-    private byte[] getArraySubset(byte[] array, int start, int length) {
-        byte[] result = new byte[length];
-        System.arraycopy(array, start, result, 0, length);
-        return result;
+    /**
+     * Encrypts the data from the input stream chunk by chunk, each chunk is authenticated with AES-GCM.
+     * <p>
+     * Layout: version (1 byte) | chunk size (4 bytes) | stream id (8 bytes) | chunks, where each chunk is
+     * last chunk flag (1 byte) | cipher text length (4 bytes) | iv | cipher text. The stream id, chunk index
+     * and last chunk flag are authenticated as additional data, chunks cannot be reordered, dropped or
+     * moved to another stream.
+     */
+    @Override
+    public void encrypt(InputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+        byte[] streamId = new byte[STREAM_ID_LENGTH];
+        new SecureRandom().nextBytes(streamId);
+        DataOutputStream output = new DataOutputStream(out);
+        output.writeByte(STREAM_VERSION);
+        output.writeInt(STREAM_CHUNK_SIZE);
+        output.write(streamId);
+
+        //Read one more byte to detect the last chunk
+        byte[] buffer = new byte[STREAM_CHUNK_SIZE + 1];
+        byte[] encrypted = new byte[STREAM_CHUNK_SIZE + TAG_LENGTH];
+        Cipher cipher = getCipher();
+        int available = 0;
+        int index = 0;
+        boolean last = false;
+        while (!last) {
+            available += readFully(in, buffer, available, buffer.length - available);
+            last = available <= STREAM_CHUNK_SIZE;
+            int length = Math.min(available, STREAM_CHUNK_SIZE);
+            byte[] aad = aad(streamId, index++, last);
+            byte[] iv;
+            int encryptedLength;
+            //Check the stored key once per stream
+            SecretKey key = index == 1 ? getEncryptionKey() : getKey();
+            try {
+                iv = init(cipher, key);
+                cipher.updateAAD(aad);
+                encryptedLength = cipher.doFinal(buffer, 0, length, encrypted, 0);
+            } catch (GeneralSecurityException e) {
+                //The cached key may be invalidated by others, retry with a fresh key
+                invalidateKey(key);
+                iv = init(cipher, getKey());
+                cipher.updateAAD(aad);
+                encryptedLength = cipher.doFinal(buffer, 0, length, encrypted, 0);
+            }
+            output.writeBoolean(last);
+            output.writeInt(encryptedLength);
+            output.write(iv);
+            output.write(encrypted, 0, encryptedLength);
+            if (!last) {
+                buffer[0] = buffer[STREAM_CHUNK_SIZE];
+                available = 1;
+            }
+        }
+        output.flush();
     }
 
-    private byte[] concatArrays(byte[] mac, byte[] iv, byte[] cipherText) {
-        byte[] result = new byte[mac.length + iv.length + cipherText.length];
-        System.arraycopy(mac, 0, result, 0, mac.length);
-        System.arraycopy(iv, 0, result, mac.length, iv.length);
-        System.arraycopy(cipherText, 0, result, mac.length + iv.length, cipherText.length);
-        return result;
+    @Override
+    public void decrypt(InputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+        DataInputStream input = new DataInputStream(in);
+        if (input.readByte() != STREAM_VERSION) {
+            throw new IOException("Unsupported stream version");
+        }
+        int chunkSize = input.readInt();
+        if (chunkSize <= 0 || chunkSize > STREAM_MAX_CHUNK_SIZE) {
+            throw new IOException("Invalid chunk size");
+        }
+        byte[] streamId = new byte[STREAM_ID_LENGTH];
+        input.readFully(streamId);
+
+        byte[] iv = new byte[IV_LENGTH];
+        byte[] encrypted = new byte[chunkSize + TAG_LENGTH];
+        byte[] decrypted = new byte[chunkSize + TAG_LENGTH];
+        Cipher cipher = getCipher();
+        int index = 0;
+        boolean last = false;
+        while (!last) {
+            try {
+                last = input.readBoolean();
+            } catch (EOFException e) {
+                throw new IOException("Stream is truncated", e);
+            }
+            int length = input.readInt();
+            if (length < TAG_LENGTH || length > encrypted.length) {
+                throw new IOException("Invalid chunk length");
+            }
+            input.readFully(iv);
+            input.readFully(encrypted, 0, length);
+            byte[] aad = aad(streamId, index++, last);
+            int decryptedLength;
+            SecretKey key = getKey();
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, iv));
+                cipher.updateAAD(aad);
+                decryptedLength = cipher.doFinal(encrypted, 0, length, decrypted, 0);
+            } catch (GeneralSecurityException e) {
+                //The cached key may be invalidated by others, retry with a fresh key
+                invalidateKey(key);
+                cipher.init(Cipher.DECRYPT_MODE, getKey(), new GCMParameterSpec(128, iv));
+                cipher.updateAAD(aad);
+                decryptedLength = cipher.doFinal(encrypted, 0, length, decrypted, 0);
+            }
+            out.write(decrypted, 0, decryptedLength);
+        }
+        out.flush();
+    }
+
+    private static byte[] aad(byte[] streamId, int index, boolean last) {
+        return ByteBuffer.allocate(STREAM_ID_LENGTH + 5)
+                .put(streamId)
+                .putInt(index)
+                .put((byte) (last ? 1 : 0))
+                .array();
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = in.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Verify the MAC signature of the encrypted data without decrypting it.
+     *
+     * @param encryptedData The encrypted data
+     * @return True if the data is signed with the MAC key of this encryptor.
+     */
+    boolean verifyMac(byte[] encryptedData) {
+        try {
+            return computeAndVerifyMac(encryptedData);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error while instantiating MAC", e);
+        }
+    }
+
+    private boolean computeAndVerifyMac(byte[] encryptedData) throws GeneralSecurityException {
+        int offset = MAC_LENGTH + IV_LENGTH;
+        if (encryptedData.length < offset) {
+            return false;
+        }
+        Mac mac = getMac();
+        mac.update(encryptedData, offset, encryptedData.length - offset);
+        byte[] computed = mac.doFinal();
+        //Constant time comparison against the MAC in the message
+        int result = 0;
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            result |= computed[i] ^ encryptedData[i];
+        }
+        return result == 0;
+    }
+
+    private Mac getMac() throws GeneralSecurityException {
+        Mac mac = macPool.get();
+        if (mac == null) {
+            mac = Mac.getInstance(HMAC_SHA256);
+            mac.init(macKey);
+            macPool.set(mac);
+        }
+        //doFinal resets the Mac to the initialized state, ready for reuse.
+        return mac;
+    }
+
+    private Cipher getCipher() throws GeneralSecurityException {
+        Cipher cipher = cipherPool.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(AES_GCM_NO_PADDING);
+            cipherPool.set(cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Retrieve the cached SecretKey, resolve the key with {@link #getSecretKey()}
+     * if the key is not cached.
+     *
+     * @return The SecretKey
+     */
+    SecretKey getKey() throws GeneralSecurityException, IOException {
+        SecretKey key = secretKey;
+        if (key == null) {
+            synchronized (this) {
+                key = secretKey;
+                if (key == null) {
+                    key = getSecretKey();
+                    secretKey = key;
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Retrieve the SecretKey to encrypt data, data encrypted with a SecretKey which is no longer stored
+     * cannot be decrypted later.
+     *
+     * @return The SecretKey
+     */
+    SecretKey getEncryptionKey() throws GeneralSecurityException, IOException {
+        return getKey();
+    }
+
+    /**
+     * Remove the cached SecretKey, the key will be resolved again with the next operation.
+     */
+    synchronized void invalidateKey() {
+        secretKey = null;
+    }
+
+    /**
+     * Remove the cached SecretKey if it is still the provided key, called when an operation with the key failed.
+     *
+     * @param key The key to remove
+     */
+    synchronized void invalidateKey(SecretKey key) {
+        if (secretKey == key) {
+            secretKey = null;
+        }
+    }
+
+    @Override
+    public void reset() throws GeneralSecurityException, IOException {
+        invalidateKey();
     }
 
     /**
@@ -129,5 +383,12 @@ abstract class AbstractSymmetricEncryptor implements Encryptor {
      */
     abstract SecretKey getSecretKey() throws GeneralSecurityException, IOException;
 
-    abstract byte[] init(Cipher cipher) throws GeneralSecurityException, IOException;
-}
\ No newline at end of file
+    /**
+     * Initialize the cipher for encryption.
+     *
+     * @param cipher    The cipher to initialize
+     * @param secretKey The SecretKey to encrypt the data
+     * @return The IV
+     */
+    abstract byte[] init(Cipher cipher, SecretKey secretKey) throws GeneralSecurityException, IOException;
+}
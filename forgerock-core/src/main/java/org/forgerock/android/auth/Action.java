@@ -29,6 +29,7 @@ import lombok.RequiredArgsConstructor;
  * <li>REVOKE_TOKEN - OAuth2 token revocation with given 'access_token' or 'refresh_token': '/oauth2/realms/{realm}/token/revoke'</li>
  * <li>LOGOUT - AM Session logout request to revoke SSO Token: '/json/realms/{realm}/sessions?_action=logout'</li>
  * <li>USER_INFO - Retrieving user info: `/oauth2/realms/{realm}/userinfo`</li>
+ * <li>PRE_WARM - Connection pre-warm at start up: HEAD request to the server url, GET requests to the configured pre-warm endpoints</li>
  * </ul>
  */
 @Getter
@@ -44,6 +45,7 @@ public class Action {
     public static final String REVOKE_TOKEN = "REVOKE_TOKEN";
     public static final String LOGOUT = "LOGOUT";
     public static final String USER_INFO = "USER_INFO";
+    public static final String PRE_WARM = "PRE_WARM";
 
     private final String type;
 
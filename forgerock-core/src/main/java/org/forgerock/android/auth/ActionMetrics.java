@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregated network metrics of an {@link Action}, with a {@link LatencyHistogram} for each
+ * {@link RequestTiming.Phase}. A histogram only counts the requests in which the phase happened, for example the
+ * connect phase is not counted for a request which reused a connection.
+ */
+public class ActionMetrics {
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong reusedConnections = new AtomicLong();
+    private final LatencyHistogram[] histograms = new LatencyHistogram[RequestTiming.Phase.values().length];
+
+    ActionMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    void record(RequestTiming timing) {
+        requests.incrementAndGet();
+        if (!timing.isSuccess()) {
+            failures.incrementAndGet();
+        }
+        if (timing.isConnectionReused()) {
+            reusedConnections.incrementAndGet();
+        }
+        for (RequestTiming.Phase phase : RequestTiming.Phase.values()) {
+            //A phase which did not happen is ignored by the histogram
+            histograms[phase.ordinal()].record(timing.get(phase));
+        }
+    }
+
+    /**
+     * @return The number of completed requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return The number of failed requests, a request fails with I/O error, a Http error response is not a failure
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return The number of requests which reused a pooled connection
+     */
+    public long getReusedConnections() {
+        return reusedConnections.get();
+    }
+
+    /**
+     * Retrieve the latency histogram of a phase.
+     *
+     * @param phase The phase
+     * @return The latency histogram
+     */
+    public LatencyHistogram getHistogram(RequestTiming.Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+}
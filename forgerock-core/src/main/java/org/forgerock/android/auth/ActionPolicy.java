@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Network policy of an {@link Action} type: timeouts and retry with exponential backoff.
+ * <p>
+ * A failed attempt is retried after a random delay between 0 and
+ * {@code min(maxBackoffMillis, backoffMillis * 2^attempt)} (full jitter). Only configure retry for idempotent
+ * or safe operations.
+ */
+@Getter
+public class ActionPolicy {
+
+    /**
+     * Connect timeout in milliseconds, 0 to use the timeout of the {@link NetworkConfig}
+     */
+    private final long connectTimeoutMillis;
+    /**
+     * Read and write timeout in milliseconds, 0 to use the timeout of the {@link NetworkConfig}
+     */
+    private final long readTimeoutMillis;
+    /**
+     * Maximum number of retries after the first attempt
+     */
+    private final int maxRetries;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    /**
+     * Retry on 502, 503 and 504 responses in addition to I/O failure
+     */
+    private final boolean retryOnServerError;
+
+    @Builder
+    private ActionPolicy(Long connectTimeoutMillis,
+                         Long readTimeoutMillis,
+                         Integer maxRetries,
+                         Long backoffMillis,
+                         Long maxBackoffMillis,
+                         Boolean retryOnServerError) {
+        this.connectTimeoutMillis = connectTimeoutMillis == null ? 0 : connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis == null ? 0 : readTimeoutMillis;
+        this.maxRetries = maxRetries == null ? 0 : maxRetries;
+        this.backoffMillis = backoffMillis == null ? 200 : backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis == null ? 2000 : maxBackoffMillis;
+        this.retryOnServerError = retryOnServerError != null && retryOnServerError;
+    }
+
+    /**
+     * Compute the delay before a retry.
+     *
+     * @param attempt The number of the failed attempt, starting from 0
+     * @param random  Random value between 0 (inclusive) and 1 (exclusive)
+     * @return The delay in milliseconds
+     */
+    long backoff(int attempt, double random) {
+        long ceiling = backoffMillis << Math.min(attempt, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffMillis) {
+            ceiling = maxBackoffMillis;
+        }
+        return (long) (ceiling * random);
+    }
+
+}
@@ -16,14 +16,17 @@ import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 
 /**
  * Provide data encryption and decryption for Android L device.
+ * <p>
+ * The unwrapped SecretKey is kept in memory for {@code forgerock_data_key_lifetime} seconds, to avoid
+ * the RSA private key operation for every encryption and decryption.
  */
 class AndroidLEncryptor extends AbstractSymmetricEncryptor {
 
@@ -31,6 +34,11 @@ class AndroidLEncryptor extends AbstractSymmetricEncryptor {
 
     private final SecretKeyStore secretKeyStore;
     private final Context context;
+    private final long keyLifetimeMillis;
+
+    private volatile WrappedSecretKey unwrappedKey;
+    //In memory copy of the stored encrypted SecretKey, the SecretKeyStore may be backed by IPC
+    private volatile String encryptedKey;
 
     /**
      * @param context        The Application Context
@@ -38,9 +46,60 @@ class AndroidLEncryptor extends AbstractSymmetricEncryptor {
      * @param secretKeyStore The SecretKeyStore to store the SecretKey
      */
     AndroidLEncryptor(Context context, @NonNull String keyAlias, SecretKeyStore secretKeyStore) {
+        this(context, keyAlias, secretKeyStore, KeyWrappingEncryptor.getKeyLifetimeMillis(context));
+    }
+
+    /**
+     * @param context           The Application Context
+     * @param keyAlias          The Alias to store the the SecretKey and Asymmetric Keys
+     * @param secretKeyStore    The SecretKeyStore to store the SecretKey
+     * @param keyLifetimeMillis The lifetime of the unwrapped SecretKey in memory
+     */
+    AndroidLEncryptor(Context context, @NonNull String keyAlias, SecretKeyStore secretKeyStore,
+                      long keyLifetimeMillis) {
         super(keyAlias);
         this.secretKeyStore = secretKeyStore;
         this.context = context;
+        this.keyLifetimeMillis = keyLifetimeMillis;
+    }
+
+    @Override
+    SecretKey getKey() throws GeneralSecurityException, IOException {
+        WrappedSecretKey key = unwrappedKey;
+        if (key != null && key.isValid(encryptedKey)) {
+            return key;
+        }
+        //Expired or reset
+        invalidateKey();
+        return super.getKey();
+    }
+
+    /**
+     * The SecretKey failed the operation, the stored SecretKey may have been replaced by another instance,
+     * the SecretKey is decrypted again from the {@link SecretKeyStore} with the next operation.
+     */
+    /**
+     * Check the stored SecretKey before encryption, the SecretKey may have been removed or replaced,
+     * for example when the account is removed.
+     */
+    @Override
+    SecretKey getEncryptionKey() throws GeneralSecurityException, IOException {
+        String stored = secretKeyStore.getEncryptedSecretKey();
+        if (stored == null || !stored.equals(encryptedKey)) {
+            synchronized (this) {
+                unwrappedKey = null;
+                invalidateKey();
+            }
+        }
+        return getKey();
+    }
+
+    @Override
+    synchronized void invalidateKey(SecretKey key) {
+        super.invalidateKey(key);
+        if (unwrappedKey == key) {
+            unwrappedKey = null;
+        }
     }
 
     /**
@@ -55,39 +114,57 @@ class AndroidLEncryptor extends AbstractSymmetricEncryptor {
     @Override
     protected SecretKey getSecretKey() throws GeneralSecurityException {
         String encryptedSecretKey = secretKeyStore.getEncryptedSecretKey();
-        Encryptor encryptor = new AsymmetricEncryptor(context, keyAlias);
+        Encryptor encryptor = getKeyEncryptor();
+        byte[] encoded;
         if (encryptedSecretKey == null) {
             KeyGenerator kg = KeyGenerator.getInstance(AES);
             kg.init(KEY_SIZE);
-            SecretKey secretKey = kg.generateKey();
+            encoded = kg.generateKey().getEncoded();
             //Encrypt the SecretKey and persist it.
-            secretKeyStore.persist(
-                    Base64.encodeToString(encryptor.encrypt(secretKey.getEncoded()), Base64.DEFAULT));
-            return secretKey;
+            encryptedSecretKey = Base64.encodeToString(encryptor.encrypt(encoded), Base64.DEFAULT);
+            secretKeyStore.persist(encryptedSecretKey);
         } else {
-            return new SecretKeySpec(encryptor.decrypt(Base64.decode(encryptedSecretKey, Base64.DEFAULT))
-                    , AES);
-
+            encoded = encryptor.decrypt(Base64.decode(encryptedSecretKey, Base64.DEFAULT));
         }
+        encryptedKey = encryptedSecretKey;
+        WrappedSecretKey secretKey = WrappedSecretKey.create(encoded, encryptedSecretKey, keyLifetimeMillis);
+        Arrays.fill(encoded, (byte) 0);
+        unwrappedKey = secretKey;
+        return secretKey;
+    }
+
+    /**
+     * Retrieve the Encryptor to encrypt and decrypt the SecretKey.
+     *
+     * @return The Encryptor with the Asymmetric Keys
+     */
+    Encryptor getKeyEncryptor() {
+        return new AsymmetricEncryptor(context, keyAlias);
     }
 
     @Override
-    byte[] init(Cipher cipher) throws GeneralSecurityException {
+    byte[] init(Cipher cipher, SecretKey secretKey) throws GeneralSecurityException {
         AlgorithmParameterSpec ivParams;
         byte[] iv = new byte[IV_LENGTH];
         SecureRandom secureRandom = new SecureRandom();
         secureRandom.nextBytes(iv);
         ivParams = new GCMParameterSpec(128, iv);
-        cipher.init(Cipher.ENCRYPT_MODE, getSecretKey(), ivParams);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParams);
         return iv;
     }
 
     @Override
     public void reset() throws GeneralSecurityException, IOException {
+        WrappedSecretKey key = unwrappedKey;
+        if (key != null) {
+            key.destroy();
+        }
+        encryptedKey = null;
+        super.reset();
         //Clear the stored encrypted SecretKey
         secretKeyStore.remove();
         //Reset the Public/Private Keys that used to encrypt the SecretKey
-        new AsymmetricEncryptor(context, keyAlias).reset();
+        getKeyEncryptor().reset();
 
     }
 
@@ -58,6 +58,7 @@ class AndroidMEncryptor extends AbstractSymmetricEncryptor {
             if (keyStore.getEntry(keyAlias, null) instanceof KeyStore.PrivateKeyEntry) {
                 //This is an upgrade from Android Pre-M to Android M
                 keyStore.deleteEntry(keyAlias);
+                invalidateKey();
                 //Notify listener to delete the data which encrypted with this key
                 if (listener != null) {
                     listener.onKeyUpdated();
@@ -69,9 +70,9 @@ class AndroidMEncryptor extends AbstractSymmetricEncryptor {
     }
 
     @Override
-    byte[] init(Cipher cipher) throws GeneralSecurityException, IOException {
+    byte[] init(Cipher cipher, SecretKey secretKey) throws GeneralSecurityException, IOException {
         //Generate a random IV See KeyGenParameterSpec.Builder.setRandomizedEncryptionRequired
-        cipher.init(Cipher.ENCRYPT_MODE, getSecretKey());
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
         return cipher.getIV();
     }
 
@@ -89,6 +90,7 @@ class AndroidMEncryptor extends AbstractSymmetricEncryptor {
 
     @Override
     public void reset() throws GeneralSecurityException, IOException {
+        super.reset();
         getKeyStore().deleteEntry(keyAlias);
     }
 }
\ No newline at end of file
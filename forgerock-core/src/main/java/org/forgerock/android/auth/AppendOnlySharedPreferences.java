@@ -0,0 +1,581 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * {@link SharedPreferences} backed by a memory-mapped, append-only log file.
+ * <p>
+ * Every update appends a record to the end of the log instead of rewriting the whole file, an in-memory
+ * index keeps the offset of the latest value of each key, values are decoded from the mapped file on read.
+ * {@link Editor#commit()} forces the appended records to the storage before returning,
+ * {@link Editor#apply()} batches the flush with other updates in the background. The log is compacted
+ * when the superseded records take more space than the live records.
+ * <p>
+ * Record layout: length (4 bytes) | CRC32 of the body (4 bytes) | body, where the body is
+ * operation (1 byte) | key length (4 bytes) | UTF-8 key | {@link ValueEnvelope} value.
+ * A record which is incomplete or fails the checksum marks the end of the log, an update interrupted
+ * by a crash is discarded when the log is loaded.
+ * <p>
+ * Only one instance per file should exist, use {@link #getInstance(File)}.
+ */
+class AppendOnlySharedPreferences implements SharedPreferences {
+
+    private static final String TAG = AppendOnlySharedPreferences.class.getSimpleName();
+
+    private static final int MAGIC = 0x46524C53; //FRLS
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int RECORD_HEADER_LENGTH = 8;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    //Do not compact small logs
+    static final int COMPACTION_THRESHOLD = 32 * 1024;
+    private static final long SYNC_DELAY_MILLIS = 200;
+
+    private static final Map<String, AppendOnlySharedPreferences> instances = new HashMap<>();
+    private static final ScheduledExecutorService worker =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ForgeRock-LogSync");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final File file;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    //Key -> offset and length of the latest value in the log
+    private final Map<String, Slot> index = new HashMap<>();
+    private final Map<OnSharedPreferenceChangeListener, Object> listeners = new WeakHashMap<>();
+    private final AtomicBoolean syncPending = new AtomicBoolean();
+
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer buffer;
+    private int end;
+    //Bytes taken by records which have been superseded
+    private int garbage;
+
+    /**
+     * Retrieve the shared instance for the file.
+     *
+     * @param file The log file
+     * @return The SharedPreferences backed by the file
+     */
+    static synchronized AppendOnlySharedPreferences getInstance(File file) {
+        String path = file.getAbsolutePath();
+        AppendOnlySharedPreferences instance = instances.get(path);
+        if (instance == null) {
+            instance = new AppendOnlySharedPreferences(file);
+            instances.put(path, instance);
+        }
+        return instance;
+    }
+
+    @VisibleForTesting
+    AppendOnlySharedPreferences(File file) {
+        this.file = file;
+        try {
+            load();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load " + file.getName(), e);
+        }
+    }
+
+    private void load() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        if (randomAccessFile.length() < HEADER_LENGTH) {
+            randomAccessFile.setLength(INITIAL_CAPACITY);
+            map(INITIAL_CAPACITY);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.force();
+        } else {
+            map((int) randomAccessFile.length());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported file format");
+            }
+        }
+        index.clear();
+        garbage = 0;
+        end = scan();
+    }
+
+    private void map(int capacity) throws IOException {
+        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Replay the log and build the index.
+     *
+     * @return The end of the last valid record
+     */
+    private int scan() {
+        int position = HEADER_LENGTH;
+        int limit = buffer.capacity();
+        while (position + RECORD_HEADER_LENGTH <= limit) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > limit - position - RECORD_HEADER_LENGTH) {
+                break;
+            }
+            if (crc(slice(position + RECORD_HEADER_LENGTH, length)) != buffer.getInt(position + 4)) {
+                break;
+            }
+            apply(position, length);
+            position += RECORD_HEADER_LENGTH + length;
+        }
+        if (position + RECORD_HEADER_LENGTH <= limit
+                && (buffer.getInt(position) != 0 || buffer.getInt(position + 4) != 0)) {
+            //Discard the incomplete record, so that it will not be mistaken for a valid record later
+            Logger.debug(TAG, "Discard incomplete record of %s", file.getName());
+            for (int i = position; i < limit; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+        return position;
+    }
+
+    /**
+     * Apply the record to the index.
+     */
+    private void apply(int position, int length) {
+        int bodyOffset = position + RECORD_HEADER_LENGTH;
+        byte operation = buffer.get(bodyOffset);
+        int recordLength = RECORD_HEADER_LENGTH + length;
+        if (operation == CLEAR) {
+            for (Slot slot : index.values()) {
+                garbage += slot.recordLength;
+            }
+            index.clear();
+            garbage += recordLength;
+            return;
+        }
+        int keyLength = buffer.getInt(bodyOffset + 1);
+        String key = readString(bodyOffset + 5, keyLength);
+        Slot previous;
+        if (operation == PUT) {
+            int valueOffset = bodyOffset + 5 + keyLength;
+            previous = index.put(key, new Slot(valueOffset, length - 5 - keyLength, recordLength));
+        } else {
+            previous = index.remove(key);
+            garbage += recordLength;
+        }
+        if (previous != null) {
+            garbage += previous.recordLength;
+        }
+    }
+
+    private static int crc(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        slice(offset, length).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate;
+    }
+
+    private Object read(String key) {
+        lock.readLock().lock();
+        try {
+            Slot slot = index.get(key);
+            if (slot == null) {
+                return null;
+            }
+            byte[] value = new byte[slot.length];
+            slice(slot.offset, slot.length).get(value);
+            return ValueEnvelope.decode(value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> result = new HashMap<>();
+            for (String key : index.keySet()) {
+                result.put(key, read(key));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        Object value = read(key);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        Object value = read(key);
+        return value instanceof Set ? (Set<String>) value : defValues;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = read(key);
+        return value instanceof Integer ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = read(key);
+        return value instanceof Long ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = read(key);
+        return value instanceof Float ? (Float) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = read(key);
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public SharedPreferences.Editor edit() {
+        return new Editor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (listeners) {
+            listeners.put(listener, this);
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Append the changes to the log.
+     *
+     * @param clear   True to remove all the existing values first
+     * @param changes The changes, null value to remove the key
+     * @param sync    True to force the changes to the storage before returning
+     */
+    private void write(boolean clear, Map<String, byte[]> changes, boolean sync) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (clear) {
+                append(CLEAR, null, null);
+            }
+            for (Map.Entry<String, byte[]> change : changes.entrySet()) {
+                append(change.getValue() == null ? REMOVE : PUT, change.getKey(), change.getValue());
+            }
+            if (garbage > COMPACTION_THRESHOLD && garbage > end - garbage) {
+                compact();
+            } else if (sync) {
+                buffer.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!sync) {
+            scheduleSync();
+        }
+    }
+
+    private void append(byte operation, String key, byte[] value) throws IOException {
+        byte[] keyBytes = key == null ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + (key == null ? 0 : 4 + keyBytes.length) + (value == null ? 0 : value.length);
+        ensureCapacity(RECORD_HEADER_LENGTH + length);
+
+        ByteBuffer body = ByteBuffer.allocate(length);
+        body.put(operation);
+        if (key != null) {
+            body.putInt(keyBytes.length);
+            body.put(keyBytes);
+        }
+        if (value != null) {
+            body.put(value);
+        }
+        body.flip();
+
+        int position = end;
+        buffer.position(position + 4);
+        buffer.putInt(crc(body.duplicate()));
+        buffer.put(body);
+        //Write the length last, the record is invalid until it is complete
+        buffer.putInt(position, length);
+        end = position + RECORD_HEADER_LENGTH + length;
+        apply(position, length);
+    }
+
+    private void ensureCapacity(int recordLength) throws IOException {
+        int capacity = buffer.capacity();
+        //Keep room for the zero length which marks the end of the log
+        if (end + recordLength + RECORD_HEADER_LENGTH <= capacity) {
+            return;
+        }
+        long required = (long) end + recordLength + RECORD_HEADER_LENGTH;
+        long newCapacity = Math.max(required, (long) capacity * 2);
+        if (newCapacity > Integer.MAX_VALUE) {
+            throw new IOException("Storage is full");
+        }
+        buffer.force();
+        randomAccessFile.setLength(newCapacity);
+        map((int) newCapacity);
+    }
+
+    /**
+     * Rewrite the live records to a new log, and replace the current log atomically.
+     */
+    private void compact() throws IOException {
+        Logger.debug(TAG, "Compacting %s, %d of %d bytes are superseded", file.getName(), garbage, end);
+        File tmp = new File(file.getPath() + ".tmp");
+        int capacity = Math.max(INITIAL_CAPACITY, (end - garbage) * 2);
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            out.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            FileChannel channel = out.getChannel();
+            channel.write(header);
+            for (Map.Entry<String, Slot> entry : index.entrySet()) {
+                byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                Slot slot = entry.getValue();
+                int length = 1 + 4 + keyBytes.length + slot.length;
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + length);
+                record.position(RECORD_HEADER_LENGTH);
+                record.put(PUT).putInt(keyBytes.length).put(keyBytes).put(slice(slot.offset, slot.length));
+                ByteBuffer body = record.duplicate();
+                body.position(RECORD_HEADER_LENGTH);
+                body.limit(record.position());
+                record.putInt(0, length).putInt(4, crc(body));
+                record.flip();
+                channel.write(record);
+            }
+            out.setLength(Math.max(capacity, channel.position() + RECORD_HEADER_LENGTH));
+            channel.force(true);
+        }
+        randomAccessFile.close();
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to replace " + file.getName());
+        }
+        load();
+    }
+
+    private void scheduleSync() {
+        if (syncPending.compareAndSet(false, true)) {
+            worker.schedule(() -> {
+                syncPending.set(false);
+                lock.readLock().lock();
+                try {
+                    buffer.force();
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }, SYNC_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void notifyListeners(boolean clear, Set<String> keys) {
+        List<OnSharedPreferenceChangeListener> targets;
+        synchronized (listeners) {
+            if (listeners.isEmpty()) {
+                return;
+            }
+            targets = new ArrayList<>(listeners.keySet());
+        }
+        for (OnSharedPreferenceChangeListener listener : targets) {
+            if (clear) {
+                listener.onSharedPreferenceChanged(this, null);
+            }
+            for (String key : keys) {
+                listener.onSharedPreferenceChanged(this, key);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    int getGarbage() {
+        lock.readLock().lock();
+        try {
+            return garbage;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @VisibleForTesting
+    int getEnd() {
+        lock.readLock().lock();
+        try {
+            return end;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static class Slot {
+        private final int offset;
+        private final int length;
+        //Length of the whole record, used to track the superseded bytes
+        private final int recordLength;
+
+        private Slot(int offset, int length, int recordLength) {
+            this.offset = offset;
+            this.length = length;
+            this.recordLength = recordLength;
+        }
+    }
+
+    private class Editor implements SharedPreferences.Editor {
+
+        private final Map<String, byte[]> changes = new LinkedHashMap<>();
+        private boolean clear;
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putString(String key, @Nullable String value) {
+            return put(key, value == null ? null : ValueEnvelope.encode(value));
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, @Nullable Set<String> values) {
+            return put(key, values == null ? null : ValueEnvelope.encode(values));
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            return put(key, ValueEnvelope.encode(value));
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            return put(key, ValueEnvelope.encode(value));
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            return put(key, ValueEnvelope.encode(value));
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            return put(key, ValueEnvelope.encode(value));
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            return put(key, null);
+        }
+
+        @NonNull
+        @Override
+        public synchronized SharedPreferences.Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        private synchronized SharedPreferences.Editor put(String key, byte[] value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return write(true);
+        }
+
+        @Override
+        public void apply() {
+            write(false);
+        }
+
+        private boolean write(boolean sync) {
+            boolean cleared;
+            Map<String, byte[]> pending;
+            synchronized (this) {
+                cleared = clear;
+                pending = new LinkedHashMap<>(changes);
+                clear = false;
+                changes.clear();
+            }
+            try {
+                AppendOnlySharedPreferences.this.write(cleared, pending, sync);
+            } catch (IOException e) {
+                Logger.error(TAG, e, "Failed to write %s", file.getName());
+                return false;
+            }
+            notifyListeners(cleared, Collections.unmodifiableSet(pending.keySet()));
+            return true;
+        }
+    }
+}
@@ -7,6 +7,7 @@
 
 package org.forgerock.android.auth;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import lombok.AccessLevel;
@@ -14,40 +15,36 @@ import lombok.Getter;
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
 
 /**
  * The content of the {@link Request} body
+ * <p>
+ * The content is read from the underlying {@link RequestBody} on first access and cached, a body which is
+ * never read is never copied.
  */
 public class Body {
 
     @Getter(AccessLevel.PACKAGE)
-    private RequestBody requestBody;
-    @Getter
-    private byte[] content;
-    @Getter
-    private String contentType;
+    private final RequestBody requestBody;
+    private volatile byte[] content;
 
     Body(RequestBody requestBody) {
         this.requestBody = requestBody;
-        try (Buffer buffer = new Buffer()) {
-            requestBody.writeTo(buffer);
-            content = buffer.readByteArray();
-        } catch (IOException e) {
-            throw new IllegalArgumentException(e);
-        }
-        if (requestBody.contentType() != null) {
-            contentType = requestBody.contentType().toString();
-        }
     }
 
     /**
-     * Construct body with byte[]
+     * Construct body with byte[], the body takes ownership of the content, the array is not copied
+     * and should not be modified afterward.
      *
      * @param content     The body content
      * @param contentType body Content Type
      */
     public Body(byte[] content, String contentType) {
         this(RequestBody.create(content, MediaType.parse(contentType)));
+        //Content is known, no need to write the request body
+        this.content = content;
     }
 
     /**
@@ -60,4 +57,49 @@ public class Body {
         this(RequestBody.create(content, MediaType.parse(contentType)));
     }
 
+    /**
+     * Retrieve the body content, the content is read once and shared by all the callers,
+     * the returned array should not be modified.
+     *
+     * @return The body content
+     */
+    public byte[] getContent() {
+        byte[] result = content;
+        if (result == null) {
+            synchronized (this) {
+                result = content;
+                if (result == null) {
+                    try (Buffer buffer = new Buffer()) {
+                        requestBody.writeTo(buffer);
+                        result = buffer.readByteArray();
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException(e);
+                    }
+                    content = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retrieve a read-only stream of the body content, every call returns a new stream from the beginning
+     * of the content. The streams read the content shared by all the callers, the content is not copied.
+     *
+     * @return The stream of the body content
+     */
+    public BufferedSource getSource() {
+        return Okio.buffer(Okio.source(new ByteArrayInputStream(getContent())));
+    }
+
+    /**
+     * Retrieve the body Content Type
+     *
+     * @return The Content Type, or null if the Content Type is unknown
+     */
+    public String getContentType() {
+        MediaType mediaType = requestBody.contentType();
+        return mediaType == null ? null : mediaType.toString();
+    }
+
 }
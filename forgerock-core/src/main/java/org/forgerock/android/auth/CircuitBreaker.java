@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker of a server. The circuit opens after consecutive I/O failures, requests are short-circuited while
+ * the circuit is open. After the open interval, a single trial request is allowed (half open), the circuit closes
+ * when the trial succeeds and opens again when it fails.
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long openedAt;
+
+    /**
+     * @param failureThreshold Number of consecutive failures to open the circuit, 0 to disable the circuit breaker
+     * @param openMillis       Time in milliseconds before a trial request is allowed
+     */
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Check if a request is allowed.
+     *
+     * @return False if the request should be short-circuited
+     */
+    boolean allow() {
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                //Only one request gets the trial
+                return System.currentTimeMillis() - openedAt >= openMillis
+                        && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+            default:
+                return false;
+        }
+    }
+
+    void onSuccess() {
+        failures.set(0);
+        state.set(State.CLOSED);
+    }
+
+    void onFailure() {
+        if (failureThreshold <= 0) {
+            return;
+        }
+        if (state.get() == State.HALF_OPEN || failures.incrementAndGet() >= failureThreshold) {
+            openedAt = System.currentTimeMillis();
+            state.set(State.OPEN);
+        }
+    }
+
+    /**
+     * Release the trial without outcome, for example when the request is cancelled or fails before reaching
+     * the server.
+     */
+    void release() {
+        state.compareAndSet(State.HALF_OPEN, State.OPEN);
+    }
+
+    State getState() {
+        return state.get();
+    }
+}
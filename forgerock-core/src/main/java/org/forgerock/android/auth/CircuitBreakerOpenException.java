@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a request is short-circuited because the server is considered unreachable,
+ * see {@link NetworkPolicy#setCircuitBreaker(int, long)}.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
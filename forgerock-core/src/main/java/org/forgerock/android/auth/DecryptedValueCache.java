@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, in memory cache of decrypted values for {@link SecuredSharedPreferences}.
+ * <p>
+ * Each entry remembers the encrypted value it was decrypted from, a cached value is only returned when
+ * the encrypted value still matches the one currently stored, so an entry can never outlive the data
+ * it was produced from, even if the underlying storage is updated by another instance.
+ */
+class DecryptedValueCache {
+
+    static final int DEFAULT_MAX_SIZE = 128;
+
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    DecryptedValueCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    DecryptedValueCache(final int maxSize) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Retrieve the cached decrypted value.
+     *
+     * @param key            The key of the value
+     * @param encryptedValue The encrypted value currently stored with the key
+     * @return The decrypted value, or null if not cached or the cached value is stale.
+     */
+    synchronized Object get(String key, String encryptedValue) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.encryptedValue.equals(encryptedValue)) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache the decrypted value.
+     *
+     * @param key            The key of the value
+     * @param encryptedValue The encrypted value which the value decrypted from
+     * @param value          The decrypted value, the value has to be immutable.
+     */
+    synchronized void put(String key, String encryptedValue, Object value) {
+        entries.put(key, new Entry(encryptedValue, value));
+    }
+
+    /**
+     * Remove the cached value for the key.
+     *
+     * @param key The key of the value
+     */
+    synchronized void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Remove all cached values.
+     */
+    synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    private static class Entry {
+        private final String encryptedValue;
+        private final Object value;
+
+        private Entry(String encryptedValue, Object value) {
+            this.encryptedValue = encryptedValue;
+            this.value = value;
+        }
+    }
+}
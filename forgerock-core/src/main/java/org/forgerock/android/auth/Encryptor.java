@@ -7,7 +7,10 @@
 
 package org.forgerock.android.auth;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 
 /**
@@ -34,6 +37,43 @@ public interface Encryptor {
      */
     byte[] decrypt(byte[] encryptedData);
 
+    /**
+     * Encrypts the data from the input stream and writes the encrypted data to the output stream.
+     * The default implementation reads the whole input into memory, implementations should override it
+     * to encrypt the data chunk by chunk.
+     * The streams are not closed.
+     *
+     * @param in  The data to encrypt
+     * @param out The output of the encrypted data
+     */
+    default void encrypt(InputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            data.write(buffer, 0, read);
+        }
+        out.write(encrypt(data.toByteArray()));
+    }
+
+    /**
+     * Decrypts the data from the input stream which encrypted with {@link #encrypt(InputStream, OutputStream)}
+     * and writes the decrypted data to the output stream.
+     * The streams are not closed.
+     *
+     * @param in  The encrypted data
+     * @param out The output of the decrypted data
+     */
+    default void decrypt(InputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            data.write(buffer, 0, read);
+        }
+        out.write(decrypt(data.toByteArray()));
+    }
+
     /**
      * Reset the Encryption Provider, remove all created keys
      */
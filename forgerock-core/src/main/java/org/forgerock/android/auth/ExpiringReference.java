@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In memory reference to a value which expires a fixed interval after it is set.
+ * <p>
+ * The expiration is checked against a monotonic clock when the value is read, no task is scheduled to evict
+ * the value. Each {@link #set(Object)} replaces the value with its own expiration, so a previous value cannot
+ * evict a newer one.
+ *
+ * @param <T> The type of the value
+ */
+class ExpiringReference<T> {
+
+    /**
+     * Monotonic clock in nanoseconds.
+     */
+    interface Clock {
+        long nanoTime();
+    }
+
+    static final Clock SYSTEM_CLOCK = System::nanoTime;
+
+    private final AtomicReference<Entry<T>> entry = new AtomicReference<>();
+    private final long ttlNanos;
+    private final Clock clock;
+
+    /**
+     * Create a reference with the system monotonic clock.
+     *
+     * @param ttlMillis The time to live of the value in milliseconds, the value is not kept when 0 or less
+     */
+    ExpiringReference(long ttlMillis) {
+        this(ttlMillis, SYSTEM_CLOCK);
+    }
+
+    /**
+     * Create a reference with the provided clock.
+     *
+     * @param ttlMillis The time to live of the value in milliseconds, the value is not kept when 0 or less
+     * @param clock     The monotonic clock
+     */
+    ExpiringReference(long ttlMillis, Clock clock) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * Retrieve the value.
+     *
+     * @return The value, or null if not set, cleared or expired
+     */
+    T get() {
+        Entry<T> current = entry.get();
+        if (current == null) {
+            return null;
+        }
+        //Overflow safe comparison of nanoTime
+        if (clock.nanoTime() - current.expiresAt >= 0) {
+            entry.compareAndSet(current, null);
+            return null;
+        }
+        return current.value;
+    }
+
+    /**
+     * Set the value, the value expires after the time to live.
+     *
+     * @param value The value, null to clear the reference
+     */
+    void set(T value) {
+        if (value == null || ttlNanos <= 0) {
+            entry.set(null);
+            return;
+        }
+        entry.set(new Entry<>(value, clock.nanoTime() + ttlNanos));
+    }
+
+    /**
+     * Clear the value.
+     */
+    void clear() {
+        entry.set(null);
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final long expiresAt;
+
+        private Entry(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Interceptor to log the Http traffic for debugging, follow the {@link HttpLoggingPolicy} of the request
+ * {@link Action}.
+ * <p>
+ * Only the first {@link HttpLoggingPolicy#getMaxBodySize()} bytes of a body are captured, the request body is
+ * streamed through a capped buffer, the response body is peeked without being consumed. Known secrets and the
+ * values submitted with the authentication callbacks are redacted from the url, headers, bodies and failures.
+ * The entry is formatted and redacted when the {@link Logger} consumes it, on the Logger background thread.
+ */
+class HttpDebugInterceptor implements Interceptor {
+
+    private static final String TAG = "HttpDebug";
+    static final String REDACTED = "<redacted>";
+
+    //Secrets in body, url query and form parameters
+    private static final Collection<String> SECRETS = Arrays.asList("tokenId", "access_token",
+            "refresh_token", "id_token", "token", "code");
+    private static final Collection<String> SECRET_HEADERS = Arrays.asList("Authorization",
+            "Proxy-Authorization");
+    //Values submitted with the authentication callbacks, for example {"name":"IDToken2","value":"password"}
+    private static final Pattern CALLBACK_INPUT = Pattern.compile(
+            "(\"name\"\\s*:\\s*\"IDToken[^\"]*\"\\s*,\\s*\"value\"\\s*:\\s*)"
+                    + "(?:\"(?:[^\"\\\\]|\\\\.)*\"|\\[[^\\]]*]|[^,}\\]\\s]+)");
+
+    private final Set<String> names;
+    private final Set<String> cookieNames;
+    private final Pattern json;
+    private final Pattern form;
+
+    /**
+     * @param cookieNames Name of the cookies holding a secret, also redacted as header, parameter or field.
+     */
+    HttpDebugInterceptor(Collection<String> cookieNames) {
+        this.cookieNames = new LinkedHashSet<>(cookieNames);
+        this.names = new LinkedHashSet<>(SECRETS);
+        this.names.addAll(cookieNames);
+        StringBuilder alternatives = new StringBuilder();
+        for (String name : names) {
+            if (alternatives.length() > 0) {
+                alternatives.append('|');
+            }
+            alternatives.append(Pattern.quote(name));
+        }
+        this.json = Pattern.compile("(\"(?:" + alternatives + ")\"\\s*:\\s*)\"(?:[^\"\\\\]|\\\\.)*\"");
+        this.form = Pattern.compile("((?:^|[?&;#])(?:" + alternatives + ")=)[^&;#\\s]*");
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        okhttp3.Request request = chain.request();
+        HttpLoggingPolicy policy = HttpLoggingPolicy.getInstance();
+        HttpLoggingPolicy.Rule rule = policy.get(request.tag());
+        if (rule.getLevel() == HttpLoggingPolicy.Level.NONE || !Logger.isDebugEnabled()) {
+            return chain.proceed(request);
+        }
+        boolean headers = rule.getLevel().compareTo(HttpLoggingPolicy.Level.HEADERS) >= 0;
+        double sampleRate = rule.getBodySampleRate();
+        boolean body = rule.getLevel() == HttpLoggingPolicy.Level.BODY
+                && sampleRate > 0
+                && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+        long maxBodySize = policy.getMaxBodySize();
+
+        Entry requestEntry = new Entry("--> " + request.method() + " " + request.url(),
+                headers ? request.headers() : null);
+        if (body && request.body() != null) {
+            requestEntry.body = capture(request.body(), maxBodySize);
+        }
+        Logger.debug(TAG, "%s", requestEntry);
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            Logger.debug(TAG, "<-- HTTP FAILED: %s", redact(e.toString()));
+            throw e;
+        }
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Entry responseEntry = new Entry("<-- " + response.code()
+                + (response.message().isEmpty() ? "" : " " + response.message())
+                + " " + response.request().url() + " (" + tookMs + "ms)",
+                headers ? response.headers() : null);
+        ResponseBody responseBody = response.body();
+        if (body && responseBody != null && isText(responseBody.contentType())) {
+            //Peek one more byte to detect truncation, the response is not consumed
+            ResponseBody peek = response.peekBody(maxBodySize + 1);
+            Buffer buffer = new Buffer();
+            buffer.writeAll(peek.source());
+            responseEntry.body = new Captured(buffer, responseBody.contentType(),
+                    buffer.size() > maxBodySize ? -1 : buffer.size(), maxBodySize);
+        }
+        Logger.debug(TAG, "%s", responseEntry);
+        return response;
+    }
+
+    private Captured capture(RequestBody requestBody, long maxBodySize) throws IOException {
+        MediaType contentType = requestBody.contentType();
+        if (requestBody.isDuplex() || requestBody.isOneShot() || !isText(contentType)) {
+            return new Captured(null, contentType, requestBody.contentLength(), maxBodySize);
+        }
+        Buffer buffer = new Buffer();
+        CappedSink sink = new CappedSink(buffer, maxBodySize);
+        try (BufferedSink bufferedSink = Okio.buffer(sink)) {
+            requestBody.writeTo(bufferedSink);
+        }
+        return new Captured(buffer, contentType, sink.total, maxBodySize);
+    }
+
+    private static boolean isText(MediaType contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String subtype = contentType.subtype().toLowerCase(Locale.ROOT);
+        return contentType.type().equalsIgnoreCase("text")
+                || subtype.contains("json")
+                || subtype.contains("xml")
+                || subtype.contains("x-www-form-urlencoded");
+    }
+
+    String redact(String value) {
+        String redacted = json.matcher(value).replaceAll("$1\"" + REDACTED + "\"");
+        redacted = CALLBACK_INPUT.matcher(redacted).replaceAll("$1\"" + REDACTED + "\"");
+        return form.matcher(redacted).replaceAll("$1" + Matcher.quoteReplacement(REDACTED));
+    }
+
+    private String redactHeader(String name, String value) {
+        for (String secret : SECRET_HEADERS) {
+            if (secret.equalsIgnoreCase(name)) {
+                return REDACTED;
+            }
+        }
+        for (String cookieName : cookieNames) {
+            if (cookieName.equalsIgnoreCase(name)) {
+                return REDACTED;
+            }
+        }
+        if ("Cookie".equalsIgnoreCase(name) || "Set-Cookie".equalsIgnoreCase(name)) {
+            return redactCookies(value);
+        }
+        return redact(value);
+    }
+
+    private String redactCookies(String value) {
+        StringBuilder result = new StringBuilder();
+        for (String cookie : value.split(";")) {
+            if (result.length() > 0) {
+                result.append(';');
+            }
+            int index = cookie.indexOf('=');
+            String name = index < 0 ? cookie.trim() : cookie.substring(0, index).trim();
+            if (index > 0 && names.contains(name)) {
+                result.append(cookie, 0, index + 1).append(REDACTED);
+            } else {
+                result.append(cookie);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * A log entry, redacted and formatted when the {@link Logger} consumes it.
+     */
+    private class Entry implements Logger.Deferred {
+
+        private final String line;
+        private final Headers headers;
+        private Captured body;
+
+        private Entry(String line, Headers headers) {
+            this.line = line;
+            this.headers = headers;
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(redact(line));
+            if (headers != null) {
+                for (int i = 0; i < headers.size(); i++) {
+                    builder.append('\n').append(headers.name(i)).append(": ")
+                            .append(redactHeader(headers.name(i), headers.value(i)));
+                }
+            }
+            if (body != null) {
+                builder.append("\n\n").append(body.toString());
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The captured head of a body.
+     */
+    private class Captured {
+
+        private final Buffer buffer;
+        private final MediaType contentType;
+        //Total size of the body, -1 if unknown
+        private final long total;
+        private final long maxBodySize;
+
+        private Captured(Buffer buffer, MediaType contentType, long total, long maxBodySize) {
+            this.buffer = buffer;
+            this.contentType = contentType;
+            this.total = total;
+            this.maxBodySize = maxBodySize;
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            if (buffer == null) {
+                return "(" + (total < 0 ? "unknown-length" : total + "-byte") + " body omitted)";
+            }
+            Charset charset = contentType == null ? UTF_8 : contentType.charset(UTF_8);
+            Buffer head = new Buffer();
+            buffer.copyTo(head, 0, Math.min(buffer.size(), maxBodySize));
+            String content = head.readString(charset);
+            if (total >= 0 && total <= maxBodySize) {
+                return redact(content) + "\n(" + total + "-byte body)";
+            }
+            return redact(content) + "\n(body truncated to " + maxBodySize + " bytes)";
+        }
+    }
+
+    /**
+     * Sink which keeps the first bytes written and discards the rest.
+     */
+    private static class CappedSink extends ForwardingSink {
+
+        private final Buffer captured;
+        private final long max;
+        private long total;
+
+        private CappedSink(Buffer captured, long max) {
+            super(captured);
+            this.captured = captured;
+            this.max = max;
+        }
+
+        @Override
+        public void write(@NotNull Buffer source, long byteCount) throws IOException {
+            long keep = Math.max(0, Math.min(byteCount, max - captured.size()));
+            if (keep > 0) {
+                super.write(source, keep);
+            }
+            source.skip(byteCount - keep);
+            total += byteCount;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+
+/**
+ * Policy of the Http debug logging, the Http traffic is only logged when {@link Logger#isDebugEnabled()}.
+ * <p>
+ * The logging level and body sample rate can be customized for each {@link Action} type, for example to only log
+ * the headers of {@link Action#REFRESH_TOKEN} requests:
+ * <pre>
+ * HttpLoggingPolicy.getInstance().set(Action.REFRESH_TOKEN, HttpLoggingPolicy.Level.HEADERS, 0);
+ * </pre>
+ * Known secrets (SSO Token, OAuth2 tokens, authorization code, SSO cookie) are always redacted.
+ */
+public class HttpLoggingPolicy {
+
+    private static final HttpLoggingPolicy INSTANCE = new HttpLoggingPolicy();
+
+    /**
+     * Default maximum number of body bytes logged
+     */
+    public static final long DEFAULT_MAX_BODY_SIZE = 4096;
+
+    public enum Level {
+        /**
+         * No logging
+         */
+        NONE,
+        /**
+         * Log the request line and response status
+         */
+        BASIC,
+        /**
+         * Log the request line, response status and headers
+         */
+        HEADERS,
+        /**
+         * Log the request line, response status, headers and bodies up to the maximum body size
+         */
+        BODY,
+    }
+
+    private final Map<String, Rule> rules = new ConcurrentHashMap<>();
+    private volatile Rule defaultRule = new Rule(Level.BODY, 1);
+    private volatile long maxBodySize = DEFAULT_MAX_BODY_SIZE;
+
+    private HttpLoggingPolicy() {
+    }
+
+    /**
+     * Returns a cached instance {@link HttpLoggingPolicy}
+     *
+     * @return instance of {@link HttpLoggingPolicy}
+     */
+    public static HttpLoggingPolicy getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the default logging level, apply to the {@link Action} types without specific level.
+     *
+     * @param level          The logging level
+     * @param bodySampleRate The ratio of requests with body logged, between 0 and 1,
+     *                       only apply to {@link Level#BODY}
+     */
+    public void setDefault(Level level, double bodySampleRate) {
+        defaultRule = new Rule(level, bodySampleRate);
+    }
+
+    /**
+     * Set the logging level of an {@link Action} type.
+     *
+     * @param action         The {@link Action} type
+     * @param level          The logging level
+     * @param bodySampleRate The ratio of requests with body logged, between 0 and 1,
+     *                       only apply to {@link Level#BODY}
+     */
+    public void set(String action, Level level, double bodySampleRate) {
+        rules.put(action, new Rule(level, bodySampleRate));
+    }
+
+    /**
+     * Set the maximum number of bytes logged for each request and response body, the remaining content is
+     * streamed without being buffered.
+     *
+     * @param maxBodySize The maximum number of bytes
+     */
+    public void setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Restore the default policy.
+     */
+    public void reset() {
+        rules.clear();
+        defaultRule = new Rule(Level.BODY, 1);
+        maxBodySize = DEFAULT_MAX_BODY_SIZE;
+    }
+
+    Rule get(Object tag) {
+        if (tag instanceof Action) {
+            Rule rule = rules.get(((Action) tag).getType());
+            if (rule != null) {
+                return rule;
+            }
+        }
+        return defaultRule;
+    }
+
+    /**
+     * Logging level and body sample rate of an {@link Action} type.
+     */
+    @Getter
+    static class Rule {
+
+        private final Level level;
+        private final double bodySampleRate;
+
+        private Rule(Level level, double bodySampleRate) {
+            this.level = level;
+            this.bodySampleRate = Math.max(0, Math.min(1, bodySampleRate));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of the background re-encryption of the values encrypted with older key versions,
+ * see {@link SecuredSharedPreferences#rotateKey()}.
+ */
+public class KeyRotation {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicInteger processed = new AtomicInteger();
+    private volatile int total;
+    private volatile boolean cancelled;
+
+    KeyRotation() {
+    }
+
+    /**
+     * The number of values to re-encrypt, 0 until the values have been collected.
+     *
+     * @return The number of values encrypted with an older key version.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * The number of values processed so far.
+     *
+     * @return The number of values processed so far.
+     */
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Stop the re-encryption after the current batch, the remaining values stay readable with their key version
+     * and can be re-encrypted later with {@link SecuredSharedPreferences#reEncrypt()}.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Wait for the re-encryption to finish.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The time unit of the timeout
+     * @return True if the re-encryption finished, false if the timeout elapsed.
+     * @throws InterruptedException If the current thread is interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    void setTotal(int total) {
+        this.total = total;
+    }
+
+    void progress(int count) {
+        processed.addAndGet(count);
+    }
+
+    void finish() {
+        done.countDown();
+    }
+}
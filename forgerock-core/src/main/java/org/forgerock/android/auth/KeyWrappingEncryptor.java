@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Base64;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.forgerock.android.core.R;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import lombok.NonNull;
+
+/**
+ * Provide data encryption and decryption with a software AES data key. The data key is wrapped
+ * (encrypted) with a key protected by the AndroidKeyStore and persisted with the {@link SecretKeyStore}.
+ * <p>
+ * The AndroidKeyStore is only used to unwrap the data key, data encryption runs in-process, which avoid
+ * the AndroidKeyStore round trip for every operation. The unwrapped data key is kept in memory for a
+ * limited lifetime, and wiped when the lifetime is reached or the application goes to background.
+ * <p>
+ * Data encrypted by the key encryptor directly (before enabling key wrapping) can still be decrypted,
+ * the data will be encrypted with the data key with the next update.
+ */
+class KeyWrappingEncryptor extends AbstractSymmetricEncryptor {
+
+    private static final String TAG = KeyWrappingEncryptor.class.getSimpleName();
+    private static final String AES = "AES";
+    //Derive a different MAC key from the alias to distinguish data encrypted with the data key.
+    private static final String DATA_KEY_PREFIX = "DATA_KEY:";
+
+    //Encryptors to wipe when the application goes to background
+    private static final Set<KeyWrappingEncryptor> encryptors =
+            Collections.newSetFromMap(new WeakHashMap<>());
+    private static ComponentCallbacks2 componentCallbacks;
+
+    private final Encryptor keyEncryptor;
+    private final SecretKeyStore secretKeyStore;
+    private final long keyLifetimeMillis;
+
+    private volatile WrappedSecretKey dataKey;
+    //In memory copy of the stored wrapped data key, the SecretKeyStore may be backed by IPC
+    private volatile String wrappedKey;
+
+    /**
+     * @param context           The Application Context
+     * @param keyAlias          The alias of the key which used to wrap the data key
+     * @param keyEncryptor      The encryptor to wrap the data key, this encryptor also used to decrypt data
+     *                          which not encrypted with the data key.
+     * @param secretKeyStore    The SecretKeyStore to store the wrapped data key
+     * @param keyLifetimeMillis The lifetime of the unwrapped data key in memory.
+     */
+    KeyWrappingEncryptor(Context context,
+                         @NonNull String keyAlias,
+                         @NonNull Encryptor keyEncryptor,
+                         @NonNull SecretKeyStore secretKeyStore,
+                         long keyLifetimeMillis) {
+        super(DATA_KEY_PREFIX + keyAlias);
+        this.keyEncryptor = keyEncryptor;
+        this.secretKeyStore = secretKeyStore;
+        this.keyLifetimeMillis = keyLifetimeMillis;
+        if (context != null) {
+            register(context.getApplicationContext(), this);
+        }
+    }
+
+    /**
+     * Check if key wrapping is enabled, configured with resource {@code forgerock_enable_key_wrapping}
+     *
+     * @param context The Application Context
+     * @return True if key wrapping is enabled.
+     */
+    static boolean isEnabled(Context context) {
+        return context.getResources().getBoolean(R.bool.forgerock_enable_key_wrapping);
+    }
+
+    /**
+     * Retrieve the lifetime of the unwrapped data key, configured with resource
+     * {@code forgerock_data_key_lifetime}
+     *
+     * @param context The Application Context
+     * @return The lifetime in milliseconds.
+     */
+    static long getKeyLifetimeMillis(Context context) {
+        return context.getResources().getInteger(R.integer.forgerock_data_key_lifetime) * 1000L;
+    }
+
+    @Override
+    public byte[] decrypt(byte[] encryptedData) {
+        if (!verifyMac(encryptedData)) {
+            //Data is not encrypted with the data key, fallback to the key encryptor.
+            return keyEncryptor.decrypt(encryptedData);
+        }
+        return super.decrypt(encryptedData);
+    }
+
+    @Override
+    SecretKey getKey() throws GeneralSecurityException, IOException {
+        WrappedSecretKey key = dataKey;
+        if (key != null && key.isValid(wrappedKey)) {
+            return key;
+        }
+        //Expired, wiped or reset
+        invalidateKey();
+        return super.getKey();
+    }
+
+    /**
+     * The data key failed the operation, the stored data key may have been replaced by another instance,
+     * the data key is unwrapped again from the {@link SecretKeyStore} with the next operation.
+     */
+    /**
+     * Check the stored data key before encryption, the data key may have been removed or replaced,
+     * for example when the account is removed.
+     */
+    @Override
+    SecretKey getEncryptionKey() throws GeneralSecurityException, IOException {
+        String stored = secretKeyStore.getEncryptedSecretKey();
+        if (stored == null || !stored.equals(wrappedKey)) {
+            synchronized (this) {
+                dataKey = null;
+                invalidateKey();
+            }
+        }
+        return getKey();
+    }
+
+    @Override
+    synchronized void invalidateKey(SecretKey key) {
+        super.invalidateKey(key);
+        if (dataKey == key) {
+            dataKey = null;
+        }
+    }
+
+    @Override
+    synchronized SecretKey getSecretKey() throws GeneralSecurityException {
+        String wrapped = secretKeyStore.getEncryptedSecretKey();
+        byte[] encoded;
+        if (wrapped == null) {
+            KeyGenerator kg = KeyGenerator.getInstance(AES);
+            kg.init(KEY_SIZE);
+            encoded = kg.generateKey().getEncoded();
+            wrapped = Base64.encodeToString(keyEncryptor.encrypt(encoded), Base64.DEFAULT);
+            secretKeyStore.persist(wrapped);
+        } else {
+            encoded = keyEncryptor.decrypt(Base64.decode(wrapped, Base64.DEFAULT));
+        }
+        wrappedKey = wrapped;
+        WrappedSecretKey key = WrappedSecretKey.create(encoded, wrapped, keyLifetimeMillis);
+        Arrays.fill(encoded, (byte) 0);
+        dataKey = key;
+        return key;
+    }
+
+    @Override
+    byte[] init(Cipher cipher, SecretKey secretKey) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        SecureRandom secureRandom = new SecureRandom();
+        secureRandom.nextBytes(iv);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(128, iv));
+        return iv;
+    }
+
+    /**
+     * Wipe the unwrapped data key from memory, the data key will be unwrapped again with the next operation.
+     */
+    void wipe() {
+        WrappedSecretKey key = dataKey;
+        if (key != null) {
+            key.destroy();
+        }
+        invalidateKey();
+    }
+
+    @Override
+    public void reset() throws GeneralSecurityException, IOException {
+        wipe();
+        wrappedKey = null;
+        super.reset();
+        secretKeyStore.remove();
+        keyEncryptor.reset();
+    }
+
+    @VisibleForTesting
+    WrappedSecretKey getDataKey() {
+        return dataKey;
+    }
+
+    private static synchronized void register(Context context, KeyWrappingEncryptor encryptor) {
+        encryptors.add(encryptor);
+        if (componentCallbacks == null) {
+            componentCallbacks = new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    if (level >= TRIM_MEMORY_UI_HIDDEN) {
+                        Logger.debug(TAG, "Application in background, wipe data keys.");
+                        wipeAll();
+                    }
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    wipeAll();
+                }
+            };
+            context.registerComponentCallbacks(componentCallbacks);
+        }
+    }
+
+    @VisibleForTesting
+    static void wipeAll() {
+        List<KeyWrappingEncryptor> list;
+        synchronized (KeyWrappingEncryptor.class) {
+            list = new ArrayList<>(encryptors);
+        }
+        for (KeyWrappingEncryptor encryptor : list) {
+            encryptor.wipe();
+        }
+    }
+}
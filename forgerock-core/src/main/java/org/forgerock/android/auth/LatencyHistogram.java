@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with fixed buckets in milliseconds.
+ * <p>
+ * A latency is counted in the first bucket with upper bound greater than or equal to the latency, latency above
+ * the last bound is counted in the overflow bucket.
+ */
+public class LatencyHistogram {
+
+    private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram() {
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param millis The latency in milliseconds
+     */
+    void record(long millis) {
+        if (millis < 0) {
+            return;
+        }
+        counts.incrementAndGet(indexOf(millis));
+        count.incrementAndGet();
+        sum.addAndGet(millis);
+        long current;
+        while (millis > (current = max.get())) {
+            if (max.compareAndSet(current, millis)) {
+                break;
+            }
+        }
+    }
+
+    private static int indexOf(long millis) {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            if (millis <= BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BOUNDS.length;
+    }
+
+    /**
+     * Retrieve the upper bounds of the buckets in milliseconds, the overflow bucket is not included.
+     *
+     * @return The upper bounds of the buckets
+     */
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * Retrieve the number of latencies recorded in each bucket, the last element is the overflow bucket.
+     *
+     * @return The number of latencies in each bucket
+     */
+    public long[] getBuckets() {
+        long[] result = new long[counts.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of recorded latencies
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The sum of the recorded latencies in milliseconds
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * @return The maximum recorded latency in milliseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return The mean of the recorded latencies in milliseconds
+     */
+    public double getMean() {
+        long c = count.get();
+        return c == 0 ? 0 : (double) sum.get() / c;
+    }
+
+    /**
+     * Estimate the percentile of the recorded latencies, the estimate is the upper bound of the bucket
+     * of the percentile, capped by the maximum latency.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The estimated latency in milliseconds, 0 when no latency is recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] buckets = getBuckets();
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS[i], getMax());
+            }
+        }
+        return getMax();
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import lombok.Getter;
+
+/**
+ * A log record emitted by the {@link Logger}, the message is formatted on first access.
+ */
+public class LogRecord {
+
+    @Getter
+    private final Logger.Level level;
+    @Getter
+    private final String tag;
+    @Getter
+    private final Throwable throwable;
+    /**
+     * The time the record was emitted, in milliseconds since epoch
+     */
+    @Getter
+    private final long timestamp;
+    private final String format;
+    private final Object[] args;
+    private String message;
+
+    LogRecord(Logger.Level level, String tag, Throwable throwable, String format, Object[] args) {
+        this.level = level;
+        this.tag = tag;
+        this.throwable = throwable;
+        this.timestamp = System.currentTimeMillis();
+        this.format = format;
+        this.args = args;
+    }
+
+    /**
+     * Retrieve the formatted message.
+     *
+     * @return The message formatted with the arguments
+     */
+    public String getMessage() {
+        if (message == null) {
+            message = Logger.format(format, args);
+        }
+        return message;
+    }
+
+    /**
+     * @return The message with the SDK version and the tag, as written to Logcat
+     */
+    @Override
+    public String toString() {
+        return Logger.PREFIX + tag + "]: " + getMessage();
+    }
+}
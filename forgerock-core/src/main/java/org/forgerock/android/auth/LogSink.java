@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+/**
+ * Sink to receive the {@link LogRecord} emitted by the {@link Logger}, register the sink with
+ * {@link Logger#addSink(LogSink)}.
+ * <p>
+ * Records are delivered in order on the Logger background thread, never on the thread which emitted the record.
+ */
+public interface LogSink {
+
+    /**
+     * Consume a log record.
+     *
+     * @param record The log record
+     */
+    void log(LogRecord record);
+
+}
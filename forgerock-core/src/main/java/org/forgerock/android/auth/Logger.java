@@ -11,14 +11,40 @@ import android.util.Log;
 import androidx.annotation.VisibleForTesting;
 import org.forgerock.android.core.BuildConfig;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * Logger for ForgeRock SDK
+ * <p>
+ * Records are enqueued to a bounded lock free ring buffer, a background thread formats them, writes them to Logcat
+ * and delivers them to the registered {@link LogSink}(s). The calling thread does not format the message or write
+ * Logcat, it only converts the mutable arguments to String. Records are dropped when the buffer is full, see
+ * {@link #getDropped()}.
+ * <p>
+ * With {@link #setAsynchronous(boolean)} set to false and no registered sink, Logcat is written by the calling
+ * thread instead.
  */
 public class Logger {
 
     @VisibleForTesting
     static final String FORGE_ROCK = "ForgeRock";
 
+    static final String PREFIX = "[" + BuildConfig.VERSION_NAME + "] [";
+
+    private static final int BUFFER_SIZE = 1024;
+    private static final LogSink[] NO_SINK = new LogSink[0];
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * Argument which does not change once logged, formatted by the background thread instead of the calling
+     * thread.
+     */
+    interface Deferred {
+    }
+
     public enum Level {
         DEBUG,
         WARN,
@@ -27,7 +53,14 @@ public class Logger {
     }
 
     //Default level to warn
-    private static Level level = Level.WARN;
+    private static volatile Level level = Level.WARN;
+    private static volatile boolean asynchronous = true;
+    private static volatile LogSink[] sinks = NO_SINK;
+
+    private static final LogRingBuffer<LogRecord> buffer = new LogRingBuffer<>(BUFFER_SIZE);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile Thread drainer;
+    private static volatile boolean draining;
 
     public static void set(Level level) {
         Logger.level = level;
@@ -37,20 +70,184 @@ public class Logger {
         return Logger.level == Level.DEBUG;
     }
 
-    private static void log(Level level, String tag, Throwable t, String message, Object... args) {
-        if (level.ordinal() >= Logger.level.ordinal() ) {
-            String value =
-                    String.format("[%s] [%s]: ", BuildConfig.VERSION_NAME, tag)
-                            + String.format(message, args);
-            switch (level) {
-                case DEBUG:
-                    Log.i(FORGE_ROCK, value);
-                    return;
-                case WARN:
-                    Log.w(FORGE_ROCK, value, t);
-                    return;
-                case ERROR:
-                    Log.e(FORGE_ROCK, value, t);
+    /**
+     * Check if the level is enabled, use to guard expensive arguments.
+     *
+     * @param level The level
+     * @return True if records of the level are emitted
+     */
+    public static boolean isEnabled(Level level) {
+        return level != Level.NONE && level.ordinal() >= Logger.level.ordinal();
+    }
+
+    /**
+     * Write Logcat with the background thread instead of the calling thread, enabled by default. The records are
+     * always written by the background thread while a {@link LogSink} is registered.
+     *
+     * @param asynchronous True to write Logcat asynchronously
+     */
+    public static void setAsynchronous(boolean asynchronous) {
+        Logger.asynchronous = asynchronous;
+    }
+
+    /**
+     * Add a {@link LogSink} to receive the emitted records.
+     *
+     * @param sink The sink
+     */
+    public static synchronized void addSink(LogSink sink) {
+        LogSink[] current = sinks;
+        LogSink[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = sink;
+        sinks = updated;
+    }
+
+    /**
+     * Remove a registered {@link LogSink}.
+     *
+     * @param sink The sink
+     */
+    public static synchronized void removeSink(LogSink sink) {
+        LogSink[] current = sinks;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == sink) {
+                LogSink[] updated = new LogSink[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                sinks = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The number of records dropped because the buffer was full
+     */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    private static void log(Level level, String tag, Throwable t, String message, Object[] args) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        if (!asynchronous && sinks.length == 0) {
+            logcat(level, tag, t, message, args);
+            return;
+        }
+        Thread consumer = drainer;
+        if (consumer == null) {
+            consumer = startDrainer();
+        }
+        if (buffer.offer(new LogRecord(level, tag, t, message, snapshot(args)))) {
+            if (!draining) {
+                LockSupport.unpark(consumer);
+            }
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private static void logcat(Level level, String tag, Throwable t, String message, Object[] args) {
+        logcat(level, PREFIX + tag + "]: " + format(message, args), t);
+    }
+
+    /**
+     * Format the message, a message without arguments is formatted as well so that {@code %%} and {@code %n}
+     * are consistent.
+     *
+     * @param message The message
+     * @param args    The arguments, or null
+     * @return The formatted message
+     */
+    static String format(String message, Object[] args) {
+        if (message == null || message.indexOf('%') < 0) {
+            return message;
+        }
+        return String.format(message, args == null ? NO_ARGS : args);
+    }
+
+    /**
+     * Capture the arguments of a record formatted by the background thread. Immutable arguments and
+     * {@link Deferred} arguments are kept, the other arguments are converted to String with the state at the
+     * time of the call.
+     *
+     * @param args The arguments, or null
+     * @return A copy of the arguments
+     */
+    private static Object[] snapshot(Object[] args) {
+        if (args == null || args.length == 0) {
+            return args;
+        }
+        Object[] copy = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg instanceof AtomicInteger || arg instanceof AtomicLong) {
+                copy[i] = ((Number) arg).longValue();
+            } else if (arg == null || arg instanceof String || arg instanceof Number || arg instanceof Boolean
+                    || arg instanceof Character || arg instanceof Enum || arg instanceof Deferred) {
+                copy[i] = arg;
+            } else {
+                copy[i] = String.valueOf(arg);
+            }
+        }
+        return copy;
+    }
+
+    private static void logcat(LogRecord record) {
+        logcat(record.getLevel(), record.toString(), record.getThrowable());
+    }
+
+    private static void logcat(Level level, String value, Throwable t) {
+        switch (level) {
+            case DEBUG:
+                Log.i(FORGE_ROCK, value);
+                return;
+            case WARN:
+                Log.w(FORGE_ROCK, value, t);
+                return;
+            case ERROR:
+                Log.e(FORGE_ROCK, value, t);
+        }
+    }
+
+    private static synchronized Thread startDrainer() {
+        if (drainer != null) {
+            return drainer;
+        }
+        draining = true;
+        Thread thread = new Thread(Logger::drain, "ForgeRock-Logger");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        drainer = thread;
+        return thread;
+    }
+
+    private static void drain() {
+        while (true) {
+            LogRecord record = buffer.poll();
+            if (record == null) {
+                draining = false;
+                //Recheck after publishing the state, a producer may not have seen it
+                if (buffer.isEmpty()) {
+                    //Woken up by the producers
+                    LockSupport.park();
+                }
+                draining = true;
+                continue;
+            }
+            try {
+                logcat(record);
+            } catch (RuntimeException e) {
+                //Keep draining, Logcat may not be available
+            }
+            for (LogSink sink : sinks) {
+                try {
+                    sink.log(record);
+                } catch (RuntimeException e) {
+                    Log.w(FORGE_ROCK, "Log sink failed", e);
+                }
             }
         }
     }
@@ -59,19 +256,63 @@ public class Logger {
         log(Level.ERROR, tag, t, message, values);
     }
 
+    public static void error(String tag, Throwable t, String message) {
+        log(Level.ERROR, tag, t, message, null);
+    }
+
     public static void error(String tag, String message, Object... values) {
         log(Level.ERROR, tag, null, message, values);
     }
 
+    public static void error(String tag, String message) {
+        log(Level.ERROR, tag, null, message, null);
+    }
+
+    public static void error(String tag, String message, Object value) {
+        if (isEnabled(Level.ERROR)) {
+            log(Level.ERROR, tag, null, message, new Object[]{value});
+        }
+    }
+
     public static void warn(String tag, String message, Object... values) {
         log(Level.WARN, tag, null, message, values);
     }
 
+    public static void warn(String tag, String message) {
+        log(Level.WARN, tag, null, message, null);
+    }
+
+    public static void warn(String tag, String message, Object value) {
+        if (isEnabled(Level.WARN)) {
+            log(Level.WARN, tag, null, message, new Object[]{value});
+        }
+    }
+
     public static void warn(String tag, Throwable t, String message, Object... values) {
         log(Level.WARN, tag, t, message, values);
     }
 
+    public static void warn(String tag, Throwable t, String message) {
+        log(Level.WARN, tag, t, message, null);
+    }
+
     public static void debug(String tag, String message, Object... values) {
         log(Level.DEBUG, tag, null, message, values);
     }
+
+    public static void debug(String tag, String message) {
+        log(Level.DEBUG, tag, null, message, null);
+    }
+
+    public static void debug(String tag, String message, Object value) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, tag, null, message, new Object[]{value});
+        }
+    }
+
+    public static void debug(String tag, String message, Object value1, Object value2) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, tag, null, message, new Object[]{value1, value2});
+        }
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * {@link EventListener} to measure the {@link RequestTiming.Phase}s of a call and record the timing
+ * to {@link NetworkMetrics}. A listener is created for each call, the durations are accumulated when the call
+ * retries, for example with multiple connect attempts.
+ */
+class MetricsEventListener extends EventListener {
+
+    static final EventListener.Factory FACTORY = call -> NetworkMetrics.getInstance().isEnabled()
+            ? new MetricsEventListener() : EventListener.NONE;
+
+    private final long[] durations = new long[RequestTiming.Phase.values().length];
+    private final boolean[] occurred = new boolean[durations.length];
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private long requestStart;
+    private long requestEnd;
+    private long responseBodyStart;
+    private boolean connectionAcquired;
+    private boolean newConnection;
+
+    private MetricsEventListener() {
+    }
+
+    @Override
+    public void callStart(@NotNull Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(@NotNull Call call, @NotNull String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(@NotNull Call call, @NotNull String domainName,
+                       @NotNull List<InetAddress> inetAddressList) {
+        add(RequestTiming.Phase.DNS, dnsStart);
+    }
+
+    @Override
+    public void connectStart(@NotNull Call call, @NotNull InetSocketAddress inetSocketAddress,
+                             @NotNull Proxy proxy) {
+        newConnection = true;
+        connectStart = System.nanoTime();
+        secureConnectStart = 0;
+    }
+
+    @Override
+    public void secureConnectStart(@NotNull Call call) {
+        secureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(@NotNull Call call, @Nullable Handshake handshake) {
+        add(RequestTiming.Phase.TLS, secureConnectStart);
+    }
+
+    @Override
+    public void connectEnd(@NotNull Call call, @NotNull InetSocketAddress inetSocketAddress,
+                           @NotNull Proxy proxy, @Nullable Protocol protocol) {
+        endConnect();
+    }
+
+    @Override
+    public void connectFailed(@NotNull Call call, @NotNull InetSocketAddress inetSocketAddress,
+                              @NotNull Proxy proxy, @Nullable Protocol protocol, @NotNull IOException ioe) {
+        endConnect();
+    }
+
+    private void endConnect() {
+        //The TLS handshake is measured separately
+        add(RequestTiming.Phase.CONNECT, connectStart,
+                secureConnectStart == 0 ? System.nanoTime() : secureConnectStart);
+    }
+
+    @Override
+    public void connectionAcquired(@NotNull Call call, @NotNull Connection connection) {
+        connectionAcquired = true;
+    }
+
+    @Override
+    public void requestHeadersStart(@NotNull Call call) {
+        requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(@NotNull Call call, @NotNull okhttp3.Request request) {
+        requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(@NotNull Call call, long byteCount) {
+        requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersStart(@NotNull Call call) {
+        long now = System.nanoTime();
+        add(RequestTiming.Phase.REQUEST_WRITE, requestStart, requestEnd);
+        add(RequestTiming.Phase.TIME_TO_FIRST_BYTE, requestEnd, now);
+    }
+
+    @Override
+    public void responseBodyStart(@NotNull Call call) {
+        responseBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(@NotNull Call call, long byteCount) {
+        add(RequestTiming.Phase.RESPONSE_READ, responseBodyStart);
+    }
+
+    @Override
+    public void callEnd(@NotNull Call call) {
+        record(call, true);
+    }
+
+    @Override
+    public void callFailed(@NotNull Call call, @NotNull IOException ioe) {
+        record(call, false);
+    }
+
+    private void add(RequestTiming.Phase phase, long start) {
+        add(phase, start, System.nanoTime());
+    }
+
+    private void add(RequestTiming.Phase phase, long start, long end) {
+        if (start != 0 && end >= start) {
+            durations[phase.ordinal()] += end - start;
+            occurred[phase.ordinal()] = true;
+        }
+    }
+
+    private void record(Call call, boolean success) {
+        add(RequestTiming.Phase.TOTAL, callStart);
+        long[] millis = new long[durations.length];
+        for (int i = 0; i < durations.length; i++) {
+            millis[i] = occurred[i] ? TimeUnit.NANOSECONDS.toMillis(durations[i]) : RequestTiming.NOT_OCCURRED;
+        }
+        Object tag = call.request().tag();
+        String action = tag instanceof Action ? ((Action) tag).getType() : NetworkMetrics.UNKNOWN;
+        NetworkMetrics.getInstance().record(new RequestTiming(action, success,
+                connectionAcquired && !newConnection, millis));
+    }
+
+}
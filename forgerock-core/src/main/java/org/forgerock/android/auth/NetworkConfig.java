@@ -7,6 +7,8 @@
 
 package org.forgerock.android.auth;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -54,6 +56,15 @@ class NetworkConfig {
         this.interceptorSupplier = interceptorSupplier;
     }
 
+    /**
+     * Name of the cookies holding a secret, redacted from the Http debug log.
+     *
+     * @return The cookie names
+     */
+    Collection<String> getSecretCookieNames() {
+        return Collections.emptyList();
+    }
+
     CookieJar getCookieJar() {
         if (cookieJarSupplier != null) {
             return cookieJarSupplier.get();
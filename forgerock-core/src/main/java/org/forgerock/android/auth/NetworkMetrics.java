@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the network metrics, the timing of every request made by the SDK is aggregated
+ * by {@link Action} type into {@link ActionMetrics}.
+ */
+public class NetworkMetrics {
+
+    private static final String TAG = NetworkMetrics.class.getSimpleName();
+
+    /**
+     * Action type of the requests without {@link Action}
+     */
+    public static final String UNKNOWN = "UNKNOWN";
+
+    private static final NetworkMetrics INSTANCE = new NetworkMetrics();
+
+    private final Map<String, ActionMetrics> metrics = new ConcurrentHashMap<>();
+    private volatile NetworkMetricsSink[] sinks = new NetworkMetricsSink[0];
+    private volatile boolean enabled = true;
+
+    private NetworkMetrics() {
+    }
+
+    /**
+     * Returns a cached instance {@link NetworkMetrics}
+     *
+     * @return instance of {@link NetworkMetrics}
+     */
+    public static NetworkMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register new {@link NetworkMetricsSink}(s), replace the registered sinks.
+     *
+     * @param sinks The sinks to receive the request timing
+     */
+    public void register(NetworkMetricsSink... sinks) {
+        this.sinks = sinks == null ? new NetworkMetricsSink[0] : sinks.clone();
+    }
+
+    /**
+     * Enable or disable the collection of metrics, enabled by default.
+     *
+     * @param enabled True to collect the metrics
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Retrieve the metrics of an {@link Action} type.
+     *
+     * @param action The {@link Action} type, for example {@link Action#AUTHENTICATE}
+     * @return The metrics of the action, or null if no request is recorded for the action
+     */
+    public ActionMetrics getActionMetrics(String action) {
+        return metrics.get(action);
+    }
+
+    /**
+     * Retrieve the metrics of all recorded {@link Action} types.
+     *
+     * @return The metrics by {@link Action} type
+     */
+    public Map<String, ActionMetrics> getActionMetrics() {
+        return Collections.unmodifiableMap(new HashMap<>(metrics));
+    }
+
+    /**
+     * Clear the recorded metrics.
+     */
+    public void reset() {
+        metrics.clear();
+    }
+
+    void record(RequestTiming timing) {
+        ActionMetrics actionMetrics = metrics.get(timing.getAction());
+        if (actionMetrics == null) {
+            ActionMetrics created = new ActionMetrics();
+            actionMetrics = metrics.putIfAbsent(timing.getAction(), created);
+            if (actionMetrics == null) {
+                actionMetrics = created;
+            }
+        }
+        actionMetrics.record(timing);
+
+        for (NetworkMetricsSink sink : sinks) {
+            try {
+                sink.onRequestCompleted(timing);
+            } catch (RuntimeException e) {
+                Logger.warn(TAG, e, "Network metrics sink failed");
+            }
+        }
+    }
+
+}
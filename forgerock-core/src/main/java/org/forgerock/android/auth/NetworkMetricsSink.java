@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+/**
+ * Sink to receive the {@link RequestTiming} of every completed request, for example to forward the timing
+ * to an analytics service. Register the sink with {@link NetworkMetrics#register(NetworkMetricsSink...)}.
+ * <p>
+ * The sink is invoked on the thread which completes the request, implementation should return quickly.
+ */
+public interface NetworkMetricsSink {
+
+    /**
+     * Called when a request completed or failed.
+     *
+     * @param timing The timing of the request
+     */
+    void onRequestCompleted(RequestTiming timing);
+
+}
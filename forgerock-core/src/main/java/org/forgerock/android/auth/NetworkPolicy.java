@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the {@link ActionPolicy} by {@link Action} type, and of the circuit breaker of each server.
+ * <p>
+ * By default:
+ * <ul>
+ * <li>REFRESH_TOKEN, USER_INFO, REVOKE_TOKEN, LOGOUT - retried twice on I/O failure and on 502, 503, 504</li>
+ * <li>START_AUTHENTICATE, AUTHENTICATE - fail fast with a 5 seconds connect timeout, not retried</li>
+ * <li>Other requests - use the timeout of the {@link NetworkConfig}, not retried</li>
+ * </ul>
+ * The circuit of a server opens after 5 consecutive I/O failures, and allows a trial request after 30 seconds.
+ */
+public class NetworkPolicy {
+
+    private static final NetworkPolicy INSTANCE = new NetworkPolicy();
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_MILLIS = 30_000;
+
+    private final Map<String, ActionPolicy> policies = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private volatile ActionPolicy defaultPolicy;
+    private volatile int failureThreshold;
+    private volatile long openMillis;
+
+    private NetworkPolicy() {
+        reset();
+    }
+
+    /**
+     * Returns a cached instance {@link NetworkPolicy}
+     *
+     * @return instance of {@link NetworkPolicy}
+     */
+    public static NetworkPolicy getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the policy of an {@link Action} type.
+     *
+     * @param action The {@link Action} type
+     * @param policy The policy
+     */
+    public void set(String action, ActionPolicy policy) {
+        policies.put(action, policy);
+    }
+
+    /**
+     * Set the policy of the requests without specific policy.
+     *
+     * @param policy The policy
+     */
+    public void setDefault(ActionPolicy policy) {
+        this.defaultPolicy = policy;
+    }
+
+    /**
+     * Configure the circuit breaker, reset the state of the circuits.
+     *
+     * @param failureThreshold Number of consecutive I/O failures to open the circuit, 0 to disable
+     * @param openMillis       Time in milliseconds before a trial request is allowed
+     */
+    public void setCircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        circuitBreakers.clear();
+    }
+
+    /**
+     * Restore the default policies and reset the state of the circuits.
+     */
+    public void reset() {
+        policies.clear();
+        ActionPolicy retry = ActionPolicy.builder()
+                .maxRetries(2)
+                .retryOnServerError(true)
+                .build();
+        policies.put(Action.REFRESH_TOKEN, retry);
+        policies.put(Action.USER_INFO, retry);
+        policies.put(Action.REVOKE_TOKEN, retry);
+        policies.put(Action.LOGOUT, retry);
+        ActionPolicy interactive = ActionPolicy.builder()
+                .connectTimeoutMillis(5000L)
+                .build();
+        policies.put(Action.START_AUTHENTICATE, interactive);
+        policies.put(Action.AUTHENTICATE, interactive);
+        defaultPolicy = ActionPolicy.builder().build();
+        setCircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    ActionPolicy get(Object tag) {
+        if (tag instanceof Action) {
+            ActionPolicy policy = policies.get(((Action) tag).getType());
+            if (policy != null) {
+                return policy;
+            }
+        }
+        return defaultPolicy;
+    }
+
+    CircuitBreaker getCircuitBreaker(String server) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(server);
+        if (circuitBreaker == null) {
+            CircuitBreaker created = new CircuitBreaker(failureThreshold, openMillis);
+            circuitBreaker = circuitBreakers.putIfAbsent(server, created);
+            if (circuitBreaker == null) {
+                circuitBreaker = created;
+            }
+        }
+        return circuitBreaker;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Interceptor to apply the {@link NetworkPolicy}: per {@link Action} timeouts, retry with backoff
+ * and circuit breaker.
+ */
+class NetworkPolicyInterceptor implements Interceptor {
+
+    private static final String TAG = NetworkPolicyInterceptor.class.getSimpleName();
+    //Interval to check if the call is cancelled during the backoff
+    private static final long CANCEL_CHECK_MILLIS = 50;
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        Request request = chain.request();
+        NetworkPolicy networkPolicy = NetworkPolicy.getInstance();
+        ActionPolicy policy = networkPolicy.get(request.tag());
+        String server = request.url().host() + ":" + request.url().port();
+        CircuitBreaker circuitBreaker = networkPolicy.getCircuitBreaker(server);
+
+        Chain policyChain = chain;
+        if (policy.getConnectTimeoutMillis() > 0) {
+            policyChain = policyChain.withConnectTimeout((int) policy.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (policy.getReadTimeoutMillis() > 0) {
+            policyChain = policyChain.withReadTimeout((int) policy.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .withWriteTimeout((int) policy.getReadTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        IOException failure = null;
+        for (int attempt = 0; ; attempt++) {
+            if (!circuitBreaker.allow()) {
+                if (failure != null) {
+                    //Opened by the failures of this call, report the actual failure
+                    throw failure;
+                }
+                throw new CircuitBreakerOpenException("Circuit open for " + server);
+            }
+            Response response;
+            try {
+                response = policyChain.proceed(request);
+            } catch (IOException e) {
+                if (chain.call().isCanceled()) {
+                    circuitBreaker.release();
+                    throw e;
+                }
+                circuitBreaker.onFailure();
+                if (attempt >= policy.getMaxRetries()) {
+                    throw e;
+                }
+                failure = e;
+                Logger.debug(TAG, "Retry %s after failure: %s", request.url(), e.getMessage());
+                backoff(chain, policy, attempt);
+                continue;
+            } catch (RuntimeException | Error e) {
+                //Not an outcome of the server, do not leave the trial pending
+                circuitBreaker.release();
+                throw e;
+            }
+            //The server is reachable
+            circuitBreaker.onSuccess();
+            failure = null;
+            if (policy.isRetryOnServerError() && isTransient(response.code())
+                    && attempt < policy.getMaxRetries()) {
+                response.close();
+                Logger.debug(TAG, "Retry %s after response: %d", request.url(), response.code());
+                backoff(chain, policy, attempt);
+                continue;
+            }
+            return response;
+        }
+    }
+
+    private static boolean isTransient(int code) {
+        return code == 502 || code == 503 || code == 504;
+    }
+
+    private static void backoff(Chain chain, ActionPolicy policy, int attempt) throws IOException {
+        long delay = policy.backoff(attempt, ThreadLocalRandom.current().nextDouble());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        try {
+            //Sleep in slices, Call#cancel() does not interrupt the sleeping thread
+            for (long remaining = delay; remaining > 0;
+                 remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) {
+                if (chain.call().isCanceled()) {
+                    break;
+                }
+                Thread.sleep(Math.min(remaining, CANCEL_CHECK_MILLIS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during retry backoff");
+        }
+        if (chain.call().isCanceled()) {
+            throw new IOException("Canceled");
+        }
+    }
+}
@@ -7,23 +7,53 @@
 
 package org.forgerock.android.auth;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import lombok.Getter;
+import lombok.ToString;
+import okhttp3.Call;
 import okhttp3.CertificatePinner;
+import okhttp3.Connection;
 import okhttp3.CookieJar;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
-import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.Request;
+import okhttp3.Response;
 
 /**
  * Provider to Cache and provide OKHttpClient
+ * <p>
+ * Clients are cached by the fingerprint of the {@link NetworkConfig}: host, timeout, pins, cookie jar and
+ * interceptor supplier identity. All the clients are derived from a single root client with
+ * {@link OkHttpClient#newBuilder()}, they share the same connection pool and dispatcher, a new client
+ * does not cost a new TLS handshake or new threads.
+ * <p>
+ * The timing of every call is recorded to {@link NetworkMetrics}, timeouts, retries and circuit breaker
+ * follow the {@link NetworkPolicy}.
  */
 class OkHttpClientProvider {
 
     private static final OkHttpClientProvider INSTANCE = new OkHttpClientProvider();
 
-    private Map<String, OkHttpClient> cache = new ConcurrentHashMap<>();
+    private final OkHttpClient root = new OkHttpClient.Builder()
+            .followRedirects(false)
+            .eventListenerFactory(MetricsEventListener.FACTORY)
+            //First interceptor of all the clients, a retry runs the whole chain
+            .addInterceptor(new NetworkPolicyInterceptor())
+            .build();
+
+    private final Map<ClientKey, OkHttpClient> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong creations = new AtomicLong();
 
     private OkHttpClientProvider() {
     }
@@ -39,55 +69,243 @@ class OkHttpClientProvider {
      * @return The OkHttpClient
      */
     OkHttpClient lookup(NetworkConfig networkConfig) {
-        OkHttpClient client = cache.get(networkConfig);
+        ClientKey key = new ClientKey(networkConfig);
+        OkHttpClient client = cache.get(key);
 
         if (client != null) {
+            hits.incrementAndGet();
             return client;
         }
 
-        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        client = create(networkConfig, key);
+        OkHttpClient existing = cache.putIfAbsent(key, client);
+        if (existing != null) {
+            //Created concurrently by another thread
+            hits.incrementAndGet();
+            return existing;
+        }
+        creations.incrementAndGet();
+        return client;
+
+    }
+
+    private OkHttpClient create(NetworkConfig networkConfig, ClientKey key) {
+        OkHttpClient.Builder builder = root.newBuilder()
                 .connectTimeout(networkConfig.getTimeout(), networkConfig.getTimeUnit())
                 .readTimeout(networkConfig.getTimeout(), networkConfig.getTimeUnit())
                 .writeTimeout(networkConfig.getTimeout(), networkConfig.getTimeUnit())
-                .followRedirects(false);
-
-        if(networkConfig.getCookieJar() == null){
-            builder.cookieJar(CookieJar.NO_COOKIES);
-        } else {
-            builder.cookieJar(networkConfig.getCookieJar());
-        }
+                .followRedirects(false)
+                .cookieJar(key.cookieJar);
 
-        if (networkConfig.getInterceptorSupplier() != null &&
-                networkConfig.getInterceptorSupplier().get() != null) {
-            for (Interceptor i : networkConfig.getInterceptorSupplier().get()) {
-                builder.addInterceptor(i);
-            }
+        if (networkConfig.getInterceptorSupplier() != null) {
+            //The client is reused, resolve the interceptors with every request to support dynamic changes
+            builder.addInterceptor(new SupplierInterceptor(networkConfig.getInterceptorSupplier()));
         }
 
-        if (Logger.isDebugEnabled()) {
-            HttpLoggingInterceptor interceptor = new HttpLoggingInterceptor();
-            interceptor.level(HttpLoggingInterceptor.Level.BODY);
-            builder.addInterceptor(interceptor);
+        if (key.debug) {
+            builder.addInterceptor(new HttpDebugInterceptor(key.secretCookieNames));
         }
 
-        if (!networkConfig.getPins().isEmpty()) {
+        if (!key.pins.isEmpty()) {
             CertificatePinner.Builder cpBuilder = new CertificatePinner.Builder();
-            for (String s : networkConfig.getPins()) {
-                cpBuilder.add(networkConfig.getHost(), s);
+            for (String s : key.pins) {
+                cpBuilder.add(key.host, s);
             }
             builder.certificatePinner(cpBuilder.build());
         }
 
-        client = builder.build();
-        cache.put(networkConfig.getHost(), client);
-        return client;
-
+        return builder.build();
     }
 
     /**
-     * Clear the cached {{@link OkHttpClient}}
+     * Clear the cached {{@link OkHttpClient}}, the shared connection pool is kept.
      */
     public void clear() {
         cache.clear();
     }
+
+    /**
+     * Retrieve the statistics of the provider.
+     *
+     * @return The statistics
+     */
+    Stats getStats() {
+        return new Stats(hits.get(), creations.get(), cache.size(),
+                root.connectionPool().connectionCount(),
+                root.connectionPool().idleConnectionCount());
+    }
+
+    /**
+     * Statistics of the cached clients and the shared connection pool.
+     */
+    @Getter
+    @ToString
+    static class Stats {
+        private final long hits;
+        private final long creations;
+        private final int clients;
+        private final int connections;
+        private final int idleConnections;
+
+        private Stats(long hits, long creations, int clients, int connections, int idleConnections) {
+            this.hits = hits;
+            this.creations = creations;
+            this.clients = clients;
+            this.connections = connections;
+            this.idleConnections = idleConnections;
+        }
+    }
+
+    /**
+     * Fingerprint of the {@link NetworkConfig}, the cookie jar and interceptor supplier are compared by identity.
+     */
+    private static class ClientKey {
+
+        private final String host;
+        private final long timeoutMillis;
+        private final List<String> pins;
+        private final CookieJar cookieJar;
+        private final Supplier<List<Interceptor>> interceptorSupplier;
+        private final boolean debug;
+        private final List<String> secretCookieNames;
+
+        private ClientKey(NetworkConfig networkConfig) {
+            this.host = networkConfig.getHost();
+            this.timeoutMillis = networkConfig.getTimeUnit().toMillis(networkConfig.getTimeout());
+            this.pins = networkConfig.getPins() == null
+                    ? new ArrayList<>() : new ArrayList<>(networkConfig.getPins());
+            CookieJar jar = networkConfig.getCookieJar();
+            this.cookieJar = jar == null ? CookieJar.NO_COOKIES : jar;
+            this.interceptorSupplier = networkConfig.getInterceptorSupplier();
+            this.debug = Logger.isDebugEnabled();
+            this.secretCookieNames = new ArrayList<>(networkConfig.getSecretCookieNames());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ClientKey)) return false;
+            ClientKey that = (ClientKey) o;
+            return timeoutMillis == that.timeoutMillis
+                    && debug == that.debug
+                    && host.equals(that.host)
+                    && pins.equals(that.pins)
+                    && cookieJar == that.cookieJar
+                    && interceptorSupplier == that.interceptorSupplier
+                    && secretCookieNames.equals(that.secretCookieNames);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = host.hashCode();
+            result = 31 * result + (int) (timeoutMillis ^ (timeoutMillis >>> 32));
+            result = 31 * result + pins.hashCode();
+            result = 31 * result + System.identityHashCode(cookieJar);
+            result = 31 * result + System.identityHashCode(interceptorSupplier);
+            result = 31 * result + (debug ? 1 : 0);
+            result = 31 * result + secretCookieNames.hashCode();
+            return result;
+        }
+    }
+
+    /**
+     * Run the interceptors of the supplier, resolved for every request.
+     */
+    private static class SupplierInterceptor implements Interceptor {
+
+        private final Supplier<List<Interceptor>> supplier;
+
+        private SupplierInterceptor(Supplier<List<Interceptor>> supplier) {
+            this.supplier = supplier;
+        }
+
+        @NotNull
+        @Override
+        public Response intercept(@NotNull Chain chain) throws IOException {
+            List<Interceptor> interceptors = supplier.get();
+            if (interceptors == null || interceptors.isEmpty()) {
+                return chain.proceed(chain.request());
+            }
+            return new SupplierChain(chain, interceptors, 0, chain.request()).proceed(chain.request());
+        }
+    }
+
+    /**
+     * Chain of the supplied interceptors, continue with the client chain after the last interceptor.
+     */
+    private static class SupplierChain implements Interceptor.Chain {
+
+        private final Interceptor.Chain chain;
+        private final List<Interceptor> interceptors;
+        private final int index;
+        private final Request request;
+
+        private SupplierChain(Interceptor.Chain chain, List<Interceptor> interceptors, int index, Request request) {
+            this.chain = chain;
+            this.interceptors = interceptors;
+            this.index = index;
+            this.request = request;
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @NotNull
+        @Override
+        public Response proceed(@NotNull Request request) throws IOException {
+            if (index == interceptors.size()) {
+                return chain.proceed(request);
+            }
+            return interceptors.get(index)
+                    .intercept(new SupplierChain(chain, interceptors, index + 1, request));
+        }
+
+        @Nullable
+        @Override
+        public Connection connection() {
+            return chain.connection();
+        }
+
+        @NotNull
+        @Override
+        public Call call() {
+            return chain.call();
+        }
+
+        @Override
+        public int connectTimeoutMillis() {
+            return chain.connectTimeoutMillis();
+        }
+
+        @NotNull
+        @Override
+        public Interceptor.Chain withConnectTimeout(int timeout, @NotNull TimeUnit unit) {
+            return new SupplierChain(chain.withConnectTimeout(timeout, unit), interceptors, index, request);
+        }
+
+        @Override
+        public int readTimeoutMillis() {
+            return chain.readTimeoutMillis();
+        }
+
+        @NotNull
+        @Override
+        public Interceptor.Chain withReadTimeout(int timeout, @NotNull TimeUnit unit) {
+            return new SupplierChain(chain.withReadTimeout(timeout, unit), interceptors, index, request);
+        }
+
+        @Override
+        public int writeTimeoutMillis() {
+            return chain.writeTimeoutMillis();
+        }
+
+        @NotNull
+        @Override
+        public Interceptor.Chain withWriteTimeout(int timeout, @NotNull TimeUnit unit) {
+            return new SupplierChain(chain.withWriteTimeout(timeout, unit), interceptors, index, request);
+        }
+    }
 }
@@ -20,16 +20,31 @@ import okhttp3.Response;
  */
 class OkHttpRequestInterceptor implements Interceptor {
 
-    private final RequestInterceptor[] interceptors;
+    private final RequestInterceptorTable table;
+    private final RequestInterceptorRegistry registry;
 
     OkHttpRequestInterceptor(RequestInterceptor... interceptors) {
-        this.interceptors = interceptors;
+        this.table = RequestInterceptorTable.of(interceptors);
+        this.registry = null;
+    }
+
+    /**
+     * Intercept with the {@link RequestInterceptor}(s) of the registry, changes of the registry apply to the
+     * next request.
+     *
+     * @param registry The registry
+     */
+    OkHttpRequestInterceptor(RequestInterceptorRegistry registry) {
+        this.table = null;
+        this.registry = registry;
     }
 
     @NotNull
     @Override
     public Response intercept(@NotNull Chain chain) throws IOException {
-        if (interceptors == null || interceptors.length == 0) {
+        RequestInterceptor[] interceptors = (registry == null ? table : registry.getTable())
+                .get(chain.request().tag());
+        if (interceptors.length == 0) {
             //If no interceptors, continue the chain
             return chain.proceed(chain.request());
         }
@@ -25,13 +25,22 @@ public class Request {
 
     @Getter(AccessLevel.PACKAGE)
     private okhttp3.Request internalReq;
+    private Body body;
 
     Request(@NonNull okhttp3.Request request) {
         this.internalReq = request;
     }
 
+    private Request(@NonNull okhttp3.Request request, Body body) {
+        this.internalReq = request;
+        //Share the body only if it has not been replaced
+        if (body != null && body.getRequestBody() == request.body()) {
+            this.body = body;
+        }
+    }
+
     public Builder newBuilder() {
-        return new Builder(internalReq.newBuilder());
+        return new Builder(this);
     }
 
     public URL url() {
@@ -58,27 +67,42 @@ public class Request {
         return internalReq.tag();
     }
 
+    /**
+     * Retrieve the request body, the body is created once and its content is read on first access.
+     *
+     * @return The request body, or null if the request has no body
+     */
     public Body body() {
-        if (internalReq.body() != null) {
-            return new Body(internalReq.body());
+        if (body == null && internalReq.body() != null) {
+            body = new Body(internalReq.body());
         }
-        return null;
+        return body;
     }
 
 
+    /**
+     * Builder of {@link Request}, the underlying request is only rebuilt when the builder is modified.
+     */
     public static class Builder {
-        private okhttp3.Request.Builder builder;
-
-        Builder(@NonNull okhttp3.Request.Builder builder) {
-            this.builder = builder;
+        private final Request request;
+        private final okhttp3.Request.Builder builder;
+        private Body body;
+        private boolean modified;
+
+        Builder(@NonNull Request request) {
+            this.request = request;
+            this.builder = request.internalReq.newBuilder();
+            this.body = request.body();
         }
 
         public Builder url(URL url) {
+            modified = true;
             this.builder.url(url);
             return this;
         }
 
         public Builder url(String url) {
+            modified = true;
             this.builder.url(url);
             return this;
         }
@@ -90,6 +114,7 @@ public class Request {
          * @param value Header Value
          */
         public Builder header(String name, String value) {
+            modified = true;
             this.builder.header(name, value);
             return this;
         }
@@ -102,6 +127,7 @@ public class Request {
          * @param value Header Value
          */
         public Builder addHeader(String name, String value) {
+            modified = true;
             this.builder.addHeader(name, value);
             return this;
         }
@@ -112,42 +138,58 @@ public class Request {
          * @param name Header name
          */
         public Builder removeHeader(String name) {
+            modified = true;
             this.builder.removeHeader(name);
             return this;
         }
 
         public Builder get() {
+            modified = true;
+            this.body = null;
             this.builder.get();
             return this;
         }
 
         public Builder put(Body body) {
+            modified = true;
+            this.body = body;
             this.builder.put(body.getRequestBody());
             return this;
         }
 
         public Builder post(Body body) {
+            modified = true;
+            this.body = body;
             this.builder.post(body.getRequestBody());
             return this;
         }
 
         public Builder delete(Body body) {
+            modified = true;
+            this.body = body;
             this.builder.delete(body.getRequestBody());
             return this;
         }
 
         public Builder delete() {
+            modified = true;
+            this.body = null;
             this.builder.delete();
             return this;
         }
 
         public Builder patch(Body body) {
+            modified = true;
+            this.body = body;
             this.builder.patch(body.getRequestBody());
             return this;
         }
 
         public Request build() {
-            return new Request(builder.build());
+            if (!modified) {
+                return request;
+            }
+            return new Request(builder.build(), body);
         }
     }
 }
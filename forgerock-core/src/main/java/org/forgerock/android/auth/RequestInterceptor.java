@@ -8,6 +8,7 @@
 package org.forgerock.android.auth;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * Observes, modifies outgoing request from the SDK.
@@ -24,4 +25,15 @@ public interface RequestInterceptor {
     @NonNull
     Request intercept(@NonNull Request request);
 
+    /**
+     * The {@link Action} types of the requests to intercept, the interceptor is not invoked for the requests
+     * of other {@link Action} types.
+     *
+     * @return The {@link Action} types, or null to intercept all the requests
+     */
+    @Nullable
+    default String[] actions() {
+        return null;
+    }
+
 }
@@ -7,17 +7,22 @@
 
 package org.forgerock.android.auth;
 
-import lombok.Getter;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Registry to manage {@link RequestInterceptor}
+ * <p>
+ * The registry is copy-on-write, every change publishes a new immutable dispatch table, requests in progress
+ * are not affected and reading the interceptors does not lock. An interceptor is only invoked for the
+ * {@link Action} types it declares with {@link RequestInterceptor#actions()}
+ * or {@link #add(RequestInterceptor, String...)}.
  */
 public class RequestInterceptorRegistry {
 
     private static final RequestInterceptorRegistry INSTANCE = new RequestInterceptorRegistry();
 
-    @Getter
-    private RequestInterceptor[] requestInterceptors;
+    private volatile RequestInterceptorTable table = RequestInterceptorTable.EMPTY;
 
     private RequestInterceptorRegistry() {
     }
@@ -32,12 +37,65 @@ public class RequestInterceptorRegistry {
     }
 
     /**
-     * Register new {@link RequestInterceptor}(s)
+     * Register new {@link RequestInterceptor}(s), replace the registered interceptors.
      *
      * @param requestInterceptors A list of request interceptors
      */
-    public void register(RequestInterceptor... requestInterceptors) {
-        this.requestInterceptors = requestInterceptors;
+    public synchronized void register(RequestInterceptor... requestInterceptors) {
+        table = RequestInterceptorTable.of(requestInterceptors);
+    }
+
+    /**
+     * Add a {@link RequestInterceptor} after the registered interceptors.
+     *
+     * @param requestInterceptor The request interceptor
+     * @param actions            The {@link Action} types to intercept, when empty the {@link Action} types declared
+     *                           by {@link RequestInterceptor#actions()} are used.
+     */
+    public synchronized void add(RequestInterceptor requestInterceptor, String... actions) {
+        List<RequestInterceptorTable.Registration> registrations = new ArrayList<>(table.getRegistrations());
+        registrations.add(new RequestInterceptorTable.Registration(requestInterceptor,
+                actions == null || actions.length == 0 ? requestInterceptor.actions() : actions));
+        table = new RequestInterceptorTable(registrations);
+    }
+
+    /**
+     * Remove a registered {@link RequestInterceptor}.
+     *
+     * @param requestInterceptor The request interceptor
+     * @return True if the interceptor was registered
+     */
+    public synchronized boolean remove(RequestInterceptor requestInterceptor) {
+        List<RequestInterceptorTable.Registration> registrations = new ArrayList<>(table.getRegistrations());
+        boolean removed = false;
+        for (int i = registrations.size() - 1; i >= 0; i--) {
+            if (registrations.get(i).getInterceptor() == requestInterceptor) {
+                registrations.remove(i);
+                removed = true;
+            }
+        }
+        if (removed) {
+            table = new RequestInterceptorTable(registrations);
+        }
+        return removed;
+    }
+
+    /**
+     * Retrieve the registered {@link RequestInterceptor}(s) in registration order.
+     *
+     * @return The registered request interceptors
+     */
+    public RequestInterceptor[] getRequestInterceptors() {
+        return table.getAll().clone();
+    }
+
+    /**
+     * Retrieve the current dispatch table.
+     *
+     * @return The dispatch table
+     */
+    RequestInterceptorTable getTable() {
+        return table;
     }
 
 }
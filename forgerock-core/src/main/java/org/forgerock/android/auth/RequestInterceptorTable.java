@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable dispatch table of {@link RequestInterceptor}, the interceptors of each {@link Action} type are
+ * precomputed in registration order. Requests without {@link Action}, or with an {@link Action} type which
+ * no interceptor declared, are dispatched to the interceptors without {@link Action} filter.
+ */
+class RequestInterceptorTable {
+
+    private static final RequestInterceptor[] NONE = new RequestInterceptor[0];
+
+    static final RequestInterceptorTable EMPTY = new RequestInterceptorTable(Collections.emptyList());
+
+    private final List<Registration> registrations;
+    private final RequestInterceptor[] all;
+    private final RequestInterceptor[] global;
+    private final Map<String, RequestInterceptor[]> byAction = new HashMap<>();
+
+    RequestInterceptorTable(List<Registration> registrations) {
+        this.registrations = Collections.unmodifiableList(new ArrayList<>(registrations));
+
+        List<RequestInterceptor> allInterceptors = new ArrayList<>();
+        List<RequestInterceptor> globalInterceptors = new ArrayList<>();
+        Set<String> actions = new LinkedHashSet<>();
+        for (Registration registration : this.registrations) {
+            allInterceptors.add(registration.interceptor);
+            if (registration.actions == null) {
+                globalInterceptors.add(registration.interceptor);
+            } else {
+                actions.addAll(registration.actions);
+            }
+        }
+        this.all = allInterceptors.toArray(NONE);
+        this.global = globalInterceptors.toArray(NONE);
+
+        for (String action : actions) {
+            List<RequestInterceptor> interceptors = new ArrayList<>();
+            for (Registration registration : this.registrations) {
+                if (registration.actions == null || registration.actions.contains(action)) {
+                    interceptors.add(registration.interceptor);
+                }
+            }
+            byAction.put(action, interceptors.toArray(NONE));
+        }
+    }
+
+    /**
+     * Create a table from the interceptors, with the {@link Action} types declared by the interceptors.
+     *
+     * @param interceptors The interceptors
+     * @return The table
+     */
+    static RequestInterceptorTable of(RequestInterceptor... interceptors) {
+        if (interceptors == null || interceptors.length == 0) {
+            return EMPTY;
+        }
+        List<Registration> registrations = new ArrayList<>();
+        for (RequestInterceptor interceptor : interceptors) {
+            if (interceptor != null) {
+                registrations.add(new Registration(interceptor, interceptor.actions()));
+            }
+        }
+        return new RequestInterceptorTable(registrations);
+    }
+
+    List<Registration> getRegistrations() {
+        return registrations;
+    }
+
+    /**
+     * @return All the interceptors in registration order
+     */
+    RequestInterceptor[] getAll() {
+        return all;
+    }
+
+    /**
+     * Retrieve the interceptors for a request.
+     *
+     * @param tag The tag of the request
+     * @return The interceptors for the request, the returned array should not be modified
+     */
+    RequestInterceptor[] get(Object tag) {
+        if (tag instanceof Action) {
+            RequestInterceptor[] interceptors = byAction.get(((Action) tag).getType());
+            if (interceptors != null) {
+                return interceptors;
+            }
+        }
+        return global;
+    }
+
+    /**
+     * A registered interceptor with its {@link Action} types.
+     */
+    static class Registration {
+
+        private final RequestInterceptor interceptor;
+        private final Set<String> actions;
+
+        Registration(RequestInterceptor interceptor, String[] actions) {
+            this.interceptor = interceptor;
+            this.actions = actions == null || actions.length == 0
+                    ? null : Collections.unmodifiableSet(new HashSet<>(Arrays.asList(actions)));
+        }
+
+        RequestInterceptor getInterceptor() {
+            return interceptor;
+        }
+    }
+}
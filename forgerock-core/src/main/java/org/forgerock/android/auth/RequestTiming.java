@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Timing of a completed Http call, the duration of each {@link Phase} is in milliseconds.
+ * A phase which did not happen, for example DNS and connect with a reused connection, has a duration of
+ * {@link #NOT_OCCURRED} and is not recorded to the {@link LatencyHistogram}s.
+ */
+@Getter
+@ToString
+public class RequestTiming {
+
+    /**
+     * Duration of a phase which did not happen.
+     */
+    public static final long NOT_OCCURRED = -1;
+
+    /**
+     * Phases of a Http call.
+     */
+    public enum Phase {
+        DNS,
+        CONNECT,
+        TLS,
+        REQUEST_WRITE,
+        TIME_TO_FIRST_BYTE,
+        RESPONSE_READ,
+        TOTAL,
+    }
+
+    /**
+     * The {@link Action} type of the request, {@link NetworkMetrics#UNKNOWN} for request without {@link Action}
+     */
+    private final String action;
+    private final boolean success;
+    private final boolean connectionReused;
+    @Getter(lombok.AccessLevel.NONE)
+    private final long[] durations;
+
+    RequestTiming(String action, boolean success, boolean connectionReused, long[] durations) {
+        this.action = action;
+        this.success = success;
+        this.connectionReused = connectionReused;
+        this.durations = durations;
+    }
+
+    /**
+     * Retrieve the duration of a phase.
+     *
+     * @param phase The phase
+     * @return The duration of the phase in milliseconds, {@link #NOT_OCCURRED} if the phase did not happen
+     */
+    public long get(Phase phase) {
+        return durations[phase.ordinal()];
+    }
+
+}
@@ -14,17 +14,36 @@ import android.os.Build;
 import android.util.Base64;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import lombok.AccessLevel;
 import lombok.Getter;
+import org.forgerock.android.core.R;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An implementation of {@link SharedPreferences} that encrypts values.
+ * Decrypted values are cached in memory with {@link DecryptedValueCache} to avoid
+ * decrypting the same value repeatedly.
+ * <p>
+ * Values are encoded with the binary {@link ValueEnvelope}, values stored as JSON document
+ * by previous versions are still readable and migrated to the binary envelope with the next update.
+ * <p>
+ * Updates are buffered, multiple updates of the same key are merged and encrypted once when flushed.
+ * {@link SharedPreferences.Editor#commit()} flushes synchronously, {@link SharedPreferences.Editor#apply()}
+ * flushes in the background after at most {@link #FLUSH_DELAY_MILLIS}.
+ * <p>
+ * Keys are versioned, values are tagged with the version of the key which encrypted them and always decrypted
+ * with that version. {@link #rotateKey()} moves to a new key version, new values are encrypted with the new
+ * key and the values encrypted with older versions are re-encrypted in the background, see {@link KeyRotation}.
  */
 public class SecuredSharedPreferences implements SharedPreferences, KeyUpdatedListener {
 
@@ -36,38 +55,128 @@ public class SecuredSharedPreferences implements SharedPreferences, KeyUpdatedLi
     private static final int BOOLEAN_TYPE = 5;
     public static final String VALUE = "value";
     private static final String TYPE = "type";
+    private static final String DATA_KEY_SUFFIX = ".DATA_KEY";
+    private static final String KEY_VERSION_SUFFIX = ".KEY_VERSION";
+    //Key alias of version n is keyAlias#n, version 0 is the keyAlias itself
+    private static final String KEY_VERSION_SEPARATOR = "#";
+    //Values encrypted with version n > 0 are stored as n:Base64, ':' is not part of the Base64 alphabet
+    private static final char VALUE_VERSION_SEPARATOR = ':';
+    private static final String TAG = SecuredSharedPreferences.class.getSimpleName();
+    private static final String LOG_SUFFIX = ".log";
+    //Upper bound of the delay before applied changes are written to the storage
+    static final long FLUSH_DELAY_MILLIS = 100;
+    //Marker of removed key in the pending changes
+    private static final Object REMOVED = new Object();
+    //Number of values re-encrypted and written together during key rotation
+    static final int ROTATION_BATCH_SIZE = 20;
+
+    private static final ScheduledExecutorService flusher =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ForgeRock-PreferencesFlusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static final ExecutorService rotator =
+            Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "ForgeRock-KeyRotation");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
 
     @Getter
     private final SharedPreferences sharedPreferences;
     private final List<OnSharedPreferenceChangeListener> listeners;
-    private final Encryptor encryptor;
+    private final Context context;
+    //Encryptor of each key version, created when first needed
+    private final Map<Integer, Encryptor> encryptors = new ConcurrentHashMap<>();
     @Getter
     private final String keyAlias;
 
+    @Getter(AccessLevel.PACKAGE)
+    private final DecryptedValueCache cache;
+    //SharedPreferences only keeps a weak reference to the listener
+    private final OnSharedPreferenceChangeListener cacheInvalidator;
+
+    //Changes which are not yet written to the storage, shared by the instances of the same file
+    private final PendingChanges pendingChanges;
+
     SecuredSharedPreferences(Context context, String fileName, String keyAlias) {
-        this.sharedPreferences = context.getSharedPreferences(fileName, Context.MODE_PRIVATE);
+        this.sharedPreferences = openStorage(context, fileName);
+        this.pendingChanges = PendingChanges.getInstance(fileName);
         this.listeners = new ArrayList<>();
         this.keyAlias = keyAlias;
-        this.encryptor = getEncryptor(context);
+        this.cache = new DecryptedValueCache();
+        //Other instances may share the same file, invalidate the cache when the file is updated.
+        this.cacheInvalidator = (preferences, key) -> {
+            if (key == null) {
+                cache.invalidateAll();
+            } else {
+                cache.invalidate(key);
+            }
+        };
+        this.sharedPreferences.registerOnSharedPreferenceChangeListener(cacheInvalidator);
+        this.context = context.getApplicationContext();
+        this.encryptors.put(0, getEncryptor(context));
+    }
+
+    /**
+     * Open the underlying storage, files listed with {@code forgerock_append_only_storage} are stored with
+     * {@link AppendOnlySharedPreferences}, others with the platform {@link SharedPreferences}.
+     *
+     * @param context  The Application Context
+     * @param fileName The file name
+     * @return The storage for the file
+     */
+    private static SharedPreferences openStorage(Context context, String fileName) {
+        SharedPreferences platform = context.getSharedPreferences(fileName, Context.MODE_PRIVATE);
+        if (!Arrays.asList(context.getResources().getStringArray(R.array.forgerock_append_only_storage))
+                .contains(fileName)) {
+            return platform;
+        }
+        SharedPreferences storage = AppendOnlySharedPreferences.getInstance(
+                new File(context.getFilesDir(), fileName + LOG_SUFFIX));
+        if (storage.getAll().isEmpty()) {
+            //Migrate the values stored with SharedPreferences, values are encrypted Strings
+            Map<String, ?> values = platform.getAll();
+            if (!values.isEmpty()) {
+                SharedPreferences.Editor editor = storage.edit();
+                for (Map.Entry<String, ?> entry : values.entrySet()) {
+                    if (entry.getValue() instanceof String) {
+                        editor.putString(entry.getKey(), (String) entry.getValue());
+                    } else if (entry.getValue() instanceof Integer) {
+                        //Key version
+                        editor.putInt(entry.getKey(), (Integer) entry.getValue());
+                    }
+                }
+                if (editor.commit()) {
+                    platform.edit().clear().commit();
+                }
+            }
+        }
+        return storage;
     }
 
     @Override
     @NonNull
     public Map<String, ?> getAll() {
         Map<String, ? super Object> entries = new HashMap<>();
-        for (Map.Entry<String, ?> entry : sharedPreferences.getAll().entrySet()) {
-            if (!isKeyAlias(entry.getKey())) {
-                Object decryptedValue = get(entry.getKey());
-                entries.put(entry.getKey(), decryptedValue);
+        Set<String> keys = new HashSet<>(pendingChanges.values.keySet());
+        if (!pendingChanges.clear) {
+            keys.addAll(sharedPreferences.getAll().keySet());
+        }
+        for (String key : keys) {
+            if (!isKeyAlias(key)) {
+                Object decryptedValue = get(key);
+                if (decryptedValue != null) {
+                    entries.put(key, decryptedValue);
+                }
             }
         }
         return entries;
     }
 
-    private Set<String> keys() {
-        return sharedPreferences.getAll().keySet();
-    }
-
     @Nullable
     @Override
     public String getString(@Nullable String key, @Nullable String defValue) {
@@ -81,7 +190,7 @@ public class SecuredSharedPreferences implements SharedPreferences, KeyUpdatedLi
         Set<String> returnValues;
         Object value = get(key);
         if (value instanceof Set) {
-            returnValues = (Set<String>) value;
+            returnValues = new HashSet<>((Set<String>) value);
         } else {
             returnValues = new HashSet<>();
         }
@@ -114,13 +223,17 @@ public class SecuredSharedPreferences implements SharedPreferences, KeyUpdatedLi
 
     @Override
     public boolean contains(@lombok.NonNull String key) {
-        return sharedPreferences.contains(key);
+        Object value = pendingChanges.values.get(key);
+        if (value != null) {
+            return value != REMOVED;
+        }
+        return !pendingChanges.clear && sharedPreferences.contains(key);
     }
 
     @Override
     @NonNull
     public SharedPreferences.Editor edit() {
-        return new SecuredSharedPreferences.Editor(this, sharedPreferences.edit());
+        return new SecuredSharedPreferences.Editor(this);
     }
 
     @Override
@@ -136,43 +249,39 @@ public class SecuredSharedPreferences implements SharedPreferences, KeyUpdatedLi
     }
 
     private Object get(String key) {
-        return get(key, true);
+        Object value = get(key, true);
+        if (value instanceof Set) {
+            //Cached Set is immutable, return a copy to the caller
+            return new HashSet<>((Set<String>) value);
+        }
+        return value;
     }
 
     private Object get(@lombok.NonNull String key, boolean retry) {
         Reject.ifTrue(isKeyAlias(key), "Extract key is not allowed!");
+        Object pendingValue = pendingChanges.values.get(key);
+        if (pendingValue != null) {
+            return pendingValue == REMOVED ? null : pendingValue;
+        }
+        if (pendingChanges.clear) {
+            return null;
+        }
         try {
             String encryptedValue = sharedPreferences.getString(key, null);
             if (encryptedValue != null) {
 
-                String decryptedValue = decrypt(encryptedValue);
+                Object cachedValue = cache.get(key, encryptedValue);
+                if (cachedValue != null) {
+                    return cachedValue;
+                }
+
+                byte[] decryptedValue = decrypt(encryptedValue);
                 if (decryptedValue == null) {
                     return null;
                 }
-                JSONObject value = new JSONObject(decryptedValue);
-                int type = value.getInt("type");
-
-                switch (type) {
-                    case STRING_TYPE:
-                        return value.getString(VALUE);
-                    case INT_TYPE:
-                        return value.getInt(VALUE);
-                    case LONG_TYPE:
-                        return value.getLong(VALUE);
-                    case FLOAT_TYPE:
-                        return value.getDouble(VALUE);
-                    case BOOLEAN_TYPE:
-                        return value.getBoolean(VALUE);
-                    case STRING_SET_TYPE:
-                        Set<String> stringSet = new HashSet<>();
-                        JSONArray jsonArray = value.getJSONArray(VALUE);
-                        for (int i = 0; i < jsonArray.length(); i++) {
-                            stringSet.add(jsonArray.getString(i));
-                        }
-                        return stringSet;
-                    default:
-                        throw new IllegalArgumentException("Invalid Data Type");
-                }
+                Object value = toValue(decryptedValue);
+                cache.put(key, encryptedValue, value);
+                return value;
             } else {
                 return null;
             }
@@ -184,15 +293,101 @@ public class SecuredSharedPreferences implements SharedPreferences, KeyUpdatedLi
         }
     }
 
+    private Object toValue(byte[] decryptedValue) throws JSONException {
+        return ValueEnvelope.isEnvelope(decryptedValue)
+                ? ValueEnvelope.decode(decryptedValue)
+                : parse(new JSONObject(new String(decryptedValue)));
+    }
+
+    /**
+     * Parse the legacy JSON document.
+     */
+    private Object parse(JSONObject value) throws JSONException {
+        int type = value.getInt(TYPE);
+
+        switch (type) {
+            case STRING_TYPE:
+                return value.getString(VALUE);
+            case INT_TYPE:
+                return value.getInt(VALUE);
+            case LONG_TYPE:
+                return value.getLong(VALUE);
+            case FLOAT_TYPE:
+                return (float) value.getDouble(VALUE);
+            case BOOLEAN_TYPE:
+                return value.getBoolean(VALUE);
+            case STRING_SET_TYPE:
+                Set<String> stringSet = new HashSet<>();
+                JSONArray jsonArray = value.getJSONArray(VALUE);
+                for (int i = 0; i < jsonArray.length(); i++) {
+                    stringSet.add(jsonArray.getString(i));
+                }
+                return Collections.unmodifiableSet(stringSet);
+            default:
+                throw new IllegalArgumentException("Invalid Data Type");
+        }
+    }
+
     private boolean isKeyAlias(String key) {
-        return keyAlias.equals(key);
+        return keyAlias.equals(key)
+                || getDataKeyAlias(keyAlias).equals(key)
+                || getKeyVersionKey().equals(key)
+                || key.startsWith(keyAlias + KEY_VERSION_SEPARATOR);
+    }
+
+    private static String getDataKeyAlias(String keyAlias) {
+        return keyAlias + DATA_KEY_SUFFIX;
+    }
+
+    private String getKeyVersionKey() {
+        return keyAlias + KEY_VERSION_SUFFIX;
+    }
+
+    private String getKeyAlias(int version) {
+        return version == 0 ? keyAlias : keyAlias + KEY_VERSION_SEPARATOR + version;
+    }
+
+    private static int getVersion(String encryptedValue) {
+        int index = encryptedValue.indexOf(VALUE_VERSION_SEPARATOR);
+        return index < 0 ? 0 : Integer.parseInt(encryptedValue.substring(0, index));
+    }
+
+    /**
+     * The current key version, new values are encrypted with this version.
+     *
+     * @return The current key version, 0 if the key has never been rotated.
+     */
+    public int getKeyVersion() {
+        return sharedPreferences.getInt(getKeyVersionKey(), 0);
+    }
+
+    private Encryptor getEncryptor(int version) {
+        Encryptor encryptor = encryptors.get(version);
+        if (encryptor == null) {
+            synchronized (encryptors) {
+                encryptor = encryptors.get(version);
+                if (encryptor == null) {
+                    encryptor = getEncryptor(context, getKeyAlias(version));
+                    encryptors.put(version, encryptor);
+                }
+            }
+        }
+        return encryptor;
     }
 
-    private String decrypt(@lombok.NonNull String data) {
+    private byte[] decrypt(@lombok.NonNull String data) {
+        int index = data.indexOf(VALUE_VERSION_SEPARATOR);
+        Encryptor encryptor;
+        try {
+            encryptor = getEncryptor(getVersion(data));
+        } catch (NumberFormatException e) {
+            return null;
+        }
         try {
-            return new String(encryptor.decrypt(Base64.decode(data, Base64.DEFAULT)));
+            return encryptor.decrypt(Base64.decode(data.substring(index + 1), Base64.DEFAULT));
         } catch (Exception e) {
             //Failed to decrypt the data, reset the encryptor
+            cache.invalidateAll();
             try {
                 encryptor.reset();
             } catch (Exception ex) {
@@ -202,14 +397,17 @@ public class SecuredSharedPreferences implements SharedPreferences, KeyUpdatedLi
         }
     }
 
-    private String encrypt(byte[] value, boolean retry) {
+    private String encrypt(byte[] value, int version, boolean retry) {
+        Encryptor encryptor = getEncryptor(version);
         try {
-            return Base64.encodeToString(encryptor.encrypt(value), Base64.DEFAULT);
+            String encrypted = Base64.encodeToString(encryptor.encrypt(value), Base64.NO_WRAP);
+            return version == 0 ? encrypted : version + String.valueOf(VALUE_VERSION_SEPARATOR) + encrypted;
         } catch (Exception e) {
+            cache.invalidateAll();
             try {
                 encryptor.reset();
                 if (retry) {
-                    return encrypt(value, false);
+                    return encrypt(value, version, false);
                 } else {
                     throw new RuntimeException(e);
                 }
@@ -219,179 +417,388 @@ public class SecuredSharedPreferences implements SharedPreferences, KeyUpdatedLi
         }
     }
 
-    @SuppressLint("NewApi")
     protected Encryptor getEncryptor(Context context) {
+        return getEncryptor(context, keyAlias);
+    }
+
+    /**
+     * Create the {@link Encryptor} for the key alias of a key version.
+     *
+     * @param context  The Application Context
+     * @param keyAlias The key alias of the key version
+     * @return The Encryptor
+     */
+    @SuppressLint("NewApi")
+    protected Encryptor getEncryptor(Context context, String keyAlias) {
         switch (Build.VERSION.SDK_INT) {
             case Build.VERSION_CODES.LOLLIPOP:
             case Build.VERSION_CODES.LOLLIPOP_MR1:
                 return new AndroidLEncryptor(context, keyAlias,
                         new SharedPreferencesSecretKeyStore(keyAlias, sharedPreferences));
             case Build.VERSION_CODES.M:
-                return new AndroidMEncryptor(keyAlias, this);
+                return wrap(context, keyAlias, new AndroidMEncryptor(keyAlias, this));
             case Build.VERSION_CODES.N:
-                return new AndroidNEncryptor(keyAlias, this);
+                return wrap(context, keyAlias, new AndroidNEncryptor(keyAlias, this));
             default:
-                return new AndroidNEncryptor(keyAlias, this);
+                return wrap(context, keyAlias, new AndroidNEncryptor(keyAlias, this));
+        }
+
+    }
+
+    private Encryptor wrap(Context context, String keyAlias, Encryptor keyEncryptor) {
+        if (KeyWrappingEncryptor.isEnabled(context)) {
+            return new KeyWrappingEncryptor(context, keyAlias, keyEncryptor,
+                    new SharedPreferencesSecretKeyStore(getDataKeyAlias(keyAlias), sharedPreferences),
+                    KeyWrappingEncryptor.getKeyLifetimeMillis(context));
+        }
+        return keyEncryptor;
+    }
+
+    /**
+     * Move to a new key version. New values are encrypted with the new key, values encrypted with older
+     * versions stay readable and are re-encrypted in the background with {@link #reEncrypt()}.
+     * <p>
+     * Keys of older versions are not deleted, the same key alias may be used by other files.
+     *
+     * @return The progress of the background re-encryption.
+     */
+    public KeyRotation rotateKey() {
+        synchronized (pendingChanges) {
+            sharedPreferences.edit().putInt(getKeyVersionKey(), getKeyVersion() + 1).commit();
+        }
+        return reEncrypt();
+    }
+
+    /**
+     * Re-encrypt the values encrypted with older key versions in the background, in batches of
+     * {@link #ROTATION_BATCH_SIZE} values. Reads are not blocked, values are readable with either version while
+     * the re-encryption is in progress.
+     *
+     * @return The progress of the background re-encryption.
+     */
+    public KeyRotation reEncrypt() {
+        KeyRotation rotation = new KeyRotation();
+        rotator.execute(() -> {
+            try {
+                reEncrypt(rotation);
+            } catch (Exception e) {
+                Logger.error(TAG, e, "Failed to re-encrypt the values");
+            } finally {
+                rotation.finish();
+            }
+        });
+        return rotation;
+    }
+
+    private void reEncrypt(KeyRotation rotation) {
+        int version = getKeyVersion();
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : sharedPreferences.getAll().entrySet()) {
+            if (!isKeyAlias(entry.getKey()) && entry.getValue() instanceof String
+                    && getVersion((String) entry.getValue()) != version) {
+                keys.add(entry.getKey());
+            }
+        }
+        rotation.setTotal(keys.size());
+        for (int i = 0; i < keys.size() && !rotation.isCancelled(); i += ROTATION_BATCH_SIZE) {
+            List<String> batch = keys.subList(i, Math.min(i + ROTATION_BATCH_SIZE, keys.size()));
+            reEncrypt(batch, version);
+            rotation.progress(batch.size());
         }
+    }
 
+    /**
+     * Re-encrypt a batch of values with the key version, the values are decrypted and encrypted without lock,
+     * a value updated in the meantime is not overwritten.
+     */
+    private void reEncrypt(List<String> keys, int version) {
+        Map<String, String> original = new HashMap<>();
+        Map<String, String> encrypted = new HashMap<>();
+        Map<String, Object> values = new HashMap<>();
+        for (String key : keys) {
+            String encryptedValue = sharedPreferences.getString(key, null);
+            if (encryptedValue == null || getVersion(encryptedValue) == version) {
+                continue;
+            }
+            byte[] decryptedValue = decrypt(encryptedValue);
+            if (decryptedValue == null) {
+                continue;
+            }
+            try {
+                Object value = toValue(decryptedValue);
+                original.put(key, encryptedValue);
+                values.put(key, value);
+                encrypted.put(key, encrypt(ValueEnvelope.encode(value), version, true));
+            } catch (JSONException | IllegalArgumentException e) {
+                Logger.warn(TAG, "Failed to re-encrypt %s", key);
+            }
+        }
+        if (encrypted.isEmpty()) {
+            return;
+        }
+        synchronized (pendingChanges) {
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            for (Map.Entry<String, String> entry : encrypted.entrySet()) {
+                String key = entry.getKey();
+                if (original.get(key).equals(sharedPreferences.getString(key, null))
+                        && !pendingChanges.clear && !pendingChanges.values.containsKey(key)) {
+                    editor.putString(key, entry.getValue());
+                } else {
+                    values.remove(key);
+                }
+            }
+            //Interrupted rotation is resumed with the next reEncrypt, no need to wait for the disk
+            editor.apply();
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                cache.put(entry.getKey(), encrypted.get(entry.getKey()), entry.getValue());
+            }
+        }
     }
 
     @Override
     public void onKeyUpdated() {
+        cache.invalidateAll();
+        //The data key wrapped with the old key cannot be unwrapped anymore
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (int version = getKeyVersion(); version >= 0; version--) {
+            editor.remove(getDataKeyAlias(getKeyAlias(version)));
+        }
+        editor.commit();
         edit().clear().commit();
     }
 
+    /**
+     * Merge the changes into the pending changes.
+     *
+     * @param clear   True to remove all existing values before applying the changes
+     * @param changes The changes, {@link #REMOVED} to remove the key
+     */
+    private void merge(boolean clear, Map<String, Object> changes) {
+        synchronized (pendingChanges) {
+            if (clear) {
+                pendingChanges.clear = true;
+                pendingChanges.clearGeneration++;
+                pendingChanges.values.clear();
+            }
+            pendingChanges.values.putAll(changes);
+        }
+    }
+
+    /**
+     * Encrypt and write the pending changes to the storage. The changes are encrypted and written without
+     * holding the pending changes lock, so that writers do not wait on the encryption, and stay visible to
+     * the readers until they are written. Changes which failed to write are kept and flushed again later.
+     *
+     * @return True if the changes are successfully written to the storage
+     */
+    private boolean flush() {
+        synchronized (pendingChanges.flushLock) {
+            boolean clear;
+            int clearGeneration;
+            Map<String, Object> changes;
+            synchronized (pendingChanges) {
+                if (!pendingChanges.clear && pendingChanges.values.isEmpty()) {
+                    return true;
+                }
+                clear = pendingChanges.clear;
+                clearGeneration = pendingChanges.clearGeneration;
+                changes = new HashMap<>(pendingChanges.values);
+            }
+
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            if (clear) {
+                for (String key : sharedPreferences.getAll().keySet()) {
+                    if (!changes.containsKey(key) && !isKeyAlias(key)) {
+                        editor.remove(key);
+                    }
+                }
+            }
+            Map<String, String> encrypted = new HashMap<>();
+            int version = getKeyVersion();
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                if (change.getValue() == REMOVED) {
+                    editor.remove(change.getKey());
+                } else {
+                    String encryptedValue = encrypt(ValueEnvelope.encode(change.getValue()), version, true);
+                    encrypted.put(change.getKey(), encryptedValue);
+                    editor.putString(change.getKey(), encryptedValue);
+                }
+            }
+            boolean result = editor.commit();
+            if (!result) {
+                Logger.warn(TAG, "Failed to write the changes, retry later");
+                scheduleFlush();
+                return false;
+            }
+
+            if (clear) {
+                cache.invalidateAll();
+            }
+            //The value has just been encrypted, no need to decrypt it again
+            for (Map.Entry<String, String> entry : encrypted.entrySet()) {
+                cache.put(entry.getKey(), entry.getValue(), changes.get(entry.getKey()));
+            }
+            synchronized (pendingChanges) {
+                //Reset the clear flag first, the written values are still pending for the readers
+                if (clear && clearGeneration == pendingChanges.clearGeneration) {
+                    pendingChanges.clear = false;
+                }
+                //Keep the values which are updated in the meantime
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+                    pendingChanges.values.remove(change.getKey(), change.getValue());
+                }
+            }
+            return true;
+        }
+    }
+
+    private void scheduleFlush() {
+        synchronized (pendingChanges) {
+            if (pendingChanges.scheduled) {
+                return;
+            }
+            pendingChanges.scheduled = true;
+        }
+        flusher.schedule(() -> {
+            synchronized (pendingChanges) {
+                pendingChanges.scheduled = false;
+            }
+            try {
+                flush();
+            } catch (Exception e) {
+                Logger.error(TAG, e, "Failed to write the changes");
+            }
+        }, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void notifyListeners(Set<String> keys) {
+        for (OnSharedPreferenceChangeListener listener : listeners) {
+            for (String key : keys) {
+                listener.onSharedPreferenceChanged(this, key);
+            }
+        }
+    }
+
+    /**
+     * Changes which are not yet written to the storage, the instance is shared by all the
+     * {@link SecuredSharedPreferences} of the same file, so that applied changes are visible to all of them.
+     * Updates are guarded by the instance lock.
+     */
+    private static final class PendingChanges {
+
+        private static final Map<String, PendingChanges> instances = new HashMap<>();
+
+        private final Map<String, Object> values = new ConcurrentHashMap<>();
+        private volatile boolean clear;
+        //Incremented for every clear, to detect a clear merged while flushing
+        private int clearGeneration;
+        private boolean scheduled;
+        //Serialize the flushes, the changes are written in order
+        private final Object flushLock = new Object();
+
+        private static synchronized PendingChanges getInstance(String fileName) {
+            PendingChanges pendingChanges = instances.get(fileName);
+            if (pendingChanges == null) {
+                pendingChanges = new PendingChanges();
+                instances.put(fileName, pendingChanges);
+            }
+            return pendingChanges;
+        }
+    }
+
     private static final class Editor implements SharedPreferences.Editor {
         private final SecuredSharedPreferences securedSharedPreferences;
-        private final SharedPreferences.Editor editor;
-        private final List<String> keysChanged;
-        private AtomicBoolean clearRequest = new AtomicBoolean(false);
+        private final Map<String, Object> changes = new LinkedHashMap<>();
+        private boolean clearRequest;
 
-        Editor(SecuredSharedPreferences securedSharedPreferences,
-               SharedPreferences.Editor editor) {
+        Editor(SecuredSharedPreferences securedSharedPreferences) {
             this.securedSharedPreferences = securedSharedPreferences;
-            this.editor = editor;
-            keysChanged = new CopyOnWriteArrayList<>();
         }
 
         @Override
         @NonNull
         public SharedPreferences.Editor putString(@Nullable String key, @Nullable String value) {
-            put(key, value, STRING_TYPE);
-            return this;
+            return put(key, value);
         }
 
         @Override
         @NonNull
         public SharedPreferences.Editor putStringSet(@Nullable String key,
                                                      @Nullable Set<String> values) {
-            put(key, values);
-            return this;
+            //Take an immutable copy, the caller may update the Set after this call
+            return put(key, values == null ? null : Collections.unmodifiableSet(new HashSet<>(values)));
         }
 
         @Override
         @NonNull
         public SharedPreferences.Editor putInt(@Nullable String key, int value) {
-            put(key, value, INT_TYPE);
-            return this;
+            return put(key, value);
         }
 
         @Override
         @NonNull
         public SharedPreferences.Editor putLong(@Nullable String key, long value) {
-            put(key, value, LONG_TYPE);
-            return this;
+            return put(key, value);
         }
 
         @Override
         @NonNull
         public SharedPreferences.Editor putFloat(@Nullable String key, float value) {
-            put(key, value, FLOAT_TYPE);
-            return this;
+            return put(key, value);
         }
 
         @Override
         @NonNull
         public SharedPreferences.Editor putBoolean(@Nullable String key, boolean value) {
-            put(key, value, BOOLEAN_TYPE);
-            return this;
+            return put(key, value);
         }
 
         @Override
         @NonNull
-        public SharedPreferences.Editor remove(@lombok.NonNull String key) {
+        public synchronized SharedPreferences.Editor remove(@lombok.NonNull String key) {
             Reject.ifTrue(securedSharedPreferences.isKeyAlias(key), "Remove SecretKey is not allowed!");
-            editor.remove(key);
-            keysChanged.remove(key);
+            changes.put(key, REMOVED);
             return this;
         }
 
         @Override
         @NonNull
-        public SharedPreferences.Editor clear() {
-            clearRequest.set(true);
+        public synchronized SharedPreferences.Editor clear() {
+            clearRequest = true;
             return this;
         }
 
         @Override
         public boolean commit() {
-            if (clearRequest.getAndSet(false)) {
-                for (String key : securedSharedPreferences.keys()) {
-                    if (!keysChanged.contains(key)
-                            && !securedSharedPreferences.isKeyAlias(key)) {
-                        editor.remove(key);
-                    }
-                }
-            }
+            Set<String> keys = mergeChanges();
             try {
-                return editor.commit();
+                return securedSharedPreferences.flush();
             } finally {
-                notifyListeners();
-                keysChanged.clear();
+                securedSharedPreferences.notifyListeners(keys);
             }
         }
 
         @Override
         public void apply() {
-            editor.apply();
-            notifyListeners();
+            Set<String> keys = mergeChanges();
+            securedSharedPreferences.scheduleFlush();
+            securedSharedPreferences.notifyListeners(keys);
         }
 
-        private void put(@lombok.NonNull String key, Object value, int type) {
-            Reject.ifTrue(securedSharedPreferences.isKeyAlias(key), "Update SecretKey is not allowed!");
-            if (value == null) {
-                remove(key);
-                return;
-            }
-            JSONObject data = new JSONObject();
-            try {
-                data.put(TYPE, type);
-                data.put(VALUE, value);
-                put(key, data.toString().getBytes());
-            } catch (JSONException e) {
-                throw new RuntimeException(e);
-            }
+        private synchronized Set<String> mergeChanges() {
+            securedSharedPreferences.merge(clearRequest, changes);
+            Set<String> keys = new LinkedHashSet<>(changes.keySet());
+            clearRequest = false;
+            changes.clear();
+            return keys;
         }
 
-        private void put(@lombok.NonNull String key, Set<String> value) {
+        private synchronized SharedPreferences.Editor put(@lombok.NonNull String key, Object value) {
             Reject.ifTrue(securedSharedPreferences.isKeyAlias(key), "Update SecretKey is not allowed!");
-            if (value == null) {
-                remove(key);
-                return;
-            }
-            JSONObject data = new JSONObject();
-            JSONArray content = new JSONArray();
-            try {
-                data.put(TYPE, STRING_SET_TYPE);
-                for (String s : value) {
-                    content.put(s);
-                }
-                data.put(VALUE, content);
-                put(key, data.toString().getBytes());
-            } catch (JSONException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-        private void put(String key, byte[] value) {
-            keysChanged.add(key);
-            String v = securedSharedPreferences.encrypt(value, true);
-            editor.putString(key, v);
-        }
-
-
-        private void notifyListeners() {
-            for (OnSharedPreferenceChangeListener listener :
-                    securedSharedPreferences.listeners) {
-                for (String key : keysChanged) {
-                    listener.onSharedPreferenceChanged(securedSharedPreferences, key);
-                }
-            }
+            changes.put(key, value == null ? REMOVED : value);
+            return this;
         }
-
     }
-
-
 }
 
 
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compact binary encoding of the values stored with {@link SecuredSharedPreferences}.
+ * <p>
+ * Layout: version (1 byte) | type (1 byte) | payload, where the payload is
+ * <ul>
+ * <li>String: varint length | UTF-8 bytes</li>
+ * <li>String Set: varint size | (varint length | UTF-8 bytes) for each element</li>
+ * <li>Int: 4 bytes, Long: 8 bytes, Float: 4 bytes (IEEE 754), big-endian</li>
+ * <li>Boolean: 1 byte</li>
+ * </ul>
+ * The version byte is never a valid first byte of the legacy JSON document, which allows to tell both
+ * formats apart.
+ */
+class ValueEnvelope {
+
+    static final byte VERSION_1 = (byte) 0xF1;
+
+    static final byte STRING_TYPE = 0;
+    static final byte STRING_SET_TYPE = 1;
+    static final byte INT_TYPE = 2;
+    static final byte LONG_TYPE = 3;
+    static final byte FLOAT_TYPE = 4;
+    static final byte BOOLEAN_TYPE = 5;
+
+    private static final int HEADER_LENGTH = 2;
+
+    private ValueEnvelope() {
+    }
+
+    /**
+     * Check if the data is encoded with this envelope.
+     *
+     * @param data The decrypted data
+     * @return True if the data is a binary envelope, false if the data is the legacy JSON document.
+     */
+    static boolean isEnvelope(byte[] data) {
+        return data.length >= HEADER_LENGTH && data[0] == VERSION_1;
+    }
+
+    /**
+     * Encode the value based on its type.
+     *
+     * @param value String, String Set, Integer, Long, Float or Boolean
+     * @return The binary envelope
+     */
+    @SuppressWarnings("unchecked")
+    static byte[] encode(Object value) {
+        if (value instanceof String) {
+            return encode((String) value);
+        } else if (value instanceof Set) {
+            return encode((Set<String>) value);
+        } else if (value instanceof Integer) {
+            return encode((int) (Integer) value);
+        } else if (value instanceof Long) {
+            return encode((long) (Long) value);
+        } else if (value instanceof Float) {
+            return encode((float) (Float) value);
+        } else if (value instanceof Boolean) {
+            return encode((boolean) (Boolean) value);
+        }
+        throw new IllegalArgumentException("Invalid Data Type");
+    }
+
+    static byte[] encode(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        Writer writer = new Writer(STRING_TYPE, varintSize(bytes.length) + bytes.length);
+        writer.writeBytes(bytes);
+        return writer.buffer;
+    }
+
+    static byte[] encode(Set<String> value) {
+        byte[][] elements = new byte[value.size()][];
+        int size = varintSize(elements.length);
+        int i = 0;
+        for (String s : value) {
+            elements[i] = s.getBytes(StandardCharsets.UTF_8);
+            size += varintSize(elements[i].length) + elements[i].length;
+            i++;
+        }
+        Writer writer = new Writer(STRING_SET_TYPE, size);
+        writer.writeVarint(elements.length);
+        for (byte[] element : elements) {
+            writer.writeBytes(element);
+        }
+        return writer.buffer;
+    }
+
+    static byte[] encode(int value) {
+        Writer writer = new Writer(INT_TYPE, 4);
+        writer.writeFixed(value, 4);
+        return writer.buffer;
+    }
+
+    static byte[] encode(long value) {
+        Writer writer = new Writer(LONG_TYPE, 8);
+        writer.writeFixed(value, 8);
+        return writer.buffer;
+    }
+
+    static byte[] encode(float value) {
+        Writer writer = new Writer(FLOAT_TYPE, 4);
+        writer.writeFixed(Float.floatToIntBits(value), 4);
+        return writer.buffer;
+    }
+
+    static byte[] encode(boolean value) {
+        Writer writer = new Writer(BOOLEAN_TYPE, 1);
+        writer.buffer[writer.position] = (byte) (value ? 1 : 0);
+        return writer.buffer;
+    }
+
+    /**
+     * Decode the value.
+     *
+     * @param data The binary envelope
+     * @return The value, String Set is returned as an unmodifiable Set.
+     * @throws IllegalArgumentException If the data is not a valid envelope.
+     */
+    static Object decode(byte[] data) {
+        if (!isEnvelope(data)) {
+            throw new IllegalArgumentException("Unsupported value envelope");
+        }
+        Reader reader = new Reader(data);
+        try {
+            switch (data[1]) {
+                case STRING_TYPE:
+                    return reader.readString();
+                case STRING_SET_TYPE:
+                    int size = reader.readVarint();
+                    Set<String> stringSet = new HashSet<>();
+                    for (int i = 0; i < size; i++) {
+                        stringSet.add(reader.readString());
+                    }
+                    return Collections.unmodifiableSet(stringSet);
+                case INT_TYPE:
+                    return (int) reader.readFixed(4);
+                case LONG_TYPE:
+                    return reader.readFixed(8);
+                case FLOAT_TYPE:
+                    return Float.intBitsToFloat((int) reader.readFixed(4));
+                case BOOLEAN_TYPE:
+                    return reader.readFixed(1) != 0;
+                default:
+                    throw new IllegalArgumentException("Invalid Data Type");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated value envelope", e);
+        }
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static class Writer {
+
+        private final byte[] buffer;
+        private int position;
+
+        private Writer(byte type, int payloadLength) {
+            buffer = new byte[HEADER_LENGTH + payloadLength];
+            buffer[0] = VERSION_1;
+            buffer[1] = type;
+            position = HEADER_LENGTH;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void writeFixed(long value, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                buffer[position++] = (byte) (value >>> (i * 8));
+            }
+        }
+    }
+
+    private static class Reader {
+
+        private final byte[] buffer;
+        private int position = HEADER_LENGTH;
+
+        private Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = buffer[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private String readString() {
+            int length = readVarint();
+            if (length < 0 || length > buffer.length - position) {
+                throw new IllegalArgumentException("Truncated value envelope");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private long readFixed(int length) {
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.security.auth.Destroyable;
+
+/**
+ * Software AES key unwrapped from a key stored with {@link SecretKeyStore}, which can be wiped from memory.
+ * <p>
+ * The key is wiped when its lifetime is reached, once destroyed or expired, {@link #getEncoded()} returns null
+ * and the {@link Cipher} refuses to use the key, an operation in flight will retry with a freshly unwrapped key.
+ */
+class WrappedSecretKey implements SecretKey, Destroyable {
+
+    private static final String AES = "AES";
+
+    private static final ScheduledExecutorService worker =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ForgeRock-KeyWiper");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final byte[] key;
+    //The wrapped key which this key unwrapped from
+    private final String wrappedKey;
+    //Zero or negative lifetime, the key is not cached and never reused
+    private final boolean reusable;
+    private final long expiresAt;
+    private boolean destroyed;
+
+    private WrappedSecretKey(byte[] key, String wrappedKey, long lifetimeMillis) {
+        this.key = key.clone();
+        this.wrappedKey = wrappedKey;
+        this.reusable = lifetimeMillis > 0;
+        this.expiresAt = reusable ? System.currentTimeMillis() + lifetimeMillis : Long.MAX_VALUE;
+    }
+
+    /**
+     * Create the key and schedule to wipe it when the lifetime is reached.
+     *
+     * @param key            The raw key, the caller should wipe it after this call
+     * @param wrappedKey     The wrapped key which the key unwrapped from
+     * @param lifetimeMillis The lifetime of the key in memory, zero to use the key for a single operation
+     * @return The key
+     */
+    static WrappedSecretKey create(byte[] key, String wrappedKey, long lifetimeMillis) {
+        WrappedSecretKey secretKey = new WrappedSecretKey(key, wrappedKey, lifetimeMillis);
+        if (secretKey.reusable) {
+            worker.schedule(secretKey::destroy, lifetimeMillis, TimeUnit.MILLISECONDS);
+        }
+        return secretKey;
+    }
+
+    /**
+     * Check if the key can still be used.
+     *
+     * @param storedWrappedKey The wrapped key currently stored
+     * @return True if the key is reusable, not destroyed, not expired and unwrapped from the stored key.
+     */
+    boolean isValid(String storedWrappedKey) {
+        return reusable && !isDestroyed() && wrappedKey.equals(storedWrappedKey);
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return AES;
+    }
+
+    @Override
+    public String getFormat() {
+        return "RAW";
+    }
+
+    @Override
+    public synchronized byte[] getEncoded() {
+        if (isDestroyed()) {
+            return null;
+        }
+        return key.clone();
+    }
+
+    @Override
+    public synchronized void destroy() {
+        Arrays.fill(key, (byte) 0);
+        destroyed = true;
+    }
+
+    @Override
+    public synchronized boolean isDestroyed() {
+        if (!destroyed && System.currentTimeMillis() >= expiresAt) {
+            destroy();
+        }
+        return destroyed;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AbstractSymmetricEncryptorTest {
+
+    @Test
+    public void testEncryptAndDecrypt() {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        byte[] encrypted = encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        assertThat(encrypted.length).isEqualTo(AbstractSymmetricEncryptor.MAC_LENGTH
+                + AbstractSymmetricEncryptor.IV_LENGTH + 4 + 16);
+        assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+    }
+
+    @Test
+    public void testKeyResolvedOnce() {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        for (int i = 0; i < 100; i++) {
+            byte[] data = ("Test" + i).getBytes(StandardCharsets.UTF_8);
+            assertThat(encryptor.decrypt(encryptor.encrypt(data))).isEqualTo(data);
+        }
+        assertThat(encryptor.lookup.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testResetInvalidateKey() throws Exception {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        encryptor.reset();
+        encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        assertThat(encryptor.lookup.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRetryWithFreshKey() {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        //The stored key has been replaced by another instance, the cached key is stale.
+        SecretKey updated = generateKey();
+        encryptor.key.set(updated);
+        SoftwareEncryptor another = new SoftwareEncryptor();
+        another.key.set(updated);
+        byte[] encrypted = another.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+        assertThat(encryptor.lookup.get()).isEqualTo(2);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidMac() {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        byte[] encrypted = encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        encrypted[0] = (byte) (encrypted[0] ^ 1);
+        encryptor.decrypt(encrypted);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        int threads = 8;
+        CountDownLatch latch = new CountDownLatch(threads);
+        AtomicInteger success = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            new Thread(() -> {
+                try {
+                    for (int j = 0; j < 50; j++) {
+                        byte[] data = ("Test" + index + j).getBytes(StandardCharsets.UTF_8);
+                        if (new String(encryptor.decrypt(encryptor.encrypt(data)), StandardCharsets.UTF_8)
+                                .equals("Test" + index + j)) {
+                            success.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        assertThat(success.get()).isEqualTo(threads * 50);
+        assertThat(encryptor.lookup.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStreamEncryptAndDecrypt() throws Exception {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        int chunkSize = AbstractSymmetricEncryptor.STREAM_CHUNK_SIZE;
+        for (int size : new int[]{0, 1, chunkSize - 1, chunkSize, chunkSize + 1, chunkSize * 3, chunkSize * 3 + 7}) {
+            byte[] data = randomBytes(size);
+            byte[] encrypted = streamEncrypt(encryptor, data);
+            assertThat(streamDecrypt(encryptor, encrypted)).isEqualTo(data);
+        }
+        assertThat(encryptor.lookup.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStreamChunkLayout() throws Exception {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        int chunkSize = AbstractSymmetricEncryptor.STREAM_CHUNK_SIZE;
+        //Exact multiple of the chunk size does not produce an empty trailing chunk
+        byte[] encrypted = streamEncrypt(encryptor, randomBytes(chunkSize * 2));
+        int header = 1 + 4 + 8;
+        int chunkOverhead = 1 + 4 + AbstractSymmetricEncryptor.IV_LENGTH + AbstractSymmetricEncryptor.TAG_LENGTH;
+        assertThat(encrypted.length).isEqualTo(header + (chunkSize + chunkOverhead) * 2);
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void testStreamTamperedChunk() throws Exception {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        byte[] encrypted = streamEncrypt(encryptor, randomBytes(100));
+        encrypted[encrypted.length - 20] = (byte) (encrypted[encrypted.length - 20] ^ 1);
+        streamDecrypt(encryptor, encrypted);
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void testStreamReorderedChunks() throws Exception {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        int chunkSize = AbstractSymmetricEncryptor.STREAM_CHUNK_SIZE;
+        byte[] encrypted = streamEncrypt(encryptor, randomBytes(chunkSize * 3));
+        int header = 1 + 4 + 8;
+        int chunk = 1 + 4 + AbstractSymmetricEncryptor.IV_LENGTH + chunkSize + AbstractSymmetricEncryptor.TAG_LENGTH;
+        //Swap the first two chunks, both are not the last chunk
+        byte[] reordered = encrypted.clone();
+        System.arraycopy(encrypted, header, reordered, header + chunk, chunk);
+        System.arraycopy(encrypted, header + chunk, reordered, header, chunk);
+        streamDecrypt(encryptor, reordered);
+    }
+
+    @Test(expected = IOException.class)
+    public void testStreamTruncated() throws Exception {
+        SoftwareEncryptor encryptor = new SoftwareEncryptor();
+        int chunkSize = AbstractSymmetricEncryptor.STREAM_CHUNK_SIZE;
+        byte[] encrypted = streamEncrypt(encryptor, randomBytes(chunkSize * 2 + 10));
+        int header = 1 + 4 + 8;
+        int chunk = 1 + 4 + AbstractSymmetricEncryptor.IV_LENGTH + chunkSize + AbstractSymmetricEncryptor.TAG_LENGTH;
+        //Drop the last chunk
+        streamDecrypt(encryptor, Arrays.copyOf(encrypted, header + chunk * 2));
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new SecureRandom().nextBytes(data);
+        return data;
+    }
+
+    private static byte[] streamEncrypt(Encryptor encryptor, byte[] data) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encryptor.encrypt(new ByteArrayInputStream(data), out);
+        return out.toByteArray();
+    }
+
+    private static byte[] streamDecrypt(Encryptor encryptor, byte[] data) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encryptor.decrypt(new ByteArrayInputStream(data), out);
+        return out.toByteArray();
+    }
+
+    private static SecretKey generateKey() {
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(AbstractSymmetricEncryptor.KEY_SIZE);
+            return keyGenerator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Encryptor with software key, count the number of key lookup.
+     */
+    private static class SoftwareEncryptor extends AbstractSymmetricEncryptor {
+
+        private final AtomicInteger lookup = new AtomicInteger();
+        private final AtomicReference<SecretKey> key = new AtomicReference<>();
+
+        SoftwareEncryptor() {
+            super("TestAlias");
+        }
+
+        @Override
+        SecretKey getSecretKey() {
+            lookup.incrementAndGet();
+            key.compareAndSet(null, generateKey());
+            return key.get();
+        }
+
+        @Override
+        byte[] init(Cipher cipher, SecretKey secretKey) throws GeneralSecurityException {
+            byte[] iv = new byte[IV_LENGTH];
+            new SecureRandom().nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(128, iv));
+            return iv;
+        }
+
+        @Override
+        public void reset() throws GeneralSecurityException, java.io.IOException {
+            super.reset();
+            key.set(null);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AndroidLEncryptorTest {
+
+    private static final String FILE_NAME = "AndroidLEncryptorTest";
+    private static final String KEY_ALIAS = "TestAlias";
+    private static final long LIFETIME = 60000;
+
+    private Context context = ApplicationProvider.getApplicationContext();
+    private SharedPreferences sharedPreferences;
+    private CountingEncryptor keyEncryptor;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = context.getSharedPreferences(FILE_NAME, Context.MODE_PRIVATE);
+        keyEncryptor = new CountingEncryptor();
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteSharedPreferences(FILE_NAME);
+    }
+
+    private AndroidLEncryptor newInstance(long lifetime) {
+        return new AndroidLEncryptor(context, KEY_ALIAS,
+                new SharedPreferencesSecretKeyStore(KEY_ALIAS, sharedPreferences), lifetime) {
+            @Override
+            Encryptor getKeyEncryptor() {
+                return keyEncryptor;
+            }
+        };
+    }
+
+    @Test
+    public void testUnwrapOnce() {
+        byte[] encrypted = newInstance(LIFETIME).encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        AndroidLEncryptor encryptor = newInstance(LIFETIME);
+        for (int i = 0; i < 100; i++) {
+            assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+        }
+        assertThat(keyEncryptor.decrypted.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUnwrapForEachOperationWithoutLifetime() {
+        byte[] encrypted = newInstance(0).encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        AndroidLEncryptor encryptor = newInstance(0);
+        for (int i = 0; i < 10; i++) {
+            assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+        }
+        assertThat(keyEncryptor.decrypted.get()).isEqualTo(10);
+    }
+
+    @Test
+    public void testKeyExpired() throws InterruptedException {
+        AndroidLEncryptor encryptor = newInstance(100);
+        byte[] encrypted = encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+        assertThat(keyEncryptor.decrypted.get()).isEqualTo(0);
+
+        Thread.sleep(200);
+        assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+        assertThat(keyEncryptor.decrypted.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStoredKeyReplaced() throws Exception {
+        AndroidLEncryptor encryptor = newInstance(LIFETIME);
+        encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        //Another instance reset the storage and generated a new SecretKey
+        AndroidLEncryptor another = newInstance(LIFETIME);
+        another.reset();
+        byte[] encrypted = another.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+    }
+
+    @Test
+    public void testStoredKeyRemoved() throws InterruptedException {
+        AndroidLEncryptor encryptor = newInstance(100);
+        encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        SharedPreferencesSecretKeyStore store = new SharedPreferencesSecretKeyStore(KEY_ALIAS, sharedPreferences);
+        store.remove();
+        byte[] encrypted = encryptor.encrypt("Token".getBytes(StandardCharsets.UTF_8));
+        assertThat(store.getEncryptedSecretKey()).isNotNull();
+
+        Thread.sleep(200);
+        assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Token");
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        AndroidLEncryptor encryptor = newInstance(LIFETIME);
+        encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        SecretKey secretKey = encryptor.getKey();
+
+        encryptor.reset();
+        assertThat(sharedPreferences.getString(KEY_ALIAS, null)).isNull();
+        assertThat(((WrappedSecretKey) secretKey).isDestroyed()).isTrue();
+        assertThat(keyEncryptor.reset.get()).isEqualTo(1);
+
+        encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        assertThat(sharedPreferences.getString(KEY_ALIAS, null)).isNotNull();
+        assertThat(keyEncryptor.encrypted.get()).isEqualTo(2);
+    }
+
+    /**
+     * Key encryptor with software key, count the number of wrap and unwrap operations.
+     */
+    private static class CountingEncryptor extends AbstractSymmetricEncryptor {
+
+        private final AtomicInteger encrypted = new AtomicInteger();
+        private final AtomicInteger decrypted = new AtomicInteger();
+        private final AtomicInteger reset = new AtomicInteger();
+        private final SecretKey key;
+
+        CountingEncryptor() {
+            super(KEY_ALIAS);
+            try {
+                KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+                keyGenerator.init(KEY_SIZE);
+                key = keyGenerator.generateKey();
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public byte[] encrypt(byte[] data) {
+            encrypted.incrementAndGet();
+            return super.encrypt(data);
+        }
+
+        @Override
+        public byte[] decrypt(byte[] encryptedData) {
+            decrypted.incrementAndGet();
+            return super.decrypt(encryptedData);
+        }
+
+        @Override
+        public void reset() throws GeneralSecurityException, java.io.IOException {
+            reset.incrementAndGet();
+            super.reset();
+        }
+
+        @Override
+        SecretKey getSecretKey() {
+            return key;
+        }
+
+        @Override
+        byte[] init(Cipher cipher, SecretKey secretKey) throws GeneralSecurityException {
+            byte[] iv = new byte[IV_LENGTH];
+            new SecureRandom().nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(128, iv));
+            return iv;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AppendOnlySharedPreferencesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(folder.getRoot(), "test.log");
+    }
+
+    @Test
+    public void testAllTypes() {
+        AppendOnlySharedPreferences sharedPreferences = new AppendOnlySharedPreferences(file);
+        sharedPreferences.edit()
+                .putString("String", "Value")
+                .putStringSet("StringSet", new HashSet<>(Arrays.asList("1", "2")))
+                .putInt("Int", 100)
+                .putLong("Long", 10000000000L)
+                .putFloat("Float", 1.5f)
+                .putBoolean("Boolean", true)
+                .commit();
+        assertAllTypes(sharedPreferences);
+        assertThat(sharedPreferences.getAll()).hasSize(6);
+        assertThat(sharedPreferences.contains("String")).isTrue();
+        assertThat(sharedPreferences.contains("Unknown")).isFalse();
+        assertThat(sharedPreferences.getString("Int", "Default")).isEqualTo("Default");
+    }
+
+    @Test
+    public void testReload() {
+        new AppendOnlySharedPreferences(file).edit()
+                .putString("String", "Value")
+                .putStringSet("StringSet", new HashSet<>(Arrays.asList("1", "2")))
+                .putInt("Int", 100)
+                .putLong("Long", 10000000000L)
+                .putFloat("Float", 1.5f)
+                .putBoolean("Boolean", true)
+                .commit();
+        assertAllTypes(new AppendOnlySharedPreferences(file));
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        AppendOnlySharedPreferences sharedPreferences = new AppendOnlySharedPreferences(file);
+        sharedPreferences.edit().putString("Key1", "Value1").putString("Key2", "Value2").commit();
+        sharedPreferences.edit().putString("Key1", "Updated").remove("Key2").commit();
+        sharedPreferences.edit().putString("Key3", null).commit();
+
+        assertThat(sharedPreferences.getString("Key1", null)).isEqualTo("Updated");
+        assertThat(sharedPreferences.contains("Key2")).isFalse();
+        assertThat(sharedPreferences.contains("Key3")).isFalse();
+
+        AppendOnlySharedPreferences reloaded = new AppendOnlySharedPreferences(file);
+        assertThat(reloaded.getString("Key1", null)).isEqualTo("Updated");
+        assertThat(reloaded.contains("Key2")).isFalse();
+        assertThat(reloaded.getGarbage()).isEqualTo(sharedPreferences.getGarbage());
+    }
+
+    @Test
+    public void testClear() {
+        AppendOnlySharedPreferences sharedPreferences = new AppendOnlySharedPreferences(file);
+        sharedPreferences.edit().putString("Key1", "Value1").commit();
+        //Clear is applied before the other changes of the same editor
+        sharedPreferences.edit().putString("Key2", "Value2").clear().commit();
+
+        assertThat(sharedPreferences.contains("Key1")).isFalse();
+        assertThat(sharedPreferences.getString("Key2", null)).isEqualTo("Value2");
+        assertThat(new AppendOnlySharedPreferences(file).getAll()).containsOnlyKeys("Key2");
+    }
+
+    @Test
+    public void testApply() throws Exception {
+        AppendOnlySharedPreferences sharedPreferences = new AppendOnlySharedPreferences(file);
+        sharedPreferences.edit().putString("Key", "Value").apply();
+        assertThat(sharedPreferences.getString("Key", null)).isEqualTo("Value");
+        Thread.sleep(500);
+        assertThat(new AppendOnlySharedPreferences(file).getString("Key", null)).isEqualTo("Value");
+    }
+
+    @Test
+    public void testGrow() {
+        AppendOnlySharedPreferences sharedPreferences = new AppendOnlySharedPreferences(file);
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'a');
+        String value = new String(chars);
+        for (int i = 0; i < 100; i++) {
+            sharedPreferences.edit().putString("Key" + i, value + i).commit();
+        }
+        AppendOnlySharedPreferences reloaded = new AppendOnlySharedPreferences(file);
+        for (int i = 0; i < 100; i++) {
+            assertThat(reloaded.getString("Key" + i, null)).isEqualTo(value + i);
+        }
+    }
+
+    @Test
+    public void testCompaction() {
+        AppendOnlySharedPreferences sharedPreferences = new AppendOnlySharedPreferences(file);
+        sharedPreferences.edit().putString("Static", "Value").commit();
+        for (int i = 0; i < 2000; i++) {
+            sharedPreferences.edit().putInt("Counter", i).commit();
+        }
+        //Without compaction the log would hold 2000 records
+        assertThat(sharedPreferences.getEnd()).isLessThan(AppendOnlySharedPreferences.COMPACTION_THRESHOLD * 2);
+        assertThat(sharedPreferences.getInt("Counter", 0)).isEqualTo(1999);
+        assertThat(sharedPreferences.getString("Static", null)).isEqualTo("Value");
+
+        AppendOnlySharedPreferences reloaded = new AppendOnlySharedPreferences(file);
+        assertThat(reloaded.getInt("Counter", 0)).isEqualTo(1999);
+        assertThat(reloaded.getString("Static", null)).isEqualTo("Value");
+        assertThat(new File(file.getPath() + ".tmp").exists()).isFalse();
+    }
+
+    @Test
+    public void testDiscardIncompleteRecord() throws Exception {
+        AppendOnlySharedPreferences sharedPreferences = new AppendOnlySharedPreferences(file);
+        sharedPreferences.edit().putString("Key1", "Value1").commit();
+        int end = sharedPreferences.getEnd();
+        sharedPreferences.edit().putString("Key2", "Value2").commit();
+
+        //Simulate a crash in the middle of writing the second record
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(end + 12);
+            randomAccessFile.write(new byte[]{1, 2, 3, 4});
+        }
+
+        AppendOnlySharedPreferences reloaded = new AppendOnlySharedPreferences(file);
+        assertThat(reloaded.getString("Key1", null)).isEqualTo("Value1");
+        assertThat(reloaded.contains("Key2")).isFalse();
+        assertThat(reloaded.getEnd()).isEqualTo(end);
+
+        //New records are appended after the last valid record
+        reloaded.edit().putString("Key3", "Value3").commit();
+        assertThat(new AppendOnlySharedPreferences(file).getAll()).containsOnlyKeys("Key1", "Key3");
+    }
+
+    @Test
+    public void testListener() {
+        AppendOnlySharedPreferences sharedPreferences = new AppendOnlySharedPreferences(file);
+        List<String> changed = new ArrayList<>();
+        SharedPreferences.OnSharedPreferenceChangeListener listener = (preferences, key) -> changed.add(key);
+        sharedPreferences.registerOnSharedPreferenceChangeListener(listener);
+
+        sharedPreferences.edit().putString("Key1", "Value1").remove("Key2").commit();
+        sharedPreferences.edit().clear().commit();
+        assertThat(changed).containsExactly("Key1", "Key2", null);
+
+        sharedPreferences.unregisterOnSharedPreferenceChangeListener(listener);
+        sharedPreferences.edit().putString("Key1", "Value1").commit();
+        assertThat(changed).hasSize(3);
+    }
+
+    @Test
+    public void testSharedInstance() {
+        assertThat(AppendOnlySharedPreferences.getInstance(file))
+                .isSameAs(AppendOnlySharedPreferences.getInstance(new File(file.getPath())));
+    }
+
+    private void assertAllTypes(SharedPreferences sharedPreferences) {
+        assertThat(sharedPreferences.getString("String", null)).isEqualTo("Value");
+        assertThat(sharedPreferences.getStringSet("StringSet", null)).containsExactlyInAnyOrder("1", "2");
+        assertThat(sharedPreferences.getInt("Int", 0)).isEqualTo(100);
+        assertThat(sharedPreferences.getLong("Long", 0)).isEqualTo(10000000000L);
+        assertThat(sharedPreferences.getFloat("Float", 0)).isEqualTo(1.5f);
+        assertThat(sharedPreferences.getBoolean("Boolean", false)).isTrue();
+    }
+}
@@ -17,6 +17,21 @@ import org.junit.runners.Suite;
         LoggerTest.class,
         KeyStoreManagerTest.class,
         RequestInterceptorTest.class,
+        DecryptedValueCacheTest.class,
+        SecuredSharedPreferencesCacheTest.class,
+        AbstractSymmetricEncryptorTest.class,
+        KeyWrappingEncryptorTest.class,
+        AndroidLEncryptorTest.class,
+        ValueEnvelopeTest.class,
+        SecuredSharedPreferencesEnvelopeTest.class,
+        AppendOnlySharedPreferencesTest.class,
+        SecuredSharedPreferencesEditorTest.class,
+        SecuredSharedPreferencesKeyRotationTest.class,
+        OkHttpClientProviderTest.class,
+        NetworkMetricsTest.class,
+        HttpDebugInterceptorTest.class,
+        NetworkPolicyTest.class,
+        ExpiringReferenceTest.class,
 
 })
 public class CoreTestSuite {
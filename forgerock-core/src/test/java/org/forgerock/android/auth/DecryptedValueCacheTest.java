@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DecryptedValueCacheTest {
+
+    @Test
+    public void testHitAndMiss() {
+        DecryptedValueCache cache = new DecryptedValueCache();
+        assertThat(cache.get("key", "encrypted")).isNull();
+        cache.put("key", "encrypted", "value");
+        assertThat(cache.get("key", "encrypted")).isEqualTo("value");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStaleEncryptedValue() {
+        DecryptedValueCache cache = new DecryptedValueCache();
+        cache.put("key", "encrypted", "value");
+        //The stored value has been updated by someone else
+        assertThat(cache.get("key", "updated")).isNull();
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInvalidate() {
+        DecryptedValueCache cache = new DecryptedValueCache();
+        cache.put("key1", "encrypted1", "value1");
+        cache.put("key2", "encrypted2", "value2");
+        cache.invalidate("key1");
+        assertThat(cache.get("key1", "encrypted1")).isNull();
+        assertThat(cache.get("key2", "encrypted2")).isEqualTo("value2");
+        cache.invalidateAll();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void testBounded() {
+        DecryptedValueCache cache = new DecryptedValueCache(2);
+        cache.put("key1", "encrypted1", "value1");
+        cache.put("key2", "encrypted2", "value2");
+        //Access key1, key2 becomes the eldest entry
+        cache.get("key1", "encrypted1");
+        cache.put("key3", "encrypted3", "value3");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("key1", "encrypted1")).isEqualTo("value1");
+        assertThat(cache.get("key2", "encrypted2")).isNull();
+        assertThat(cache.get("key3", "encrypted3")).isEqualTo("value3");
+    }
+
+}
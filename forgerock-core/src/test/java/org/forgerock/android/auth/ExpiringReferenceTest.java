@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExpiringReferenceTest {
+
+    private long now = 0;
+    private final ExpiringReference.Clock clock = () -> now;
+
+    @Test
+    public void testValueExpires() {
+        ExpiringReference<String> reference = new ExpiringReference<>(100, clock);
+        reference.set("value");
+        advance(99);
+        assertThat(reference.get()).isEqualTo("value");
+        advance(1);
+        assertThat(reference.get()).isNull();
+    }
+
+    @Test
+    public void testNewValueNotEvictedByPreviousExpiration() {
+        ExpiringReference<String> reference = new ExpiringReference<>(100, clock);
+        reference.set("first");
+        advance(60);
+        reference.set("second");
+        //Past the expiration of the first value
+        advance(60);
+        assertThat(reference.get()).isEqualTo("second");
+        advance(40);
+        assertThat(reference.get()).isNull();
+    }
+
+    @Test
+    public void testClear() {
+        ExpiringReference<String> reference = new ExpiringReference<>(100, clock);
+        reference.set("value");
+        reference.clear();
+        assertThat(reference.get()).isNull();
+        reference.set("value");
+        reference.set(null);
+        assertThat(reference.get()).isNull();
+    }
+
+    @Test
+    public void testDisabled() {
+        ExpiringReference<String> reference = new ExpiringReference<>(0, clock);
+        reference.set("value");
+        assertThat(reference.get()).isNull();
+    }
+
+    @Test
+    public void testClockOverflow() {
+        now = Long.MAX_VALUE - TimeUnit.MILLISECONDS.toNanos(50);
+        ExpiringReference<String> reference = new ExpiringReference<>(100, clock);
+        reference.set("value");
+        advance(99);
+        assertThat(reference.get()).isEqualTo("value");
+        advance(1);
+        assertThat(reference.get()).isNull();
+    }
+
+    @Test
+    public void testSystemClock() {
+        ExpiringReference<String> reference = new ExpiringReference<>(60_000);
+        reference.set("value");
+        assertThat(reference.get()).isEqualTo("value");
+    }
+
+    private void advance(long millis) {
+        now += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLog;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class HttpDebugInterceptorTest {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final String COOKIE_NAME = "iPlanetDirectoryPro";
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private HttpDebugInterceptor interceptor;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        Logger.set(Logger.Level.DEBUG);
+        //Write Logcat with the calling thread to assert the records
+        Logger.setAsynchronous(false);
+        ShadowLog.clear();
+        interceptor = new HttpDebugInterceptor(singletonList(COOKIE_NAME));
+        client = new OkHttpClient.Builder().addInterceptor(interceptor).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        HttpLoggingPolicy.getInstance().reset();
+        Logger.set(Logger.Level.WARN);
+        Logger.setAsynchronous(true);
+    }
+
+    @Test
+    public void testRedact() {
+        assertThat(interceptor.redact("{\"tokenId\":\"AQIC5w\\\"M\",\"successUrl\":\"/console\"}"))
+                .isEqualTo("{\"tokenId\":\"<redacted>\",\"successUrl\":\"/console\"}");
+        assertThat(interceptor.redact("grant_type=refresh_token&refresh_token=abc&client_id=app"))
+                .isEqualTo("grant_type=refresh_token&refresh_token=<redacted>&client_id=app");
+        assertThat(interceptor.redact("https://openam.example.com/authorize?client_id=app&"
+                + COOKIE_NAME + "=AQIC5w&code=xyz"))
+                .isEqualTo("https://openam.example.com/authorize?client_id=app&"
+                        + COOKIE_NAME + "=<redacted>&code=<redacted>");
+        assertThat(interceptor.redact("{\"callbacks\":[{\"type\":\"PasswordCallback\",\"output\":"
+                + "[{\"name\":\"prompt\",\"value\":\"Password\"}],\"input\":"
+                + "[{\"name\":\"IDToken2\",\"value\":\"Pass\\\"word\"}]},"
+                + "{\"input\":[{\"name\":\"IDToken3\", \"value\": 2}]},"
+                + "{\"input\":[{\"name\":\"IDToken4\",\"value\":[\"a\",\"b\"]}]}]}"))
+                .isEqualTo("{\"callbacks\":[{\"type\":\"PasswordCallback\",\"output\":"
+                        + "[{\"name\":\"prompt\",\"value\":\"Password\"}],\"input\":"
+                        + "[{\"name\":\"IDToken2\",\"value\":\"<redacted>\"}]},"
+                        + "{\"input\":[{\"name\":\"IDToken3\", \"value\": \"<redacted>\"}]},"
+                        + "{\"input\":[{\"name\":\"IDToken4\",\"value\":\"<redacted>\"}]}]}");
+    }
+
+    @Test
+    public void testFailureRedacted() {
+        OkHttpClient failing = client.newBuilder()
+                .addInterceptor(chain -> {
+                    throw new IOException("Failed to reach " + chain.request().url());
+                })
+                .build();
+        okhttp3.Request request = new okhttp3.Request.Builder()
+                .url(server.url("/callback?code=CodeSecret").toString())
+                .build();
+        try {
+            failing.newCall(request).execute();
+            fail("Expected failure");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains("CodeSecret");
+        }
+
+        String log = log();
+        assertThat(log).contains("<-- HTTP FAILED", HttpDebugInterceptor.REDACTED);
+        assertThat(log).doesNotContain("CodeSecret");
+    }
+
+    @Test
+    public void testLogRedacted() throws IOException {
+        server.enqueue(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Set-Cookie", COOKIE_NAME + "=ResponseSecret; Path=/")
+                .setBody("{\"access_token\":\"AccessSecret\",\"expires_in\":3599}"));
+
+        okhttp3.Request request = new okhttp3.Request.Builder()
+                .url(server.url("/json/authenticate").toString())
+                .header("Cookie", COOKIE_NAME + "=CookieSecret; amlbcookie=01")
+                .header(COOKIE_NAME, "HeaderSecret")
+                .header("Authorization", "Bearer BearerSecret")
+                .post(RequestBody.create("{\"tokenId\":\"BodySecret\"}", JSON))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            //The response is not consumed by the logger
+            assertThat(response.body().string()).contains("AccessSecret");
+        }
+
+        String log = log();
+        assertThat(log).contains("--> POST", "<-- 200", "amlbcookie=01", "expires_in",
+                HttpDebugInterceptor.REDACTED);
+        assertThat(log).doesNotContain("CookieSecret", "HeaderSecret", "BearerSecret", "BodySecret",
+                "AccessSecret", "ResponseSecret");
+    }
+
+    @Test
+    public void testBodyTruncated() throws IOException {
+        char[] content = new char[1000];
+        Arrays.fill(content, 'a');
+        server.enqueue(new MockResponse()
+                .addHeader("Content-Type", "text/plain")
+                .setBody(new String(content)));
+        HttpLoggingPolicy.getInstance().setMaxBodySize(16);
+
+        try (Response response = client.newCall(new okhttp3.Request.Builder()
+                .url(server.url("/").toString()).build()).execute()) {
+            assertThat(response.body().string()).hasSize(1000);
+        }
+
+        String log = log();
+        assertThat(log).contains("body truncated to 16 bytes");
+        assertThat(log).doesNotContain(new String(content, 0, 17));
+    }
+
+    @Test
+    public void testHeadersOnlyForAction() throws IOException {
+        HttpLoggingPolicy.getInstance().set(Action.REFRESH_TOKEN, HttpLoggingPolicy.Level.HEADERS, 1);
+        server.enqueue(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"expires_in\":3599}"));
+        server.enqueue(new MockResponse()
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"expires_in\":3599}"));
+
+        execute(new Action(Action.REFRESH_TOKEN));
+        assertThat(log()).contains("Content-Type").doesNotContain("expires_in");
+
+        ShadowLog.clear();
+        execute(new Action(Action.EXCHANGE_TOKEN));
+        assertThat(log()).contains("expires_in");
+    }
+
+    @Test
+    public void testNone() throws IOException {
+        HttpLoggingPolicy.getInstance().setDefault(HttpLoggingPolicy.Level.NONE, 0);
+        server.enqueue(new MockResponse());
+
+        execute(new Action(Action.USER_INFO));
+
+        assertThat(ShadowLog.getLogsForTag(Logger.FORGE_ROCK)).isEmpty();
+    }
+
+    private void execute(Action action) throws IOException {
+        okhttp3.Request request = new okhttp3.Request.Builder()
+                .url(server.url("/").toString())
+                .tag(action)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            response.body().string();
+        }
+    }
+
+    private String log() {
+        StringBuilder builder = new StringBuilder();
+        for (ShadowLog.LogItem item : ShadowLog.getLogsForTag(Logger.FORGE_ROCK)) {
+            builder.append(item.msg).append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class KeyWrappingEncryptorTest {
+
+    private static final String ALIAS = "TestAlias";
+    private static final long LIFETIME = 60000;
+
+    private Context context = ApplicationProvider.getApplicationContext();
+
+    @Test
+    public void testEncryptAndDecrypt() {
+        CountingEncryptor keyEncryptor = new CountingEncryptor();
+        MemorySecretKeyStore store = new MemorySecretKeyStore();
+        KeyWrappingEncryptor encryptor = new KeyWrappingEncryptor(context, ALIAS, keyEncryptor, store, LIFETIME);
+
+        for (int i = 0; i < 100; i++) {
+            byte[] data = ("Test" + i).getBytes(StandardCharsets.UTF_8);
+            assertThat(encryptor.decrypt(encryptor.encrypt(data))).isEqualTo(data);
+        }
+        assertThat(store.value).isNotNull();
+        //Data key is wrapped once, and never unwrapped while cached.
+        assertThat(keyEncryptor.encrypted.get()).isEqualTo(1);
+        assertThat(keyEncryptor.decrypted.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void testStoredDataKeyReadOnce() {
+        MemorySecretKeyStore store = new MemorySecretKeyStore();
+        KeyWrappingEncryptor encryptor = new KeyWrappingEncryptor(context, ALIAS, new CountingEncryptor(),
+                store, LIFETIME);
+
+        byte[] encrypted = encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        store.read.set(0);
+        for (int i = 0; i < 100; i++) {
+            assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+        }
+        //The SecretKeyStore is not read for every decryption, it may be backed by IPC
+        assertThat(store.read.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void testStoredDataKeyRemoved() throws InterruptedException {
+        MemorySecretKeyStore store = new MemorySecretKeyStore();
+        KeyWrappingEncryptor encryptor = new KeyWrappingEncryptor(context, ALIAS, new CountingEncryptor(),
+                store, 100);
+        encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        //The account is removed with the stored data key, then the user login again
+        store.remove();
+        byte[] encrypted = encryptor.encrypt("Token".getBytes(StandardCharsets.UTF_8));
+        assertThat(store.value).isNotNull();
+
+        //Read after the data key lifetime, the data key is unwrapped from the store
+        Thread.sleep(200);
+        assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Token");
+    }
+
+    @Test
+    public void testUnwrapPersistedDataKey() {
+        CountingEncryptor keyEncryptor = new CountingEncryptor();
+        MemorySecretKeyStore store = new MemorySecretKeyStore();
+        byte[] encrypted = new KeyWrappingEncryptor(context, ALIAS, keyEncryptor, store, LIFETIME)
+                .encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        KeyWrappingEncryptor another = new KeyWrappingEncryptor(context, ALIAS, keyEncryptor, store, LIFETIME);
+        assertThat(new String(another.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+        another.decrypt(encrypted);
+        assertThat(keyEncryptor.encrypted.get()).isEqualTo(1);
+        assertThat(keyEncryptor.decrypted.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDecryptLegacyData() {
+        CountingEncryptor keyEncryptor = new CountingEncryptor();
+        byte[] legacy = keyEncryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        KeyWrappingEncryptor encryptor = new KeyWrappingEncryptor(context, ALIAS, keyEncryptor,
+                new MemorySecretKeyStore(), LIFETIME);
+        assertThat(new String(encryptor.decrypt(legacy), StandardCharsets.UTF_8)).isEqualTo("Test");
+
+        //New data is encrypted with the data key
+        byte[] encrypted = encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        assertThat(encryptor.verifyMac(encrypted)).isTrue();
+        assertThat(encryptor.verifyMac(legacy)).isFalse();
+    }
+
+    @Test
+    public void testDataKeyExpired() throws InterruptedException {
+        CountingEncryptor keyEncryptor = new CountingEncryptor();
+        KeyWrappingEncryptor encryptor = new KeyWrappingEncryptor(context, ALIAS, keyEncryptor,
+                new MemorySecretKeyStore(), 100);
+        byte[] encrypted = encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        WrappedSecretKey dataKey = encryptor.getDataKey();
+
+        Thread.sleep(200);
+        assertThat(dataKey.isDestroyed()).isTrue();
+        assertThat(dataKey.getEncoded()).isNull();
+        assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+        assertThat(keyEncryptor.decrypted.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testWipeAll() {
+        CountingEncryptor keyEncryptor = new CountingEncryptor();
+        KeyWrappingEncryptor encryptor = new KeyWrappingEncryptor(context, ALIAS, keyEncryptor,
+                new MemorySecretKeyStore(), LIFETIME);
+        byte[] encrypted = encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        WrappedSecretKey dataKey = encryptor.getDataKey();
+
+        KeyWrappingEncryptor.wipeAll();
+        assertThat(dataKey.isDestroyed()).isTrue();
+        assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+        assertThat(keyEncryptor.decrypted.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStoredDataKeyReplaced() throws Exception {
+        CountingEncryptor keyEncryptor = new CountingEncryptor();
+        MemorySecretKeyStore store = new MemorySecretKeyStore();
+        KeyWrappingEncryptor encryptor = new KeyWrappingEncryptor(context, ALIAS, keyEncryptor, store, LIFETIME);
+        encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        //Another instance reset the storage and generated a new data key
+        KeyWrappingEncryptor another = new KeyWrappingEncryptor(context, ALIAS, keyEncryptor, store, LIFETIME);
+        another.reset();
+        byte[] encrypted = another.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8)).isEqualTo("Test");
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        MemorySecretKeyStore store = new MemorySecretKeyStore();
+        KeyWrappingEncryptor encryptor = new KeyWrappingEncryptor(context, ALIAS, new CountingEncryptor(),
+                store, LIFETIME);
+        encryptor.encrypt("Test".getBytes(StandardCharsets.UTF_8));
+        WrappedSecretKey dataKey = encryptor.getDataKey();
+
+        encryptor.reset();
+        assertThat(store.value).isNull();
+        assertThat(dataKey.isDestroyed()).isTrue();
+    }
+
+    private static class MemorySecretKeyStore implements SecretKeyStore {
+
+        private String value;
+        private final AtomicInteger read = new AtomicInteger();
+
+        @Override
+        public void persist(String encryptedSecretKey) {
+            value = encryptedSecretKey;
+        }
+
+        @Override
+        public String getEncryptedSecretKey() {
+            read.incrementAndGet();
+            return value;
+        }
+
+        @Override
+        public void remove() {
+            value = null;
+        }
+    }
+
+    /**
+     * Key encryptor with software key, count the number of wrap and unwrap operations.
+     */
+    private static class CountingEncryptor extends AbstractSymmetricEncryptor {
+
+        private final AtomicInteger encrypted = new AtomicInteger();
+        private final AtomicInteger decrypted = new AtomicInteger();
+        private final SecretKey key;
+
+        CountingEncryptor() {
+            super(ALIAS);
+            try {
+                KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+                keyGenerator.init(KEY_SIZE);
+                key = keyGenerator.generateKey();
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public byte[] encrypt(byte[] data) {
+            encrypted.incrementAndGet();
+            return super.encrypt(data);
+        }
+
+        @Override
+        public byte[] decrypt(byte[] encryptedData) {
+            decrypted.incrementAndGet();
+            return super.decrypt(encryptedData);
+        }
+
+        @Override
+        SecretKey getSecretKey() {
+            return key;
+        }
+
+        @Override
+        byte[] init(Cipher cipher, SecretKey secretKey) throws GeneralSecurityException {
+            byte[] iv = new byte[IV_LENGTH];
+            new SecureRandom().nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(128, iv));
+            return iv;
+        }
+    }
+}
@@ -10,6 +10,7 @@ package org.forgerock.android.auth;
 import android.util.Log;
 
 import org.forgerock.android.core.BuildConfig;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -17,18 +18,36 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.shadows.ShadowLog;
 import org.robolectric.shadows.ShadowLog.LogItem;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 @RunWith(RobolectricTestRunner.class)
 public class LoggerTest {
 
+    private final List<LogSink> sinks = new ArrayList<>();
+
     @Before
     public void setUp() {
         ShadowLog.stream = System.out;
         Logger.set(Logger.Level.DEBUG);
+        //Write Logcat with the calling thread to assert the records
+        Logger.setAsynchronous(false);
         ShadowLog.clear();
     }
 
+    @After
+    public void tearDown() {
+        Logger.setAsynchronous(true);
+        for (LogSink sink : sinks) {
+            Logger.removeSink(sink);
+        }
+    }
+
     @Test
     public void testDebugLogging() {
         Logger.debug("Test", "This is a test", null);
@@ -89,6 +108,119 @@ public class LoggerTest {
         assertTrue(logItem.throwable instanceof IllegalArgumentException);
     }
 
+    @Test
+    public void testSink() throws InterruptedException {
+        List<LogRecord> records = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        LogSink sink = record -> {
+            records.add(record);
+            latch.countDown();
+        };
+        addSink(sink);
+        Logger.debug("Test", "This is a test %s, %d", "hello", 3);
+        Logger.warn("Test", new IllegalArgumentException("test"), "warning");
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Logger.Level.DEBUG, records.get(0).getLevel());
+        assertEquals("Test", records.get(0).getTag());
+        assertEquals("This is a test hello, 3", records.get(0).getMessage());
+        assertEquals("[" + BuildConfig.VERSION_NAME + "] [Test]: This is a test hello, 3",
+                records.get(0).toString());
+        assertTrue(records.get(1).getThrowable() instanceof IllegalArgumentException);
+        //Still written to Logcat
+        assertEquals(2, ShadowLog.getLogsForTag(Logger.FORGE_ROCK).size());
+    }
+
+    @Test
+    public void testAsynchronous() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        Thread[] sinkThread = new Thread[1];
+        addSink(record -> {
+            sinkThread[0] = Thread.currentThread();
+            latch.countDown();
+        });
+        Logger.setAsynchronous(true);
+        Logger.debug("Test", "This is a test");
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        //Consumed off the calling thread
+        assertNotEquals(Thread.currentThread(), sinkThread[0]);
+        for (int i = 0; i < 50 && ShadowLog.getLogsForTag(Logger.FORGE_ROCK).isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("[" + BuildConfig.VERSION_NAME + "] [Test]: This is a test",
+                ShadowLog.getLogsForTag(Logger.FORGE_ROCK).get(0).msg);
+    }
+
+    @Test
+    public void testFormattedOffCallingThreadWithSink() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        addSink(record -> latch.countDown());
+        Thread[] formatThread = new Thread[1];
+        Object argument = new Logger.Deferred() {
+            @Override
+            public String toString() {
+                formatThread[0] = Thread.currentThread();
+                return "argument";
+            }
+        };
+        Logger.debug("Test", "This is a test %s", argument);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNotNull(formatThread[0]);
+        assertNotEquals(Thread.currentThread(), formatThread[0]);
+        assertEquals("[" + BuildConfig.VERSION_NAME + "] [Test]: This is a test argument",
+                ShadowLog.getLogsForTag(Logger.FORGE_ROCK).get(0).msg);
+    }
+
+    @Test
+    public void testMutableArgumentSnapshot() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        addSink(record -> latch.countDown());
+        StringBuilder argument = new StringBuilder("before");
+        AtomicInteger counter = new AtomicInteger(1);
+        Logger.debug("Test", "This is a test %s %d", argument, counter);
+        //Changed by the caller before the record is formatted
+        argument.setLength(0);
+        argument.append("after");
+        counter.set(2);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals("[" + BuildConfig.VERSION_NAME + "] [Test]: This is a test before 1",
+                ShadowLog.getLogsForTag(Logger.FORGE_ROCK).get(0).msg);
+    }
+
+    @Test
+    public void testMessageWithoutArgumentsFormatted() {
+        Logger.debug("Test", "100%% done");
+        assertEquals("[" + BuildConfig.VERSION_NAME + "] [Test]: 100% done",
+                ShadowLog.getLogsForTag(Logger.FORGE_ROCK).get(0).msg);
+    }
+
+    private void addSink(LogSink sink) {
+        sinks.add(sink);
+        Logger.addSink(sink);
+    }
+
+    @Test
+    public void testRingBuffer() {
+        LogRingBuffer<Integer> buffer = new LogRingBuffer<>(3);
+        assertEquals(4, buffer.capacity());
+        assertTrue(buffer.isEmpty());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        //Full
+        assertFalse(buffer.offer(4));
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
     @Test
     public void testIsDebugEnabled() {
         assertTrue(Logger.isDebugEnabled());
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class NetworkMetricsTest {
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        NetworkMetrics.getInstance().reset();
+        client = OkHttpClientProvider.getInstance().lookup(NetworkConfig.networkBuilder()
+                .host(server.getHostName())
+                .interceptorSupplier(Collections::emptyList)
+                .build());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        NetworkMetrics.getInstance().register();
+        NetworkMetrics.getInstance().setEnabled(true);
+        server.shutdown();
+    }
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getPercentile(50)).isEqualTo(0);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(60000);
+
+        assertThat(histogram.getCount()).isEqualTo(101);
+        assertThat(histogram.getMax()).isEqualTo(60000);
+        assertThat(histogram.getSum()).isEqualTo(5050 + 60000);
+        //Bucket upper bound
+        assertThat(histogram.getPercentile(40)).isEqualTo(50);
+        assertThat(histogram.getPercentile(90)).isEqualTo(100);
+        assertThat(histogram.getPercentile(100)).isEqualTo(60000);
+        long[] buckets = histogram.getBuckets();
+        assertThat(buckets).hasSize(LatencyHistogram.getBounds().length + 1);
+        assertThat(buckets[0]).isEqualTo(1);
+        assertThat(buckets[buckets.length - 1]).isEqualTo(1);
+    }
+
+    @Test
+    public void testRecordByAction() throws IOException {
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        execute(new Action(Action.AUTHENTICATE));
+        execute(new Action(Action.AUTHENTICATE));
+        execute(null);
+
+        ActionMetrics authenticate = NetworkMetrics.getInstance().getActionMetrics(Action.AUTHENTICATE);
+        assertThat(authenticate.getRequests()).isEqualTo(2);
+        assertThat(authenticate.getFailures()).isEqualTo(0);
+        //The second request reuses the connection
+        assertThat(authenticate.getReusedConnections()).isEqualTo(1);
+        //Connection phases of the first request only, no TLS with http
+        assertThat(authenticate.getHistogram(RequestTiming.Phase.CONNECT).getCount()).isEqualTo(1);
+        assertThat(authenticate.getHistogram(RequestTiming.Phase.DNS).getCount()).isLessThanOrEqualTo(1);
+        assertThat(authenticate.getHistogram(RequestTiming.Phase.TLS).getCount()).isEqualTo(0);
+        for (RequestTiming.Phase phase : new RequestTiming.Phase[]{RequestTiming.Phase.REQUEST_WRITE,
+                RequestTiming.Phase.TIME_TO_FIRST_BYTE, RequestTiming.Phase.RESPONSE_READ,
+                RequestTiming.Phase.TOTAL}) {
+            assertThat(authenticate.getHistogram(phase).getCount()).isEqualTo(2);
+        }
+        assertThat(NetworkMetrics.getInstance().getActionMetrics(NetworkMetrics.UNKNOWN).getRequests())
+                .isEqualTo(1);
+        assertThat(NetworkMetrics.getInstance().getActionMetrics(Action.AUTHORIZE)).isNull();
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        server.shutdown();
+        try {
+            execute(new Action(Action.REFRESH_TOKEN));
+            fail("Connection should fail");
+        } catch (IOException e) {
+            //Expected
+        }
+        ActionMetrics metrics = NetworkMetrics.getInstance().getActionMetrics(Action.REFRESH_TOKEN);
+        assertThat(metrics.getRequests()).isEqualTo(1);
+        assertThat(metrics.getFailures()).isEqualTo(1);
+        assertThat(metrics.getReusedConnections()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSink() throws IOException {
+        List<RequestTiming> timings = new ArrayList<>();
+        NetworkMetrics.getInstance().register(timings::add);
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        execute(new Action(Action.USER_INFO));
+
+        assertThat(timings).hasSize(1);
+        RequestTiming timing = timings.get(0);
+        assertThat(timing.getAction()).isEqualTo(Action.USER_INFO);
+        assertThat(timing.isSuccess()).isTrue();
+        assertThat(timing.get(RequestTiming.Phase.TOTAL))
+                .isGreaterThanOrEqualTo(timing.get(RequestTiming.Phase.TIME_TO_FIRST_BYTE));
+    }
+
+    @Test
+    public void testReusedConnectionPhasesNotRecorded() throws IOException {
+        List<RequestTiming> timings = new ArrayList<>();
+        NetworkMetrics.getInstance().register(timings::add);
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        execute(new Action(Action.USER_INFO));
+        ActionMetrics metrics = NetworkMetrics.getInstance().getActionMetrics(Action.USER_INFO);
+        long dns = metrics.getHistogram(RequestTiming.Phase.DNS).getCount();
+        long connect = metrics.getHistogram(RequestTiming.Phase.CONNECT).getCount();
+        long tls = metrics.getHistogram(RequestTiming.Phase.TLS).getCount();
+        long connectSum = metrics.getHistogram(RequestTiming.Phase.CONNECT).getSum();
+
+        execute(new Action(Action.USER_INFO));
+
+        RequestTiming reused = timings.get(1);
+        assertThat(reused.isConnectionReused()).isTrue();
+        assertThat(reused.get(RequestTiming.Phase.DNS)).isEqualTo(RequestTiming.NOT_OCCURRED);
+        assertThat(reused.get(RequestTiming.Phase.CONNECT)).isEqualTo(RequestTiming.NOT_OCCURRED);
+        assertThat(reused.get(RequestTiming.Phase.TLS)).isEqualTo(RequestTiming.NOT_OCCURRED);
+        //No sample added for the phases which did not happen
+        assertThat(metrics.getHistogram(RequestTiming.Phase.DNS).getCount()).isEqualTo(dns);
+        assertThat(metrics.getHistogram(RequestTiming.Phase.CONNECT).getCount()).isEqualTo(connect);
+        assertThat(metrics.getHistogram(RequestTiming.Phase.TLS).getCount()).isEqualTo(tls);
+        assertThat(metrics.getHistogram(RequestTiming.Phase.CONNECT).getSum()).isEqualTo(connectSum);
+        assertThat(metrics.getHistogram(RequestTiming.Phase.TOTAL).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        NetworkMetrics.getInstance().setEnabled(false);
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        execute(new Action(Action.LOGOUT));
+
+        assertThat(NetworkMetrics.getInstance().getActionMetrics(Action.LOGOUT)).isNull();
+    }
+
+    private void execute(Action action) throws IOException {
+        okhttp3.Request request = new okhttp3.Request.Builder()
+                .url(server.url("/").toString())
+                .tag(action)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            response.body().string();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class NetworkPolicyTest {
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        NetworkPolicy.getInstance().reset();
+        client = OkHttpClientProvider.getInstance().lookup(NetworkConfig.networkBuilder()
+                .host(server.getHostName())
+                .interceptorSupplier(Collections::emptyList)
+                .build());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        NetworkPolicy.getInstance().reset();
+        server.shutdown();
+    }
+
+    @Test
+    public void testRetryOnServerError() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(502));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        try (Response response = execute(Action.REFRESH_TOKEN)) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testMaxRetries() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        try (Response response = execute(Action.USER_INFO)) {
+            assertThat(response.code()).isEqualTo(503);
+        }
+        //First attempt and 2 retries
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testNoRetryForInteractiveStep() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        try (Response response = execute(Action.AUTHENTICATE)) {
+            assertThat(response.code()).isEqualTo(503);
+        }
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRetryOnDisconnect() throws IOException {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(new MockResponse().setBody("{}"));
+        NetworkPolicy.getInstance().set(Action.REVOKE_TOKEN, ActionPolicy.builder()
+                .maxRetries(3)
+                .backoffMillis(10L)
+                .build());
+
+        try (Response response = execute(Action.REVOKE_TOKEN)) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testBackoffStopsWhenCanceled() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("{}"));
+        NetworkPolicy.getInstance().set(Action.REFRESH_TOKEN, ActionPolicy.builder()
+                .maxRetries(1)
+                .retryOnServerError(true)
+                .backoffMillis(10_000L)
+                .maxBackoffMillis(10_000L)
+                .build());
+        CountDownLatch responded = new CountDownLatch(1);
+        OkHttpClient client = OkHttpClientProvider.getInstance().lookup(NetworkConfig.networkBuilder()
+                .host(server.getHostName())
+                .interceptorSupplier(() -> Collections.singletonList(chain -> {
+                    Response response = chain.proceed(chain.request());
+                    responded.countDown();
+                    return response;
+                }))
+                .build());
+        Call call = client.newCall(new okhttp3.Request.Builder()
+                .url(server.url("/").toString())
+                .tag(new Action(Action.REFRESH_TOKEN))
+                .build());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Response> future = executor.submit(call::execute);
+            //Cancel during the backoff
+            assertThat(responded.await(5, TimeUnit.SECONDS)).isTrue();
+            long start = System.currentTimeMillis();
+            call.cancel();
+            try {
+                future.get(5, TimeUnit.SECONDS).close();
+                fail("Call should be canceled");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IOException.class).hasMessage("Canceled");
+            }
+            assertThat(System.currentTimeMillis() - start).isLessThan(1000);
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testActionTimeout() throws IOException {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        NetworkPolicy.getInstance().set(Action.START_AUTHENTICATE, ActionPolicy.builder()
+                .readTimeoutMillis(200L)
+                .build());
+
+        long start = System.currentTimeMillis();
+        try {
+            execute(Action.START_AUTHENTICATE).close();
+            fail("Request should time out");
+        } catch (SocketTimeoutException e) {
+            //Expected, the client timeout is 30 seconds
+            assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+        }
+    }
+
+    @Test
+    public void testCircuitBreakerOpen() throws IOException {
+        NetworkPolicy.getInstance().setCircuitBreaker(2, 60_000);
+        server.shutdown();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                execute(Action.EXCHANGE_TOKEN).close();
+                fail("Server is down");
+            } catch (CircuitBreakerOpenException e) {
+                fail("Circuit should not be open yet");
+            } catch (IOException e) {
+                //Expected
+            }
+        }
+        try {
+            execute(Action.EXCHANGE_TOKEN).close();
+            fail("Circuit should be open");
+        } catch (CircuitBreakerOpenException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void testRetriesStopWhenCircuitOpens() throws IOException {
+        NetworkPolicy.getInstance().setCircuitBreaker(2, 60_000);
+        NetworkPolicy.getInstance().set(Action.REFRESH_TOKEN, ActionPolicy.builder()
+                .maxRetries(5)
+                .build());
+        server.shutdown();
+
+        try {
+            execute(Action.REFRESH_TOKEN).close();
+            fail("Server is down");
+        } catch (CircuitBreakerOpenException e) {
+            fail("The failure of the call should be reported");
+        } catch (IOException e) {
+            //Expected
+        }
+        assertThat(NetworkPolicy.getInstance().getCircuitBreaker(server()).getState())
+                .isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void testTrialReleasedOnRuntimeException() throws IOException {
+        NetworkPolicy.getInstance().setCircuitBreaker(1, 0);
+        AtomicBoolean broken = new AtomicBoolean();
+        OkHttpClient client = OkHttpClientProvider.getInstance().lookup(NetworkConfig.networkBuilder()
+                .host(server.getHostName())
+                .interceptorSupplier(() -> Collections.singletonList(chain -> {
+                    if (broken.get()) {
+                        throw new IllegalStateException("Broken interceptor");
+                    }
+                    return chain.proceed(chain.request());
+                }))
+                .build());
+        server.enqueue(new MockResponse().setBody("{}"));
+        CircuitBreaker circuitBreaker = NetworkPolicy.getInstance().getCircuitBreaker(server());
+        circuitBreaker.onFailure();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        //The trial fails before reaching the server
+        broken.set(true);
+        try {
+            execute(client, Action.EXCHANGE_TOKEN).close();
+            fail("Interceptor is broken");
+        } catch (IllegalStateException e) {
+            //Expected
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        //Another trial is allowed
+        broken.set(false);
+        try (Response response = execute(client, Action.EXCHANGE_TOKEN)) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testCircuitBreakerHalfOpen() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 50);
+        circuitBreaker.onFailure();
+        assertThat(circuitBreaker.allow()).isTrue();
+        circuitBreaker.onFailure();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.allow()).isFalse();
+
+        Thread.sleep(60);
+        //Only one trial
+        assertThat(circuitBreaker.allow()).isTrue();
+        assertThat(circuitBreaker.allow()).isFalse();
+        circuitBreaker.onFailure();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        Thread.sleep(60);
+        assertThat(circuitBreaker.allow()).isTrue();
+        circuitBreaker.onSuccess();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.allow()).isTrue();
+    }
+
+    @Test
+    public void testBackoff() {
+        ActionPolicy policy = ActionPolicy.builder()
+                .backoffMillis(100L)
+                .maxBackoffMillis(1000L)
+                .build();
+        assertThat(policy.backoff(0, 0.99)).isEqualTo(99);
+        assertThat(policy.backoff(2, 0.5)).isEqualTo(200);
+        assertThat(policy.backoff(10, 0.99)).isEqualTo(990);
+        assertThat(policy.backoff(40, 0.99)).isEqualTo(990);
+        assertThat(policy.backoff(3, 0)).isEqualTo(0);
+    }
+
+    private Response execute(String action) throws IOException {
+        return execute(client, action);
+    }
+
+    private Response execute(OkHttpClient client, String action) throws IOException {
+        okhttp3.Request request = new okhttp3.Request.Builder()
+                .url(server.url("/").toString())
+                .tag(new Action(action))
+                .build();
+        return client.newCall(request).execute();
+    }
+
+    private String server() {
+        return server.getHostName() + ":" + server.getPort();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.CookieJar;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OkHttpClientProviderTest {
+
+    private final Supplier<List<Interceptor>> noInterceptor = Collections::emptyList;
+
+    @Before
+    public void setUp() {
+        OkHttpClientProvider.getInstance().clear();
+    }
+
+    @Test
+    public void testCacheHit() {
+        OkHttpClientProvider provider = OkHttpClientProvider.getInstance();
+        OkHttpClientProvider.Stats before = provider.getStats();
+
+        OkHttpClient client = provider.lookup(config("openam.example.com", 30).build());
+        //Another config instance with the same settings
+        assertThat(provider.lookup(config("openam.example.com", 30).build())).isSameAs(client);
+
+        OkHttpClientProvider.Stats after = provider.getStats();
+        assertThat(after.getCreations() - before.getCreations()).isEqualTo(1);
+        assertThat(after.getHits() - before.getHits()).isEqualTo(1);
+        assertThat(after.getClients()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSharedConnectionPoolAndDispatcher() {
+        OkHttpClientProvider provider = OkHttpClientProvider.getInstance();
+        OkHttpClient client = provider.lookup(config("openam.example.com", 30).build());
+        OkHttpClient other = provider.lookup(config("openam.example.com", 10).build());
+        OkHttpClient otherHost = provider.lookup(config("other.example.com", 30).build());
+
+        assertThat(other).isNotSameAs(client);
+        assertThat(otherHost).isNotSameAs(client);
+        assertThat(other.connectionPool()).isSameAs(client.connectionPool());
+        assertThat(other.dispatcher()).isSameAs(client.dispatcher());
+        assertThat(otherHost.connectionPool()).isSameAs(client.connectionPool());
+        assertThat(provider.getStats().getClients()).isEqualTo(3);
+    }
+
+    @Test
+    public void testFingerprint() {
+        OkHttpClientProvider provider = OkHttpClientProvider.getInstance();
+        OkHttpClient client = provider.lookup(config("openam.example.com", 30).build());
+
+        CookieJar cookieJar = new MemoryCookieJar();
+        assertThat(provider.lookup(config("openam.example.com", 30)
+                .cookieJarSupplier(() -> cookieJar).build())).isNotSameAs(client);
+        assertThat(provider.lookup(config("openam.example.com", 30)
+                .pin("sha256/AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=").build())).isNotSameAs(client);
+        assertThat(provider.lookup(config("openam.example.com", 30)
+                .timeUnit(TimeUnit.MILLISECONDS).build())).isNotSameAs(client);
+        //Same timeout in another unit
+        assertThat(provider.lookup(config("openam.example.com", 30000)
+                .timeUnit(TimeUnit.MILLISECONDS).build())).isSameAs(client);
+    }
+
+    @Test
+    public void testInterceptorsResolvedPerRequest() throws Exception {
+        AtomicReference<String> header = new AtomicReference<>("First");
+        Supplier<List<Interceptor>> supplier = () -> Collections.singletonList(chain ->
+                chain.proceed(chain.request().newBuilder().header("X-Test", header.get()).build()));
+        NetworkConfig networkConfig = NetworkConfig.networkBuilder()
+                .host("localhost")
+                .interceptorSupplier(supplier)
+                .build();
+        OkHttpClient client = OkHttpClientProvider.getInstance().lookup(networkConfig).newBuilder()
+                //Complete the call without network, echo the header
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message(chain.request().header("X-Test"))
+                        .body(ResponseBody.create(new byte[0], null))
+                        .build())
+                .build();
+
+        Request request = new Request.Builder().url("http://localhost/").build();
+        assertThat(client.newCall(request).execute().message()).isEqualTo("First");
+        header.set("Second");
+        assertThat(client.newCall(request).execute().message()).isEqualTo("Second");
+    }
+
+    private NetworkConfig.NetworkConfigBuilder config(String host, int timeout) {
+        return NetworkConfig.networkBuilder()
+                .host(host)
+                .timeout(timeout)
+                .interceptorSupplier(noInterceptor);
+    }
+
+    private static class MemoryCookieJar implements CookieJar {
+
+        @Override
+        public void saveFromResponse(okhttp3.HttpUrl url, List<okhttp3.Cookie> cookies) {
+        }
+
+        @Override
+        public List<okhttp3.Cookie> loadForRequest(okhttp3.HttpUrl url) {
+            return Collections.emptyList();
+        }
+    }
+}
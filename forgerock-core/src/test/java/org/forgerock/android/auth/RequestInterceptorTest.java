@@ -36,6 +36,8 @@ import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okio.BufferedSink;
+import okio.BufferedSource;
 
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -61,6 +63,7 @@ public class RequestInterceptorTest {
     public void tearDown() throws Exception {
         server.shutdown();
         OkHttpClientProvider.getInstance().clear();
+        RequestInterceptorRegistry.getInstance().register();
     }
 
     private String getUrl() {
@@ -390,6 +393,80 @@ public class RequestInterceptorTest {
 
     }
 
+    @Test
+    public void testBodyIsLazy() throws InterruptedException {
+        CountingRequestBody body = new CountingRequestBody(data.toString());
+        NetworkConfig networkConfig = NetworkConfig.networkBuilder()
+                .host(server.getHostName())
+                .interceptorSupplier(() -> singletonList(new OkHttpRequestInterceptor(request -> {
+                    assertThat(request.body().getContentType()).isEqualTo(JSON.toString());
+                    return request.newBuilder().header("HeaderName", "HeaderValue").build();
+                })))
+                .build();
+        okhttp3.Request request = new okhttp3.Request.Builder()
+                .url(getUrl())
+                .post(body)
+                .build();
+        send(networkConfig, request);
+        //Only written to the network
+        assertThat(body.writes).isEqualTo(1);
+        assertThat(server.takeRequest().getHeader("HeaderName")).isEqualTo("HeaderValue");
+    }
+
+    @Test
+    public void testBodyReadOnce() throws InterruptedException {
+        CountingRequestBody body = new CountingRequestBody(data.toString());
+        NetworkConfig networkConfig = NetworkConfig.networkBuilder()
+                .host(server.getHostName())
+                .interceptorSupplier(() -> singletonList(new OkHttpRequestInterceptor(
+                        request -> {
+                            assertThat(new String(request.body().getContent())).isEqualTo(data.toString());
+                            return request.newBuilder().header("HeaderName", "HeaderValue").build();
+                        },
+                        request -> {
+                            assertThat(readSource(request.body())).isEqualTo(data.toString());
+                            assertThat(readSource(request.body())).isEqualTo(data.toString());
+                            return request;
+                        })))
+                .build();
+        okhttp3.Request request = new okhttp3.Request.Builder()
+                .url(getUrl())
+                .post(body)
+                .build();
+        send(networkConfig, request);
+        //Read once by the interceptors, written once to the network
+        assertThat(body.writes).isEqualTo(2);
+        assertThat(server.takeRequest().getBody().readUtf8()).isEqualTo(data.toString());
+    }
+
+    @Test
+    public void testSourceReadsCachedContent() {
+        CountingRequestBody requestBody = new CountingRequestBody(data.toString());
+        Body body = new Body(requestBody);
+
+        assertThat(readSource(body)).isEqualTo(data.toString());
+        assertThat(readSource(body)).isEqualTo(data.toString());
+        assertThat(new String(body.getContent())).isEqualTo(data.toString());
+        //The content is read once and shared by the streams
+        assertThat(requestBody.writes).isEqualTo(1);
+    }
+
+    @Test
+    public void testUnmodifiedRequestNotRebuilt() {
+        Request request = new Request(new okhttp3.Request.Builder()
+                .url(getUrl())
+                .post(RequestBody.create(data.toString(), JSON))
+                .build());
+        assertThat(request.newBuilder().build()).isSameAs(request);
+
+        Request updated = request.newBuilder().header("HeaderName", "HeaderValue").build();
+        assertThat(updated).isNotSameAs(request);
+        assertThat(updated.body()).isSameAs(request.body());
+
+        Body body = new Body(data.toString(), JSON.toString());
+        assertThat(request.newBuilder().post(body).build().body()).isSameAs(body);
+    }
+
     @Test
     public void testRegistry() {
         RequestInterceptorRegistry.getInstance().register(request -> request,
@@ -397,6 +474,103 @@ public class RequestInterceptorTest {
         assertThat(RequestInterceptorRegistry.getInstance().getRequestInterceptors().length).isEqualTo(2);
     }
 
+    @Test
+    public void testRegistryAddRemove() {
+        RequestInterceptor first = request -> request;
+        RequestInterceptor second = request -> request;
+        RequestInterceptorRegistry registry = RequestInterceptorRegistry.getInstance();
+        registry.register(first);
+        registry.add(second, Action.REFRESH_TOKEN);
+        assertThat(registry.getRequestInterceptors()).containsExactly(first, second);
+
+        assertThat(registry.remove(first)).isTrue();
+        assertThat(registry.remove(first)).isFalse();
+        assertThat(registry.getRequestInterceptors()).containsExactly(second);
+
+        registry.register(null);
+        assertThat(registry.getRequestInterceptors()).isEmpty();
+    }
+
+    @Test
+    public void testActionRouting() {
+        RequestInterceptor global = request -> request;
+        RequestInterceptor refresh = request -> request;
+        RequestInterceptor authenticate = new RequestInterceptor() {
+            @NonNull
+            @Override
+            public Request intercept(@NonNull Request request) {
+                return request;
+            }
+
+            @Override
+            public String[] actions() {
+                return new String[]{Action.START_AUTHENTICATE, Action.AUTHENTICATE};
+            }
+        };
+        RequestInterceptorRegistry registry = RequestInterceptorRegistry.getInstance();
+        registry.register(global, authenticate);
+        registry.add(refresh, Action.REFRESH_TOKEN);
+
+        RequestInterceptorTable table = registry.getTable();
+        assertThat(table.get(new Action(Action.REFRESH_TOKEN))).containsExactly(global, refresh);
+        assertThat(table.get(new Action(Action.AUTHENTICATE))).containsExactly(global, authenticate);
+        assertThat(table.get(new Action(Action.USER_INFO))).containsExactly(global);
+        assertThat(table.get(null)).containsExactly(global);
+    }
+
+    @Test
+    public void testRegistryDispatch() throws InterruptedException {
+        RequestInterceptorRegistry.getInstance().add(request -> request.newBuilder()
+                .header("HeaderName", "HeaderValue").build(), Action.AUTHENTICATE);
+        NetworkConfig networkConfig = NetworkConfig.networkBuilder()
+                .host(server.getHostName())
+                .interceptorSupplier(() -> singletonList(
+                        new OkHttpRequestInterceptor(RequestInterceptorRegistry.getInstance())))
+                .build();
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        send(networkConfig, new okhttp3.Request.Builder()
+                .url(getUrl())
+                .tag(new Action(Action.REFRESH_TOKEN))
+                .build());
+        send(networkConfig, new okhttp3.Request.Builder()
+                .url(getUrl())
+                .tag(new Action(Action.AUTHENTICATE))
+                .build());
+
+        assertThat(server.takeRequest().getHeader("HeaderName")).isNull();
+        assertThat(server.takeRequest().getHeader("HeaderName")).isEqualTo("HeaderValue");
+    }
+
+    private static String readSource(Body body) {
+        try (BufferedSource source = body.getSource()) {
+            return source.readUtf8();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CountingRequestBody extends RequestBody {
+
+        private final String content;
+        private int writes;
+
+        private CountingRequestBody(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return JSON;
+        }
+
+        @Override
+        public void writeTo(@NotNull BufferedSink sink) throws IOException {
+            writes++;
+            sink.writeUtf8(content);
+        }
+    }
+
     private void send(NetworkConfig networkConfig, okhttp3.Request request) throws InterruptedException {
         OkHttpClient client = OkHttpClientProvider.getInstance().lookup(networkConfig);
         CountDownLatch countDownLatch = new CountDownLatch(1);
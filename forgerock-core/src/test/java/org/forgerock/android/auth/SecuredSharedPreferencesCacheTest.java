@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class SecuredSharedPreferencesCacheTest {
+
+    private static final String FILE_NAME = "SecuredSharedPreferencesCacheTest";
+    private static final String KEY_ALIAS = "TestAlias";
+
+    private Context context = ApplicationProvider.getApplicationContext();
+    private AtomicInteger decryptCount;
+
+    @Before
+    public void setUp() {
+        decryptCount = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteSharedPreferences(FILE_NAME);
+    }
+
+    private SecuredSharedPreferences newInstance() {
+        return new SecuredSharedPreferences(context, FILE_NAME, KEY_ALIAS) {
+            @Override
+            protected Encryptor getEncryptor(Context context) {
+                return new CountingEncryptor();
+            }
+        };
+    }
+
+    @Test
+    public void testRepeatedReadDecryptOnce() {
+        newInstance().edit().putString("Test", "Value").commit();
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        for (int i = 0; i < 10; i++) {
+            assertThat(sharedPreferences.getString("Test", null)).isEqualTo("Value");
+        }
+        assertThat(decryptCount.get()).isEqualTo(1);
+        assertThat(sharedPreferences.getCache().getHitCount()).isEqualTo(9);
+        assertThat(sharedPreferences.getCache().getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInvalidateOnCommit() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putInt("Test", 1).commit();
+        assertThat(sharedPreferences.getInt("Test", 0)).isEqualTo(1);
+        sharedPreferences.edit().putInt("Test", 2).commit();
+        assertThat(sharedPreferences.getInt("Test", 0)).isEqualTo(2);
+        sharedPreferences.edit().remove("Test").commit();
+        assertThat(sharedPreferences.getInt("Test", 0)).isEqualTo(0);
+    }
+
+    @Test
+    public void testInvalidateOnApply() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putString("Test", "Value1").apply();
+        assertThat(sharedPreferences.getString("Test", null)).isEqualTo("Value1");
+        sharedPreferences.edit().putString("Test", "Value2").apply();
+        assertThat(sharedPreferences.getString("Test", null)).isEqualTo("Value2");
+    }
+
+    @Test
+    public void testInvalidateOnClear() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putString("Test", "Value").commit();
+        assertThat(sharedPreferences.getString("Test", null)).isEqualTo("Value");
+        sharedPreferences.edit().clear().commit();
+        assertThat(sharedPreferences.getString("Test", null)).isNull();
+        assertThat(sharedPreferences.getCache().size()).isZero();
+    }
+
+    @Test
+    public void testInvalidateOnKeyUpdated() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putString("Test", "Value").commit();
+        assertThat(sharedPreferences.getString("Test", null)).isEqualTo("Value");
+        sharedPreferences.onKeyUpdated();
+        assertThat(sharedPreferences.getCache().size()).isZero();
+        assertThat(sharedPreferences.getString("Test", null)).isNull();
+    }
+
+    @Test
+    public void testUpdatedByAnotherInstance() {
+        SecuredSharedPreferences sharedPreferences1 = newInstance();
+        SecuredSharedPreferences sharedPreferences2 = newInstance();
+        sharedPreferences1.edit().putString("Test", "Value1").commit();
+        assertThat(sharedPreferences1.getString("Test", null)).isEqualTo("Value1");
+        assertThat(sharedPreferences2.getString("Test", null)).isEqualTo("Value1");
+        sharedPreferences2.edit().putString("Test", "Value2").commit();
+        assertThat(sharedPreferences1.getString("Test", null)).isEqualTo("Value2");
+    }
+
+    @Test
+    public void testCachedStringSetIsNotShared() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putStringSet("Test", new HashSet<>(Arrays.asList("1", "2"))).commit();
+        Set<String> result = sharedPreferences.getStringSet("Test", null);
+        result.add("3");
+        assertThat(sharedPreferences.getStringSet("Test", null)).containsExactlyInAnyOrder("1", "2");
+    }
+
+    private class CountingEncryptor implements Encryptor {
+
+        @Override
+        public byte[] encrypt(byte[] clearText) {
+            return clearText;
+        }
+
+        @Override
+        public byte[] decrypt(byte[] encryptedData) {
+            decryptCount.incrementAndGet();
+            return encryptedData;
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+}
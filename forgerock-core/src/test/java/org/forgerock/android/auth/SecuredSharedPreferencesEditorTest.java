@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class SecuredSharedPreferencesEditorTest {
+
+    private static final String FILE_NAME = "SecuredSharedPreferencesEditorTest";
+    private static final String KEY_ALIAS = "TestAlias";
+
+    private Context context = ApplicationProvider.getApplicationContext();
+    private AtomicInteger encryptCount;
+    private AtomicInteger decryptCount;
+    //Block the encryption while set
+    private CountDownLatch encrypting;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        encryptCount = new AtomicInteger();
+        decryptCount = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        //Make sure nothing is left to flush
+        newInstance().edit().commit();
+        Thread.sleep(SecuredSharedPreferences.FLUSH_DELAY_MILLIS * 2);
+        context.deleteSharedPreferences(FILE_NAME);
+    }
+
+    private SecuredSharedPreferences newInstance() {
+        return new SecuredSharedPreferences(context, FILE_NAME, KEY_ALIAS) {
+            @Override
+            protected Encryptor getEncryptor(Context context) {
+                return new CountingEncryptor();
+            }
+        };
+    }
+
+    private SharedPreferences storage() {
+        return context.getSharedPreferences(FILE_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Test
+    public void testMergeSameKey() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (int i = 0; i < 10; i++) {
+            editor.putString("Test", "Value" + i);
+        }
+        editor.commit();
+        assertThat(encryptCount.get()).isEqualTo(1);
+        assertThat(sharedPreferences.getString("Test", null)).isEqualTo("Value9");
+    }
+
+    @Test
+    public void testCommitIsDurable() {
+        newInstance().edit().putString("Test", "Value").commit();
+        assertThat(storage().getString("Test", null)).isNotNull();
+    }
+
+    @Test
+    public void testApplyCoalesceWrites() throws InterruptedException {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        for (int i = 0; i < 10; i++) {
+            sharedPreferences.edit().putString("Test", "Value" + i).apply();
+            assertThat(sharedPreferences.getString("Test", null)).isEqualTo("Value" + i);
+        }
+        assertThat(encryptCount.get()).isZero();
+        assertThat(storage().contains("Test")).isFalse();
+
+        Thread.sleep(SecuredSharedPreferences.FLUSH_DELAY_MILLIS * 5);
+        assertThat(encryptCount.get()).isEqualTo(1);
+        assertThat(storage().contains("Test")).isTrue();
+        assertThat(newInstance().getString("Test", null)).isEqualTo("Value9");
+    }
+
+    @Test
+    public void testCommitFlushAppliedChanges() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putString("Applied", "Value1").apply();
+        sharedPreferences.edit().putString("Committed", "Value2").commit();
+        assertThat(storage().contains("Applied")).isTrue();
+        assertThat(storage().contains("Committed")).isTrue();
+    }
+
+    @Test
+    public void testAppliedChangesVisibleToOtherInstances() {
+        newInstance().edit().putString("Test", "Value").apply();
+        assertThat(newInstance().getString("Test", null)).isEqualTo("Value");
+    }
+
+    @Test
+    public void testApplyRemoveAndClear() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putString("Key1", "Value1").putString("Key2", "Value2").commit();
+
+        sharedPreferences.edit().remove("Key1").apply();
+        assertThat(sharedPreferences.contains("Key1")).isFalse();
+        assertThat(sharedPreferences.getString("Key1", null)).isNull();
+
+        sharedPreferences.edit().clear().putString("Key3", "Value3").apply();
+        assertThat(sharedPreferences.getString("Key2", null)).isNull();
+        assertThat(sharedPreferences.getAll()).containsOnlyKeys("Key3");
+
+        sharedPreferences.edit().commit();
+        assertThat(storage().getAll()).containsOnlyKeys("Key3");
+    }
+
+    @Test
+    public void testWrittenValueNotDecrypted() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putStringSet("Test", new HashSet<>(Arrays.asList("1", "2"))).commit();
+        assertThat(sharedPreferences.getStringSet("Test", null)).containsExactlyInAnyOrder("1", "2");
+        assertThat(decryptCount.get()).isZero();
+    }
+
+    @Test
+    public void testStringSetCopiedOnPut() {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        Set<String> values = new HashSet<>(Arrays.asList("1", "2"));
+        sharedPreferences.edit().putStringSet("Test", values).apply();
+        values.add("3");
+        assertThat(sharedPreferences.getStringSet("Test", null)).containsExactlyInAnyOrder("1", "2");
+    }
+
+    @Test
+    public void testWriterNotBlockedByEncryption() throws Exception {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        encrypting = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> committed = executorService.submit(() ->
+                    sharedPreferences.edit().putString("Key1", "Value1").commit());
+            assertThat(encrypting.await(5, TimeUnit.SECONDS)).isTrue();
+
+            //The flush is encrypting, the writer is not blocked and the values being written are readable
+            sharedPreferences.edit().putString("Key2", "Value2").apply();
+            assertThat(committed.isDone()).isFalse();
+            assertThat(sharedPreferences.getString("Key1", null)).isEqualTo("Value1");
+            assertThat(sharedPreferences.getString("Key2", null)).isEqualTo("Value2");
+
+            release.countDown();
+            assertThat(committed.get(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            release.countDown();
+            executorService.shutdownNow();
+        }
+        release = null;
+        assertThat(storage().contains("Key1")).isTrue();
+        //Applied during the flush, still pending
+        assertThat(sharedPreferences.getString("Key2", null)).isEqualTo("Value2");
+        sharedPreferences.edit().commit();
+        assertThat(storage().contains("Key2")).isTrue();
+    }
+
+    @Test
+    public void testClearDuringFlushKept() throws Exception {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        encrypting = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> committed = executorService.submit(() ->
+                    sharedPreferences.edit().putString("Key1", "Value1").commit());
+            assertThat(encrypting.await(5, TimeUnit.SECONDS)).isTrue();
+            sharedPreferences.edit().clear().apply();
+
+            release.countDown();
+            assertThat(committed.get(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            release.countDown();
+            executorService.shutdownNow();
+        }
+        release = null;
+        //The clear is applied after the flush, the written value is not visible
+        assertThat(sharedPreferences.getString("Key1", null)).isNull();
+        sharedPreferences.edit().commit();
+        assertThat(storage().contains("Key1")).isFalse();
+    }
+
+    private class CountingEncryptor implements Encryptor {
+
+        @Override
+        public byte[] encrypt(byte[] clearText) {
+            encryptCount.incrementAndGet();
+            if (release != null) {
+                encrypting.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return clearText;
+        }
+
+        @Override
+        public byte[] decrypt(byte[] encryptedData) {
+            decryptCount.incrementAndGet();
+            return encryptedData;
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+}
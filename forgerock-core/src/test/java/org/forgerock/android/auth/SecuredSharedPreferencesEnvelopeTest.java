@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.util.Base64;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class SecuredSharedPreferencesEnvelopeTest {
+
+    private static final String FILE_NAME = "SecuredSharedPreferencesEnvelopeTest";
+    private static final String KEY_ALIAS = "TestAlias";
+
+    private Context context = ApplicationProvider.getApplicationContext();
+    private SecuredSharedPreferences sharedPreferences;
+
+    @Before
+    public void setUp() {
+        sharedPreferences = new SecuredSharedPreferences(context, FILE_NAME, KEY_ALIAS) {
+            @Override
+            protected Encryptor getEncryptor(Context context) {
+                return new PlainEncryptor();
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteSharedPreferences(FILE_NAME);
+    }
+
+    @Test
+    public void testStoredAsEnvelope() {
+        sharedPreferences.edit().putString("Test", "Value").commit();
+        assertThat(ValueEnvelope.isEnvelope(raw("Test"))).isTrue();
+        assertThat(sharedPreferences.getSharedPreferences().getString("Test", null)).doesNotContain("\n");
+    }
+
+    @Test
+    public void testReadLegacyValues() {
+        putLegacy("String", "{\"type\":0,\"value\":\"Value\"}");
+        putLegacy("StringSet", "{\"type\":1,\"value\":[\"1\",\"2\"]}");
+        putLegacy("Int", "{\"type\":2,\"value\":100}");
+        putLegacy("Long", "{\"type\":3,\"value\":10000000000}");
+        putLegacy("Float", "{\"type\":4,\"value\":1.5}");
+        putLegacy("Boolean", "{\"type\":5,\"value\":true}");
+
+        assertThat(sharedPreferences.getString("String", null)).isEqualTo("Value");
+        assertThat(sharedPreferences.getStringSet("StringSet", null)).containsExactlyInAnyOrder("1", "2");
+        assertThat(sharedPreferences.getInt("Int", 0)).isEqualTo(100);
+        assertThat(sharedPreferences.getLong("Long", 0)).isEqualTo(10000000000L);
+        assertThat(sharedPreferences.getFloat("Float", 0)).isEqualTo(1.5f);
+        assertThat(sharedPreferences.getBoolean("Boolean", false)).isTrue();
+    }
+
+    @Test
+    public void testMigrateOnWrite() {
+        putLegacy("Test", "{\"type\":0,\"value\":\"Value1\"}");
+        assertThat(ValueEnvelope.isEnvelope(raw("Test"))).isFalse();
+
+        sharedPreferences.edit().putString("Test", "Value2").commit();
+        assertThat(ValueEnvelope.isEnvelope(raw("Test"))).isTrue();
+        assertThat(sharedPreferences.getString("Test", null)).isEqualTo("Value2");
+    }
+
+    @Test
+    public void testAllTypes() {
+        sharedPreferences.edit()
+                .putString("String", "Value")
+                .putStringSet("StringSet", new HashSet<>(Arrays.asList("1", "2")))
+                .putInt("Int", 100)
+                .putLong("Long", 10000000000L)
+                .putFloat("Float", 1.5f)
+                .putBoolean("Boolean", true)
+                .commit();
+
+        assertThat(sharedPreferences.getString("String", null)).isEqualTo("Value");
+        assertThat(sharedPreferences.getStringSet("StringSet", null)).containsExactlyInAnyOrder("1", "2");
+        assertThat(sharedPreferences.getInt("Int", 0)).isEqualTo(100);
+        assertThat(sharedPreferences.getLong("Long", 0)).isEqualTo(10000000000L);
+        assertThat(sharedPreferences.getFloat("Float", 0)).isEqualTo(1.5f);
+        assertThat(sharedPreferences.getBoolean("Boolean", false)).isTrue();
+    }
+
+    private void putLegacy(String key, String json) {
+        sharedPreferences.getSharedPreferences().edit()
+                .putString(key, Base64.encodeToString(json.getBytes(StandardCharsets.UTF_8), Base64.DEFAULT))
+                .commit();
+    }
+
+    private byte[] raw(String key) {
+        return Base64.decode(sharedPreferences.getSharedPreferences().getString(key, null), Base64.DEFAULT);
+    }
+
+    private static class PlainEncryptor implements Encryptor {
+
+        @Override
+        public byte[] encrypt(byte[] clearText) {
+            return clearText;
+        }
+
+        @Override
+        public byte[] decrypt(byte[] encryptedData) {
+            return encryptedData;
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+}
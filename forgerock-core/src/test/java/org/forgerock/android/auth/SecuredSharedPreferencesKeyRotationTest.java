@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class SecuredSharedPreferencesKeyRotationTest {
+
+    private static final String FILE_NAME = "SecuredSharedPreferencesKeyRotationTest";
+    private static final String KEY_ALIAS = "TestAlias";
+
+    private Context context = ApplicationProvider.getApplicationContext();
+    //Block the re-encryption in the background until released
+    private CountDownLatch release = new CountDownLatch(0);
+    private AtomicInteger newKeyEncrypt = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        context.deleteSharedPreferences(FILE_NAME);
+    }
+
+    private SecuredSharedPreferences newInstance() {
+        return new SecuredSharedPreferences(context, FILE_NAME, KEY_ALIAS) {
+            @Override
+            protected Encryptor getEncryptor(Context context, String keyAlias) {
+                return new AliasEncryptor(keyAlias);
+            }
+        };
+    }
+
+    private SharedPreferences storage() {
+        return context.getSharedPreferences(FILE_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Test
+    public void testRotateKey() throws InterruptedException {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        populate(sharedPreferences, 50);
+        assertThat(sharedPreferences.getKeyVersion()).isEqualTo(0);
+
+        KeyRotation rotation = sharedPreferences.rotateKey();
+        assertThat(sharedPreferences.getKeyVersion()).isEqualTo(1);
+        assertThat(rotation.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(rotation.getTotal()).isEqualTo(50);
+        assertThat(rotation.getProcessed()).isEqualTo(50);
+        for (int i = 0; i < 50; i++) {
+            assertThat(storage().getString("Key" + i, null)).startsWith("1:");
+        }
+        //Read with a new instance, no cached value
+        assertValues(newInstance(), 50);
+    }
+
+    @Test
+    public void testWriteWithNewVersion() throws InterruptedException {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putString("Key", "Value").commit();
+        assertThat(storage().getString("Key", null)).doesNotContain(":");
+
+        sharedPreferences.rotateKey().await(10, TimeUnit.SECONDS);
+        sharedPreferences.edit().putString("Key", "Updated").commit();
+        assertThat(storage().getString("Key", null)).startsWith("1:");
+
+        sharedPreferences.rotateKey().await(10, TimeUnit.SECONDS);
+        assertThat(storage().getString("Key", null)).startsWith("2:");
+        assertThat(newInstance().getString("Key", null)).isEqualTo("Updated");
+    }
+
+    @Test
+    public void testCancelAndResume() throws InterruptedException {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        int count = SecuredSharedPreferences.ROTATION_BATCH_SIZE * 3;
+        populate(sharedPreferences, count);
+
+        release = new CountDownLatch(1);
+        KeyRotation rotation = sharedPreferences.rotateKey();
+        //Cancel while the first batch is in progress
+        while (newKeyEncrypt.get() == 0) {
+            Thread.sleep(10);
+        }
+        rotation.cancel();
+        release.countDown();
+        assertThat(rotation.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(rotation.isCancelled()).isTrue();
+        assertThat(rotation.getProcessed()).isEqualTo(SecuredSharedPreferences.ROTATION_BATCH_SIZE);
+
+        //Values of both versions are readable
+        int rotated = 0;
+        for (Object value : storage().getAll().values()) {
+            if (value.toString().startsWith("1:")) {
+                rotated++;
+            }
+        }
+        assertThat(rotated).isEqualTo(SecuredSharedPreferences.ROTATION_BATCH_SIZE);
+        assertValues(newInstance(), count);
+
+        rotation = sharedPreferences.reEncrypt();
+        assertThat(rotation.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(rotation.getTotal()).isEqualTo(count - SecuredSharedPreferences.ROTATION_BATCH_SIZE);
+        assertValues(newInstance(), count);
+    }
+
+    @Test
+    public void testUpdatedValueNotOverwritten() throws InterruptedException {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putString("Key", "Value").commit();
+
+        release = new CountDownLatch(1);
+        KeyRotation rotation = sharedPreferences.rotateKey();
+        //Wait for the rotation to encrypt the old value, then update the value
+        while (newKeyEncrypt.get() == 0) {
+            Thread.sleep(10);
+        }
+        sharedPreferences.edit().putString("Key", "Updated").commit();
+        release.countDown();
+        assertThat(rotation.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(newInstance().getString("Key", null)).isEqualTo("Updated");
+    }
+
+    @Test
+    public void testKeyVersionSurviveClear() throws InterruptedException {
+        SecuredSharedPreferences sharedPreferences = newInstance();
+        sharedPreferences.edit().putString("Key", "Value").commit();
+        sharedPreferences.rotateKey().await(10, TimeUnit.SECONDS);
+        sharedPreferences.edit().clear().commit();
+
+        assertThat(sharedPreferences.getKeyVersion()).isEqualTo(1);
+        assertThat(sharedPreferences.getAll()).isEmpty();
+    }
+
+    private void populate(SecuredSharedPreferences sharedPreferences, int count) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (int i = 0; i < count; i++) {
+            editor.putString("Key" + i, "Value" + i);
+        }
+        editor.commit();
+    }
+
+    private void assertValues(SecuredSharedPreferences sharedPreferences, int count) {
+        for (int i = 0; i < count; i++) {
+            assertThat(sharedPreferences.getString("Key" + i, null)).isEqualTo("Value" + i);
+        }
+    }
+
+    /**
+     * Encryptor which tags the data with the key alias, decryption fails with the wrong key alias.
+     */
+    private class AliasEncryptor implements Encryptor {
+
+        private final byte[] alias;
+
+        AliasEncryptor(String alias) {
+            this.alias = alias.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public byte[] encrypt(byte[] clearText) {
+            if (Thread.currentThread().getName().equals("ForgeRock-KeyRotation")) {
+                newKeyEncrypt.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] result = new byte[alias.length + clearText.length];
+            System.arraycopy(alias, 0, result, 0, alias.length);
+            System.arraycopy(clearText, 0, result, alias.length, clearText.length);
+            return result;
+        }
+
+        @Override
+        public byte[] decrypt(byte[] encryptedData) {
+            if (encryptedData.length < alias.length
+                    || !Arrays.equals(alias, Arrays.copyOf(encryptedData, alias.length))) {
+                throw new IllegalStateException("Wrong key");
+            }
+            return Arrays.copyOfRange(encryptedData, alias.length, encryptedData.length);
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+}
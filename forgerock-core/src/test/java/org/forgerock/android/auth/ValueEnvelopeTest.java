@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020 ForgeRock. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license. See the LICENSE file for details.
+ */
+
+package org.forgerock.android.auth;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ValueEnvelopeTest {
+
+    @Test
+    public void testString() {
+        byte[] data = ValueEnvelope.encode("Value");
+        assertThat(data.length).isEqualTo(2 + 1 + 5);
+        assertThat(ValueEnvelope.decode(data)).isEqualTo("Value");
+    }
+
+    @Test
+    public void testEmptyString() {
+        assertThat(ValueEnvelope.decode(ValueEnvelope.encode(""))).isEqualTo("");
+    }
+
+    @Test
+    public void testLongUnicodeString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("é中");
+        }
+        String value = builder.toString();
+        byte[] data = ValueEnvelope.encode(value);
+        //2 bytes varint for 5000 bytes of UTF-8
+        assertThat(data.length).isEqualTo(2 + 2 + value.getBytes(StandardCharsets.UTF_8).length);
+        assertThat(ValueEnvelope.decode(data)).isEqualTo(value);
+    }
+
+    @Test
+    public void testStringSet() {
+        Set<String> value = new HashSet<>(Arrays.asList("1", "22", "333"));
+        Object result = ValueEnvelope.decode(ValueEnvelope.encode(value));
+        assertThat((Set<String>) result).containsExactlyInAnyOrder("1", "22", "333");
+    }
+
+    @Test
+    public void testEmptyStringSet() {
+        Object result = ValueEnvelope.decode(ValueEnvelope.encode(Collections.<String>emptySet()));
+        assertThat((Set<String>) result).isEmpty();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testDecodedStringSetIsImmutable() {
+        Set<String> result = (Set<String>) ValueEnvelope.decode(
+                ValueEnvelope.encode(Collections.singleton("1")));
+        result.add("2");
+    }
+
+    @Test
+    public void testPrimitives() {
+        assertThat(ValueEnvelope.decode(ValueEnvelope.encode(Integer.MIN_VALUE))).isEqualTo(Integer.MIN_VALUE);
+        assertThat(ValueEnvelope.decode(ValueEnvelope.encode(-1))).isEqualTo(-1);
+        assertThat(ValueEnvelope.decode(ValueEnvelope.encode(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+        assertThat(ValueEnvelope.decode(ValueEnvelope.encode(-1L))).isEqualTo(-1L);
+        assertThat(ValueEnvelope.decode(ValueEnvelope.encode(1.5f))).isEqualTo(1.5f);
+        assertThat(ValueEnvelope.decode(ValueEnvelope.encode(true))).isEqualTo(true);
+        assertThat(ValueEnvelope.decode(ValueEnvelope.encode(false))).isEqualTo(false);
+    }
+
+    @Test
+    public void testLegacyJsonIsNotEnvelope() {
+        assertThat(ValueEnvelope.isEnvelope("{\"type\":0,\"value\":\"Value\"}"
+                .getBytes(StandardCharsets.UTF_8))).isFalse();
+        assertThat(ValueEnvelope.isEnvelope(ValueEnvelope.encode("Value"))).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        byte[] data = ValueEnvelope.encode("Value");
+        ValueEnvelope.decode(Arrays.copyOf(data, data.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidType() {
+        ValueEnvelope.decode(new byte[]{ValueEnvelope.VERSION_1, 9});
+    }
+}